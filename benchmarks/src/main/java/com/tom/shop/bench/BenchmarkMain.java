@@ -0,0 +1,47 @@
+package com.tom.shop.bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基准测试入口，接受全部 JMH 命令行参数。
+ * <p>
+ * 未显式指定时默认同时测量吞吐量与延迟分布（SampleTime 输出 p50/p90/p99/p99.9），
+ * 开启 GC 分析器统计每次操作的分配字节数，并把结果以 JSON 写入
+ * {@code results/<bench.label>.json}，便于在不同提交之间对比。
+ * </p>
+ * <pre>
+ * java -Dbench.label=$(git rev-parse --short HEAD) -jar target/benchmarks.jar ActiveProducts
+ * </pre>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getBenchModes().isEmpty()) {
+            builder.mode(Mode.Throughput).mode(Mode.SampleTime);
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            Path results = Path.of("results");
+            Files.createDirectories(results);
+            String label = System.getProperty("bench.label", "latest");
+            builder.result(results.resolve(label + ".json").toString());
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,53 @@
+package com.tom.shop.bench;
+
+import com.tom.shop.model.SeckillProduct;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试用的商品数据，固定随机种子保证每次运行数据一致
+ */
+public final class ProductFixtures {
+
+    private ProductFixtures() {
+    }
+
+    /**
+     * 生成指定数量的商品：约七成处于活动时间内，约一成库存为 0
+     */
+    public static List<SeckillProduct> products(int count, LocalDateTime now) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<SeckillProduct> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(i + 1L, random, now));
+        }
+        return products;
+    }
+
+    public static SeckillProduct product(long id, SplittableRandom random, LocalDateTime now) {
+        SeckillProduct product = new SeckillProduct();
+        product.setId(id);
+        product.setName("秒杀商品-" + id);
+        product.setDescription("基准测试商品 " + id + "，用于衡量过滤、排序与序列化开销");
+        product.setPrice(BigDecimal.valueOf(random.nextInt(100, 100_000), 2));
+        product.setStock(random.nextInt(10) == 0 ? 0 : random.nextInt(1, 1000));
+        int bucket = random.nextInt(10);
+        if (bucket < 7) {
+            product.setStartTime(now.minusMinutes(random.nextInt(1, 600)));
+            product.setEndTime(now.plusMinutes(random.nextInt(1, 600)));
+        } else if (bucket < 9) {
+            product.setStartTime(now.plusMinutes(random.nextInt(1, 600)));
+            product.setEndTime(now.plusMinutes(random.nextInt(600, 1200)));
+        } else {
+            product.setStartTime(now.minusMinutes(random.nextInt(600, 1200)));
+            product.setEndTime(now.minusMinutes(random.nextInt(1, 600)));
+        }
+        product.setCreatedAt(now.minusDays(1));
+        product.setVersion(random.nextInt(100));
+        return product;
+    }
+}
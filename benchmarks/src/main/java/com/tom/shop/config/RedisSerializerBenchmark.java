@@ -0,0 +1,50 @@
+package com.tom.shop.config;
+
+import com.tom.shop.bench.ProductFixtures;
+import com.tom.shop.model.SeckillProduct;
+import com.tom.shop.redis.ProductCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RedisConfig} 的值序列化器处理 {@link SeckillProduct} 的开销，对比 JSON 与二进制两种写入格式。
+ * 每种格式的编码长度在初始化时打印。
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisSerializerBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private ProductCodec codec;
+
+    private RedisSerializer<Object> serializer;
+
+    private SeckillProduct product;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = RedisConfig.valueSerializer(codec);
+        product = ProductFixtures.product(1L, new SplittableRandom(42), LocalDateTime.now());
+        encoded = serializer.serialize(product);
+        System.out.printf("%n%s encoded size: %d bytes%n", codec, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(product);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(encoded);
+    }
+}
@@ -0,0 +1,35 @@
+package com.tom.shop.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 秒杀场景的请求到达曲线：开始时刻的瞬时洪峰加上之后的长尾。
+ * <p>
+ * 洪峰部分在 {@code herdWindowMs} 内均匀到达；其余请求依次间隔服从指数分布（泊松到达），
+ * 返回值为相对秒杀开始时间的纳秒偏移，已按时间排序。
+ * </p>
+ */
+public final class ArrivalCurve {
+
+    private ArrivalCurve() {
+    }
+
+    public static long[] offsets(LoadOptions options) {
+        SplittableRandom random = new SplittableRandom(options.seed());
+        int herd = (int) Math.round(options.requests() * options.herdFraction());
+        long[] offsets = new long[options.requests()];
+        long herdWindowNanos = options.herdWindowMs() * 1_000_000L;
+        for (int i = 0; i < herd; i++) {
+            offsets[i] = herdWindowNanos > 0 ? random.nextLong(herdWindowNanos) : 0;
+        }
+        double meanNanos = options.tailMeanMs() * 1_000_000d;
+        long cursor = herdWindowNanos;
+        for (int i = herd; i < offsets.length; i++) {
+            cursor += (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+            offsets[i] = cursor;
+        }
+        Arrays.sort(offsets);
+        return offsets;
+    }
+}
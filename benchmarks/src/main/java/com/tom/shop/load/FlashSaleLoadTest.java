@@ -0,0 +1,232 @@
+package com.tom.shop.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tom.shop.DemoApplication;
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.redis.SeckillKeys;
+import com.tom.shop.service.SeckillService;
+import com.tom.shop.service.StockStripes;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端秒杀压测：在本进程内启动 {@link DemoApplication}（连接本地 Postgres 与 Redis），
+ * 新建一个压测商品，按 {@link ArrivalCurve} 的到达曲线以虚拟线程并发请求购买接口。
+ * 商品直接写入数据库后立即同步商品ID过滤器，不必等待定时同步。
+ * <p>
+ * 延迟从计划到达时间开始计算，请求因并发上限排队的时间也计入，避免协调遗漏（coordinated omission）。
+ * 结束后强制回写库存，并校验 Redis 库存、数据库库存、订单数与成功响应数完全一致、租约已全部归还，不一致时以非 0 退出码结束。
+ * </p>
+ * <pre>
+ * mvn -Pload-test verify -Dload.requests=50000 -Dload.stock=2000
+ * </pre>
+ */
+public class FlashSaleLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.fromSystemProperties();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class)
+                .properties("server.port=0")
+                .run(args);
+        boolean consistent;
+        try {
+            consistent = new FlashSaleLoadTest(context, options).run();
+        } finally {
+            context.close();
+        }
+        System.exit(consistent ? 0 : 1);
+    }
+
+    private final ConfigurableApplicationContext context;
+
+    private final LoadOptions options;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    private final LongAdder successes = new LongAdder();
+
+    private FlashSaleLoadTest(ConfigurableApplicationContext context, LoadOptions options) {
+        this.context = context;
+        this.options = options;
+        this.jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    private boolean run() throws InterruptedException {
+        String port = context.getEnvironment().getProperty("local.server.port");
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        LocalDateTime startTime = LocalDateTime.now().plus(Duration.ofMillis(options.startDelayMs()));
+        Long productId = createProduct(startTime);
+        context.getBean(ProductIdFilter.class).sync();
+        context.getBean(SeckillService.class).getSeckillProductById(productId);
+        URI uri = URI.create("http://127.0.0.1:" + port + "/shop/item/purchase/" + productId);
+
+        long[] offsets = ArrivalCurve.offsets(options);
+        long[] latencies = new long[offsets.length];
+        Semaphore inFlight = new Semaphore(options.concurrency());
+        System.out.printf("Product %d: stock=%d, requests=%d, concurrency=%d, start in %d ms, %s threads%n",
+                productId, options.stock(), options.requests(), options.concurrency(), options.startDelayMs(),
+                context.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class, false)
+                        ? "virtual" : "platform");
+
+        long startNanos = System.nanoTime() + Duration.between(LocalDateTime.now(), startTime).toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < offsets.length; i++) {
+                long due = startNanos + offsets[i];
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                inFlight.acquire();
+                int index = i;
+                executor.execute(() -> {
+                    try {
+                        purchase(client, uri);
+                    } finally {
+                        latencies[index] = System.nanoTime() - due;
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        report(latencies, elapsedNanos);
+        return verify(productId);
+    }
+
+    private Long createProduct(LocalDateTime startTime) {
+        return jdbcTemplate.queryForObject("""
+                        INSERT INTO seckill_product (name, description, price, stock, start_time, end_time, created_at, version)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, 0) RETURNING id""",
+                Long.class,
+                "压测商品", "flash sale load test", 1, options.stock(),
+                Timestamp.valueOf(startTime), Timestamp.valueOf(startTime.plusHours(1)),
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    private void purchase(HttpClient client, URI uri) {
+        String outcome;
+        try {
+            HttpResponse<byte[]> response = client.send(
+                    HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            SeckillResult result = response.body().length == 0
+                    ? null : objectMapper.readValue(response.body(), SeckillResult.class);
+            if (response.statusCode() == 200 && result != null && result.isSuccess()) {
+                successes.increment();
+                outcome = "200 ok";
+            } else {
+                outcome = response.statusCode() + " " + (result == null ? "" : result.getMessage());
+            }
+        } catch (Exception e) {
+            outcome = "exception " + e.getClass().getSimpleName();
+        }
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    private void report(long[] latencies, long elapsedNanos) {
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nCompleted %d requests in %.2f s (%.0f req/s)%n", latencies.length, seconds,
+                latencies.length / seconds);
+        System.out.printf("Latency ms: p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies[latencies.length - 1] / 1e6);
+        System.out.println("Outcomes:");
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.printf("  %-40s %d%n", outcome, count.sum()));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    /**
+     * 回收本节点持有的租约、回写库存并等待订单落库后，核对各处的售出数量；租约未全部归还时剩余库存被低估，同样判定失败
+     */
+    private boolean verify(Long productId) throws InterruptedException {
+        SeckillService seckillService = context.getBean(SeckillService.class);
+        seckillService.releaseLeasesOnShutdown();
+        seckillService.syncStockToDatabase();
+
+        long sold = successes.sum();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.settleTimeoutMs());
+        long orders = countOrders(productId);
+        while (orders < sold && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            orders = countOrders(productId);
+        }
+        long redisStock = redisStock(productId);
+        long leased = leasedStock(productId);
+        long dbStock = jdbcTemplate.queryForObject(
+                "SELECT stock FROM seckill_product WHERE id = ?", Long.class, productId);
+
+        System.out.printf("%nConsistency: initial=%d successes=%d redis=%d leased=%d db=%d orders=%d%n",
+                options.stock(), sold, redisStock, leased, dbStock, orders);
+        boolean consistent = redisStock >= 0
+                && leased == 0
+                && options.stock() - redisStock == sold
+                && dbStock == redisStock
+                && orders == sold;
+        System.out.println(consistent ? "PASS: no oversell, no undersell" : "FAIL: stock and sales disagree");
+        return consistent;
+    }
+
+    private long countOrders(Long productId) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM seckill_order WHERE product_id = ?", Long.class, productId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Redis 中的剩余库存：主库存 Hash 与所有分桶之和
+     */
+    private long redisStock(Long productId) {
+        StringRedisTemplate redis = context.getBean(StringRedisTemplate.class);
+        StockStripes stockStripes = context.getBean(StockStripes.class);
+        long total = 0;
+        for (int bucket = 0; bucket < stockStripes.bucketCount(productId); bucket++) {
+            Object value = redis.opsForHash().get(stockStripes.bucketKey(SeckillKeys.STOCK_CACHE_HASH, bucket),
+                    productId.toString());
+            total += value == null ? 0 : Long.parseLong(value.toString());
+        }
+        return total;
+    }
+
+    /**
+     * 仍处于租出状态的库存，全部租约归还后应为 0
+     */
+    private long leasedStock(Long productId) {
+        Object value = context.getBean(StringRedisTemplate.class).opsForHash()
+                .get(SeckillKeys.LEASED_STOCK_HASH, productId.toString());
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+}
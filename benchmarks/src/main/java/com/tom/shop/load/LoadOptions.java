@@ -0,0 +1,31 @@
+package com.tom.shop.load;
+
+/**
+ * 压测参数，均通过系统属性传入（{@code -Dload.requests=...}）
+ *
+ * @param requests       总请求数
+ * @param concurrency    同时在途的请求上限
+ * @param stock          压测商品的初始库存
+ * @param startDelayMs   应用启动完成到秒杀开始的间隔
+ * @param herdFraction   秒杀开始瞬间涌入的请求占比
+ * @param herdWindowMs   瞬时洪峰持续的时间
+ * @param tailMeanMs     洪峰之后长尾请求间隔的平均值（指数分布）
+ * @param settleTimeoutMs 压测结束后等待订单落库的最长时间
+ * @param seed           随机种子，保证到达曲线可复现
+ */
+public record LoadOptions(int requests, int concurrency, int stock, long startDelayMs, double herdFraction,
+                          long herdWindowMs, double tailMeanMs, long settleTimeoutMs, long seed) {
+
+    public static LoadOptions fromSystemProperties() {
+        return new LoadOptions(
+                Integer.getInteger("load.requests", 20000),
+                Integer.getInteger("load.concurrency", 2000),
+                Integer.getInteger("load.stock", 1000),
+                Long.getLong("load.start-delay-ms", 3000L),
+                Double.parseDouble(System.getProperty("load.herd-fraction", "0.8")),
+                Long.getLong("load.herd-window-ms", 200L),
+                Double.parseDouble(System.getProperty("load.tail-mean-ms", "0.5")),
+                Long.getLong("load.settle-timeout-ms", 30000L),
+                Long.getLong("load.seed", 42L));
+    }
+}
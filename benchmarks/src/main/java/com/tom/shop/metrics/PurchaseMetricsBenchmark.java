@@ -0,0 +1,107 @@
+package com.tom.shop.metrics;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.CountingMode;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次成功购买在 {@link PurchaseMetrics} 与 {@link PurchaseEvent} 上的全部埋点开销，不含任何 Redis 调用。
+ * <p>
+ * {@code enabled=false} 为基线；两者之差除以 {@code SeckillPurchaseBenchmark} 测得的单次扣减耗时即为埋点占比，
+ * 目标是在高峰并发（{@code purchaseContended}）下低于 1%。分位数配置与 application.yml 一致。
+ * 未开启 JFR 录制时 {@link PurchaseEvent#shouldCommit()} 恒为 false。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PurchaseMetricsBenchmark {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    @Param({"false", "true"})
+    private boolean enabled;
+
+    /**
+     * 1 表示每个请求都计时
+     */
+    @Param({"1", "8"})
+    private int sampleEvery;
+
+    private PurchaseMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        // 与 Spring Boot 默认的 SimpleMeterRegistry 一致，使用累计模式
+        SimpleMeterRegistry registry = new SimpleMeterRegistry(new SimpleConfig() {
+            @Override
+            public String get(String key) {
+                return null;
+            }
+
+            @Override
+            public CountingMode mode() {
+                return CountingMode.CUMULATIVE;
+            }
+        }, Clock.SYSTEM);
+        if (Boolean.getBoolean("bench.percentiles")) registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder().percentiles(PERCENTILES).build().merge(config);
+            }
+        });
+        metrics = new PurchaseMetrics(registry, enabled, sampleEvery);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int purchaseSingleThread() {
+        return instrumentedPurchase(42L);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int purchaseContended() {
+        return instrumentedPurchase(42L);
+    }
+
+    /**
+     * 与 SeckillService#performSeckill 成功路径上的埋点调用顺序一致
+     */
+    private int instrumentedPurchase(long productId) {
+        metrics.soldOutFastPath(false);
+        PurchaseEvent event = new PurchaseEvent();
+        event.begin();
+        metrics.beginRequest(event.isEnabled());
+
+        long redisStart = metrics.start();
+        metrics.roundTrip();
+        metrics.redisCommand("purchase", redisStart);
+        metrics.stage(PurchaseMetrics.Stage.TAKE_STOCK);
+
+        metrics.markDirty();
+        metrics.stage(PurchaseMetrics.Stage.JOURNAL);
+
+        metrics.stage(PurchaseMetrics.Stage.SUBMIT_ORDER);
+
+        metrics.endRequest();
+        if (event.shouldCommit()) {
+            event.productId = productId;
+            event.outcome = "success";
+            event.redisRoundTrips = metrics.requestRoundTrips();
+            event.takeStock = metrics.requestStageNanos(PurchaseMetrics.Stage.TAKE_STOCK);
+            event.submitOrder = metrics.requestStageNanos(PurchaseMetrics.Stage.SUBMIT_ORDER);
+            event.commit();
+        }
+        return metrics.requestRoundTrips();
+    }
+}
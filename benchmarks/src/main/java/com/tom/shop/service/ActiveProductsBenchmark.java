@@ -0,0 +1,46 @@
+package com.tom.shop.service;
+
+import com.tom.shop.bench.ProductFixtures;
+import com.tom.shop.model.SeckillProduct;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SeckillService#getActiveSeckillProducts()} 读取缓存后的过滤排序，以及 {@link SeckillService#isProductActive} 判断
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseG1GC", "-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ActiveProductsBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    private int productCount;
+
+    private List<SeckillProduct> products;
+
+    private LocalDateTime now;
+
+    @Setup
+    public void setUp() {
+        now = LocalDateTime.now();
+        products = ProductFixtures.products(productCount, now);
+    }
+
+    @Benchmark
+    public List<SeckillProduct> selectActive() {
+        return SeckillService.selectActive(products, now);
+    }
+
+    @Benchmark
+    public void isProductActive(Blackhole blackhole) {
+        for (SeckillProduct product : products) {
+            blackhole.consume(SeckillService.isProductActive(product, now));
+        }
+    }
+}
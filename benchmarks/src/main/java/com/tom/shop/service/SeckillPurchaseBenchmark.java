@@ -0,0 +1,101 @@
+package com.tom.shop.service;
+
+import com.tom.shop.config.RedisConfig;
+import com.tom.shop.metrics.PurchaseMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SeckillService#performSeckill(Long)} 的 Redis 扣减路径：EVALSHA 执行秒杀脚本的单次往返。
+ * <p>
+ * 需要本地 redis-server（{@code -Dbench.redis.host} / {@code -Dbench.redis.port} 可改地址），
+ * 使用独立的 {@code bench:} 前缀键，不影响应用数据。数据库回写与订单流水线不在测量范围内。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SeckillPurchaseBenchmark {
+
+    private static final String STOCK_KEY = "bench:seckill:stock";
+    private static final String WINDOW_KEY = "bench:seckill:window";
+    private static final String ACTIVE_KEY = "bench:seckill:active";
+    private static final String SOLD_OUT_KEY = "bench:seckill:soldout";
+    private static final List<String> KEYS = List.of(STOCK_KEY, WINDOW_KEY, ACTIVE_KEY, SOLD_OUT_KEY);
+    private static final String PRODUCT_ID = "1";
+
+    private AnnotationConfigApplicationContext context;
+
+    private RedisService redisService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(ConnectionConfig.class, RedisConfig.class,
+                PurchaseMetrics.class, RedisService.class);
+        redisService = context.getBean(RedisService.class);
+        Map<String, Object> window = new HashMap<>();
+        window.put(PRODUCT_ID + ":start", -1L);
+        window.put(PRODUCT_ID + ":end", -1L);
+        redisService.hSetAll(WINDOW_KEY, window);
+    }
+
+    @Setup(Level.Iteration)
+    public void refillStock() {
+        redisService.hSet(STOCK_KEY, PRODUCT_ID, Integer.MAX_VALUE);
+        redisService.removeFromSet(SOLD_OUT_KEY, PRODUCT_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        KEYS.forEach(redisService::delete);
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long purchaseSingleThread() {
+        return redisService.executeSeckill(KEYS, PRODUCT_ID, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Long purchaseContended() {
+        return redisService.executeSeckill(KEYS, PRODUCT_ID, System.currentTimeMillis());
+    }
+
+    @Configuration
+    static class ConnectionConfig {
+
+        @Bean
+        public LettuceConnectionFactory redisConnectionFactory() {
+            return new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                    System.getProperty("bench.redis.host", "localhost"),
+                    Integer.getInteger("bench.redis.port", 6379)));
+        }
+
+        @Bean
+        public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+            return new StringRedisTemplate(redisConnectionFactory);
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.tom.shop.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 平台线程池与虚拟线程两种请求处理模式在阻塞 I/O 下的对比，不依赖 Redis 与数据库。
+ * <p>
+ * 每次操作模拟一波 {@code burst} 个同时到达的购买请求：每个请求阻塞 {@code redisMicros}（Lua 扣减往返），
+ * 其中 {@code dbPercent}% 的请求再经过与 {@link DbBulkhead} 相同的舱壁阻塞 {@code dbMicros}（回源数据库）。
+ * {@code PLATFORM} 使用与 Tomcat 默认值相同的 200 线程池，{@code VIRTUAL} 每个请求一个虚拟线程。
+ * 端到端对比使用 FlashSaleLoadTest 分别以 {@code -Dload.virtual-threads=false/true} 运行。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThreadModeBenchmark {
+
+    public enum ThreadMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ThreadMode mode;
+
+    @Param({"10000"})
+    private int burst;
+
+    @Param({"500"})
+    private long redisMicros;
+
+    @Param({"0", "5"})
+    private int dbPercent;
+
+    @Param({"2000"})
+    private long dbMicros;
+
+    @Param({"8"})
+    private int dbConcurrency;
+
+    private ExecutorService executor;
+
+    private Semaphore bulkhead;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = mode == ThreadMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        bulkhead = new Semaphore(dbConcurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void purchaseBurst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(burst);
+        for (int i = 0; i < burst; i++) {
+            executor.execute(() -> {
+                try {
+                    handleRequest();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void handleRequest() {
+        block(redisMicros);
+        if (dbPercent > 0 && ThreadLocalRandom.current().nextInt(100) < dbPercent) {
+            bulkhead.acquireUninterruptibly();
+            try {
+                block(dbMicros);
+            } finally {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private static void block(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+}
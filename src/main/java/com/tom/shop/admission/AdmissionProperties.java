@@ -0,0 +1,58 @@
+package com.tom.shop.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀购买入口的准入控制配置，速率不大于 0 表示不限制
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.admission")
+public class AdmissionProperties {
+
+    /**
+     * 是否启用准入控制
+     */
+    private boolean enabled = false;
+
+    /**
+     * 全局每秒放行的请求数
+     */
+    private double globalRatePerSec = 0;
+
+    private long globalBurst = 1000;
+
+    /**
+     * 单个客户端每秒放行的请求数
+     */
+    private double clientRatePerSec = 0;
+
+    private long clientBurst = 10;
+
+    /**
+     * 客户端限流槽位数，客户端按哈希映射到槽位，冲突的客户端共享限额
+     */
+    private int clientSlots = 65536;
+
+    /**
+     * 客户端与本服务之间追加 {@code X-Forwarded-For} 的可信代理层数，为 0 时忽略该请求头、按连接的对端地址限流
+     */
+    private int trustedProxies = 0;
+
+    /**
+     * 单个商品每秒放行的请求数 = 剩余库存 × 该系数，桶容量同样按剩余库存换算
+     */
+    private double stockFactor = 2.0;
+
+    /**
+     * 单个商品每秒放行请求数的下限，避免剩余库存统计偏低时误拒
+     */
+    private double minProductRatePerSec = 50;
+
+    /**
+     * 同时处理中的购买请求上限，超出后直接拒绝
+     */
+    private int maxInFlight = 2000;
+}
@@ -0,0 +1,196 @@
+package com.tom.shop.admission;
+
+import com.tom.shop.dto.SeckillResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 购买入口的准入控制与快速拒绝。
+ * <p>
+ * 依次检查：处理中的请求数（负载削峰）、全局限流、客户端限流、按商品总库存换算的商品限流。
+ * 所有限流器均为无锁结构；被拒绝的请求直接返回预先构造好的响应，不创建 {@link SeckillResult}，也不访问 Redis。
+ * </p>
+ */
+@Component
+public class PurchaseAdmission {
+
+    public static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    public enum Decision {
+        ADMITTED,
+        SOLD_OUT,
+        SHED,
+        GLOBAL_LIMITED,
+        CLIENT_LIMITED,
+        PRODUCT_LIMITED
+    }
+
+    private static final Map<Decision, ResponseEntity<SeckillResult>> REJECTIONS = new EnumMap<>(Decision.class);
+
+    static {
+        REJECTIONS.put(Decision.SOLD_OUT, ResponseEntity.ok(SeckillResult.error("商品已售罄")));
+        REJECTIONS.put(Decision.SHED, ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(SeckillResult.error("系统繁忙，请稍后重试")));
+        ResponseEntity<SeckillResult> limited = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(SeckillResult.error("请求过于频繁，请稍后重试"));
+        REJECTIONS.put(Decision.GLOBAL_LIMITED, limited);
+        REJECTIONS.put(Decision.CLIENT_LIMITED, limited);
+        REJECTIONS.put(Decision.PRODUCT_LIMITED, limited);
+    }
+
+    @Resource
+    private AdmissionProperties admissionProperties;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ConcurrentHashMap<Long, RateLimiter> productLimiters = new ConcurrentHashMap<>();
+
+    private final Map<Decision, LongAdder> counters = new EnumMap<>(Decision.class);
+
+    private RateLimiter globalLimiter;
+
+    private RateLimiter[] clientLimiters;
+
+    private int clientMask;
+
+    @PostConstruct
+    public void init() {
+        globalLimiter = new RateLimiter(admissionProperties.getGlobalRatePerSec(), admissionProperties.getGlobalBurst());
+        int slots = Integer.highestOneBit(Math.max(admissionProperties.getClientSlots(), 2) - 1) << 1;
+        clientMask = slots - 1;
+        clientLimiters = new RateLimiter[slots];
+        for (int i = 0; i < slots; i++) {
+            clientLimiters[i] = new RateLimiter(admissionProperties.getClientRatePerSec(), admissionProperties.getClientBurst());
+        }
+        for (Decision decision : Decision.values()) {
+            counters.put(decision, new LongAdder());
+        }
+    }
+
+    public boolean isEnabled() {
+        return admissionProperties.isEnabled();
+    }
+
+    /**
+     * 尝试放行一个购买请求，放行后必须调用 {@link #exit()}，被拒绝时通过 {@link #rejection} 取得响应
+     */
+    public Decision tryEnter(Long productId, String clientKey) {
+        Decision decision = evaluate(productId, clientKey);
+        if (decision == Decision.ADMITTED) {
+            counters.get(decision).increment();
+        }
+        return decision;
+    }
+
+    public void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 客户端限流的键，Servlet 与响应式接口共用：携带用户ID时按用户限流；
+     * 否则取 {@code X-Forwarded-For} 中最近一层可信代理追加的地址（从右数第 trusted-proxies 个），客户端自行填写的部分不被采信；
+     * 未配置可信代理或请求头为空时使用连接的对端地址
+     */
+    public String clientKey(String userId, List<String> forwardedFor, String remoteAddr) {
+        if (userId != null) {
+            return "user:" + userId;
+        }
+        int trusted = admissionProperties.getTrustedProxies();
+        if (trusted > 0 && forwardedFor != null) {
+            String client = forwardedClient(forwardedFor, trusted);
+            if (client != null) {
+                return client;
+            }
+        }
+        return remoteAddr;
+    }
+
+    /**
+     * 从右向左数第 trusted 个地址，请求头中的地址不足时取最左边的一个；多行请求头按出现顺序拼接
+     */
+    private static String forwardedClient(List<String> values, int trusted) {
+        String client = null;
+        int seen = 0;
+        for (int v = values.size() - 1; v >= 0 && seen < trusted; v--) {
+            String value = values.get(v);
+            int end = value.length();
+            while (end >= 0 && seen < trusted) {
+                int comma = value.lastIndexOf(',', end - 1);
+                String hop = value.substring(comma + 1, end).trim();
+                if (!hop.isEmpty()) {
+                    client = hop;
+                    seen++;
+                }
+                end = comma;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 预先构造好的拒绝响应
+     */
+    public ResponseEntity<SeckillResult> rejection(Decision decision) {
+        counters.get(decision).increment();
+        return REJECTIONS.get(decision);
+    }
+
+    /**
+     * 根据商品在 Redis 中的总库存（所有分桶之和）调整商品限流器，库存越少放行越少。
+     * 在缓存、定期刷新与激活商品时调用；购买凭证中的剩余库存只是本节点租约或单个分桶的余量，不能用来换算
+     */
+    public void onStock(Long productId, Integer remaining) {
+        if (!isEnabled() || productId == null || remaining == null) {
+            return;
+        }
+        double rate = Math.max(admissionProperties.getMinProductRatePerSec(), remaining * admissionProperties.getStockFactor());
+        long burst = (long) Math.ceil(rate);
+        productLimiters.computeIfAbsent(productId, id -> new RateLimiter(rate, burst)).resize(rate, burst);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inFlight", inFlight.get());
+        counters.forEach((decision, counter) -> result.put(decision.name(), counter.sum()));
+        return result;
+    }
+
+    private Decision evaluate(Long productId, String clientKey) {
+        if (inFlight.incrementAndGet() > admissionProperties.getMaxInFlight()) {
+            inFlight.decrementAndGet();
+            return Decision.SHED;
+        }
+        long now = System.nanoTime();
+        Decision decision = Decision.ADMITTED;
+        if (!globalLimiter.tryAcquire(now)) {
+            decision = Decision.GLOBAL_LIMITED;
+        } else if (clientKey != null && !clientLimiters[mix(clientKey.hashCode()) & clientMask].tryAcquire(now)) {
+            decision = Decision.CLIENT_LIMITED;
+        } else {
+            RateLimiter productLimiter = productLimiters.get(productId);
+            if (productLimiter != null && !productLimiter.tryAcquire(now)) {
+                decision = Decision.PRODUCT_LIMITED;
+            }
+        }
+        if (decision != Decision.ADMITTED) {
+            inFlight.decrementAndGet();
+        }
+        return decision;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
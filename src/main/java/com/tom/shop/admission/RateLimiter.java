@@ -0,0 +1,48 @@
+package com.tom.shop.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA 实现）：只维护一个“理论到达时间”，一次 CAS 完成判断与扣减，不分配对象。
+ */
+public final class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    private volatile long intervalNanos;
+
+    private volatile long toleranceNanos;
+
+    public RateLimiter(double permitsPerSecond, long burst) {
+        resize(permitsPerSecond, burst);
+    }
+
+    /**
+     * 调整速率与桶容量，速率不大于 0 时不限流
+     */
+    public void resize(double permitsPerSecond, long burst) {
+        long interval = permitsPerSecond <= 0 ? 0 : (long) (NANOS_PER_SECOND / permitsPerSecond);
+        intervalNanos = interval;
+        toleranceNanos = interval * Math.max(burst - 1, 0);
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        long interval = intervalNanos;
+        if (interval == 0) {
+            return true;
+        }
+        long tolerance = toleranceNanos;
+        for (; ; ) {
+            long tat = theoreticalArrival.get();
+            long base = tat - nowNanos > 0 ? tat : nowNanos;
+            if (base - nowNanos > tolerance) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, base + interval)) {
+                return true;
+            }
+        }
+    }
+}
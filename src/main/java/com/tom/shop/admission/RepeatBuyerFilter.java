@@ -0,0 +1,164 @@
+package com.tom.shop.admission;
+
+import com.tom.shop.config.UserLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 本节点已达限购的（商品, 用户）组合的布隆过滤器，命中时不访问 Redis 直接拒绝。
+ * <p>
+ * 只在 Redis 确认用户已买满后写入，权威判断始终在限购脚本中完成；过滤器只用来挡住反复重试的用户。
+ * 两代位数组轮换：当前代写满 {@code seckill.user-limit.filter-capacity} 条、或每隔
+ * {@code seckill.user-limit.retain-after-end-ms} 的一半时成为上一代，原上一代丢弃，内存占用固定。
+ * 记录在写入后最多保留约 {@code retain-after-end-ms}，不会比 Redis 中随活动结束过期的购买记录保留得更久，
+ * 商品在新的活动时间重新开卖时不会挡住上一场买满的用户。误判会把未买满的用户当作已买满，误判率按配置控制在很低的水平。
+ * </p>
+ */
+@Component
+public class RepeatBuyerFilter {
+
+    @Resource
+    private UserLimitProperties userLimitProperties;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicReference<Generations> generations = new AtomicReference<>();
+
+    private long bitCount;
+
+    private int hashCount;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        long capacity = Math.max(userLimitProperties.getFilterCapacity(), 1);
+        double fpp = userLimitProperties.getFilterFalsePositiveRate();
+        long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max((bits + 63) / 64 * 64, 64);
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        generations.set(new Generations(newBits(), newBits()));
+        hits = Counter.builder("seckill.user-limit.prefilter").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("seckill.user-limit.prefilter").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * 该用户是否可能已在本节点确认买满；返回 false 时一定没有记录
+     */
+    public boolean mightHaveReachedLimit(Long productId, String userId) {
+        if (productId == null || userId == null) {
+            return false;
+        }
+        long hash = hash(productId, userId);
+        Generations current = generations.get();
+        boolean hit = contains(current.current, hash) || contains(current.previous, hash);
+        (hit ? hits : misses).increment();
+        return hit;
+    }
+
+    /**
+     * Redis 确认该用户已买满后调用
+     */
+    public void markReachedLimit(Long productId, String userId) {
+        if (productId == null || userId == null) {
+            return;
+        }
+        Generations current = generations.get();
+        long hash = hash(productId, userId);
+        if (contains(current.current, hash)) {
+            return;
+        }
+        set(current.current, hash);
+        if (current.insertions.incrementAndGet() >= userLimitProperties.getFilterCapacity()) {
+            // 并发写满时只有一个调用方完成换代
+            generations.compareAndSet(current, new Generations(newBits(), current.current));
+        }
+    }
+
+    /**
+     * 按时间换代，两次换代即丢弃，记录的保留时间不超过购买记录在 Redis 中的保留时间
+     */
+    @Scheduled(initialDelayString = "#{${seckill.user-limit.retain-after-end-ms:600000} / 2}",
+            fixedDelayString = "#{${seckill.user-limit.retain-after-end-ms:600000} / 2}")
+    public void rotate() {
+        Generations current = generations.get();
+        generations.compareAndSet(current, new Generations(newBits(), current.current));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("bits", bitCount);
+        result.put("hashes", hashCount);
+        result.put("insertions", generations.get().insertions.get());
+        result.put("hits", (long) hits.count());
+        result.put("misses", (long) misses.count());
+        return result;
+    }
+
+    private AtomicLongArray newBits() {
+        return new AtomicLongArray((int) (bitCount / 64));
+    }
+
+    private boolean contains(AtomicLongArray words, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(AtomicLongArray words, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long value;
+            do {
+                value = words.get(index);
+            } while ((value & mask) == 0 && !words.compareAndSet(index, value, value | mask));
+        }
+    }
+
+    /**
+     * 用户ID按 FNV-1a 取 64 位哈希，与商品ID混合
+     */
+    private static long hash(long productId, String userId) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : userId.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        h ^= productId * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private record Generations(AtomicLongArray current, AtomicLongArray previous, AtomicLong insertions) {
+
+        Generations(AtomicLongArray current, AtomicLongArray previous) {
+            this(current, previous, new AtomicLong());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.tom.shop.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tom.shop.config.ProductShieldProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 节点内的短期负缓存，记录数据库中不存在或不在活动时间内的商品，期间不再回源数据库。
+ * <p>
+ * 布隆过滤器误判放行的ID以及已下架、未开始的商品都会落到这里；条目在 {@code seckill.shield.negative-ttl-ms} 后过期，
+ * 商品重新写入缓存时立即清除。
+ * </p>
+ */
+@Component
+public class InactiveProductCache {
+
+    /**
+     * 负缓存的原因：商品不存在，或存在但不在活动时间内
+     */
+    public enum Reason {
+        ABSENT,
+        INACTIVE
+    }
+
+    @Resource
+    private ProductShieldProperties shieldProperties;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, Reason> cache;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(shieldProperties.getNegativeMaxSize())
+                .expireAfterWrite(Duration.ofMillis(shieldProperties.getNegativeTtlMs()))
+                .build();
+        hits = Counter.builder("seckill.shield.negative").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("seckill.shield.negative").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * 商品是否已确认不存在，用于商品详情查询
+     */
+    public boolean isAbsent(Long productId) {
+        return productId != null && record(cache.getIfPresent(productId) == Reason.ABSENT);
+    }
+
+    /**
+     * 商品是否不存在或不在活动时间内，用于购买
+     */
+    public boolean isNegative(Long productId) {
+        return productId != null && record(cache.getIfPresent(productId) != null);
+    }
+
+    public void markAbsent(Long productId) {
+        if (productId != null) {
+            cache.put(productId, Reason.ABSENT);
+        }
+    }
+
+    /**
+     * 已确认不存在的商品不会被降级为不在活动时间内
+     */
+    public void markInactive(Long productId) {
+        if (productId != null) {
+            cache.asMap().putIfAbsent(productId, Reason.INACTIVE);
+        }
+    }
+
+    public void invalidate(Collection<Long> productIds) {
+        cache.invalidateAll(productIds);
+    }
+
+    public Map<String, Object> stats() {
+        double hitCount = hits.count();
+        double missCount = misses.count();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("ttlMs", shieldProperties.getNegativeTtlMs());
+        result.put("hitCount", (long) hitCount);
+        result.put("missCount", (long) missCount);
+        result.put("hitRate", hitCount + missCount == 0 ? 0.0 : hitCount / (hitCount + missCount));
+        return result;
+    }
+
+    private boolean record(boolean hit) {
+        (hit ? hits : misses).increment();
+        return hit;
+    }
+}
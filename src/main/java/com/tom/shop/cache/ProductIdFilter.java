@@ -0,0 +1,316 @@
+package com.tom.shop.cache;
+
+import com.tom.shop.config.ProductShieldProperties;
+import com.tom.shop.mapper.SeckillProductMapper;
+import com.tom.shop.service.RedisBatch;
+import com.tom.shop.service.RedisService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.tom.shop.redis.SeckillKeys.PRODUCT_ID_FILTER_PREFIX;
+
+/**
+ * 全部商品ID的布隆过滤器，在任何 Redis 或数据库访问之前拒绝不存在的商品ID。
+ * <p>
+ * 本地位数组按 {@code seckill.shield.expected-ids} 与误判率计算大小，查询只读内存。
+ * 商品ID单调递增，定期按 ID 分页加载新增商品，并以 SETBIT 写入 Redis 位图
+ * （Key 中包含位数与哈希次数，配置变化时自动换用新位图）；新节点启动时直接读取 Redis 位图，只补齐之后新增的ID。
+ * 首次构建时整张位图以 BITOP OR 合并，多个节点同时构建也不会互相覆盖。
+ * ID 的分配顺序与事务提交顺序不一定一致，按 ID 增量加载可能跳过提交较晚的小 ID，因此不大于已加载最大ID的未命中
+ * 不直接拒绝：除非负缓存已确认该商品不存在，否则放行，由调用方回源数据库一次，结果写入负缓存，存在的商品随缓存加入过滤器。
+ * 大于最大ID的未命中直接拒绝，新商品在下一次同步、或被预热、激活、缓存时加入。
+ * 每隔 {@code seckill.shield.rebuild-ms} 全量扫描一次，把跳过的ID补进 Redis 位图，新节点无需逐个回源。
+ * 过滤器尚未加载完成或未启用时所有ID都视为可能存在。
+ * </p>
+ */
+@Component
+@Log4j2
+public class ProductIdFilter {
+
+    /**
+     * 一次同步新增的ID超过该数量时整张位图合并上传，否则逐位 SETBIT
+     */
+    private static final int BULK_UPLOAD_THRESHOLD = 10_000;
+
+    @Resource
+    private ProductShieldProperties shieldProperties;
+
+    @Resource
+    private SeckillProductMapper seckillProductMapper;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private InactiveProductCache inactiveProductCache;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private AtomicLongArray words;
+
+    private long bitCount;
+
+    private int hashCount;
+
+    private String bitmapKey;
+
+    private String maxIdKey;
+
+    /**
+     * 已加入过滤器的最大商品ID
+     */
+    private volatile long maxId;
+
+    private volatile boolean ready;
+
+    private Counter passed;
+
+    private Counter rejected;
+
+    private Counter unverified;
+
+    @PostConstruct
+    public void init() {
+        long expected = Math.max(shieldProperties.getExpectedIds(), 1);
+        double fpp = shieldProperties.getFalsePositiveRate();
+        long bits = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 按字节对齐，与 Redis 位图一一对应
+        bitCount = Math.max((bits + 63) / 64 * 64, 64);
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+        words = new AtomicLongArray((int) (bitCount / 64));
+        bitmapKey = PRODUCT_ID_FILTER_PREFIX + ":" + bitCount + ":" + hashCount;
+        maxIdKey = bitmapKey + ":max-id";
+        passed = Counter.builder("seckill.shield.bloom").tag("result", "passed").register(meterRegistry);
+        rejected = Counter.builder("seckill.shield.bloom").tag("result", "rejected").register(meterRegistry);
+        unverified = Counter.builder("seckill.shield.bloom").tag("result", "unverified").register(meterRegistry);
+        if (!shieldProperties.isEnabled()) {
+            return;
+        }
+        try {
+            loadFromRedis();
+            sync();
+        } catch (RuntimeException e) {
+            log.warn("Failed to build product id filter, all ids pass until the next sync", e);
+        }
+    }
+
+    /**
+     * 商品ID是否可能存在；返回 false 时一定不存在，或尚未同步到过滤器的新商品。
+     * 不大于已加载最大ID的未命中在负缓存确认不存在之前返回 true
+     */
+    public boolean mightContain(Long productId) {
+        if (!ready || productId == null) {
+            return true;
+        }
+        long hash = mix(productId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return onMiss(productId);
+            }
+        }
+        passed.increment();
+        return true;
+    }
+
+    /**
+     * 只加入本地过滤器，用于缓存商品时立即可见；Redis 位图由下一次同步补齐
+     */
+    public void add(Long productId) {
+        if (productId != null) {
+            for (long bit : bits(productId)) {
+                setLocal(bit);
+            }
+        }
+    }
+
+    /**
+     * 增量加载 maxId 之后的商品ID，加入本地过滤器并写入 Redis 位图；也可在新增商品后直接调用
+     */
+    @Scheduled(fixedDelayString = "${seckill.shield.sync-ms:5000}")
+    public synchronized void sync() {
+        if (!shieldProperties.isEnabled()) {
+            return;
+        }
+        long from = maxId;
+        long last = from;
+        int added = 0;
+        boolean bulk = !ready;
+        RedisBatch batch = redisService.batch();
+        while (true) {
+            List<Long> ids = seckillProductMapper.selectIdsAfter(last, shieldProperties.getBatchSize());
+            for (Long id : ids) {
+                for (long bit : bits(id)) {
+                    setLocal(bit);
+                    if (!bulk) {
+                        batch.setBit(bitmapKey, bit);
+                    }
+                }
+            }
+            added += ids.size();
+            if (!ids.isEmpty()) {
+                last = ids.get(ids.size() - 1);
+            }
+            if (!bulk && added > BULK_UPLOAD_THRESHOLD) {
+                bulk = true;
+            }
+            if (ids.size() < shieldProperties.getBatchSize()) {
+                break;
+            }
+        }
+        if (added > 0) {
+            if (bulk) {
+                redisService.mergeBitmap(bitmapKey, toRedisBitmap());
+                redisService.setString(maxIdKey, String.valueOf(last));
+            } else {
+                // 位先于最大ID写入，读到最大ID的节点一定能读到对应的位
+                batch.set(maxIdKey, String.valueOf(last));
+                batch.execute();
+            }
+            maxId = last;
+            log.debug("Product id filter added {} ids up to {}", added, last);
+        }
+        ready = true;
+    }
+
+    /**
+     * 全量扫描全部商品ID，补齐增量加载跳过的ID并合并到 Redis 位图
+     */
+    @Scheduled(initialDelayString = "${seckill.shield.rebuild-ms:600000}",
+            fixedDelayString = "${seckill.shield.rebuild-ms:600000}")
+    public void rebuild() {
+        if (!shieldProperties.isEnabled()) {
+            return;
+        }
+        long last = 0;
+        int scanned = 0;
+        while (true) {
+            List<Long> ids = seckillProductMapper.selectIdsAfter(last, shieldProperties.getBatchSize());
+            ids.forEach(this::add);
+            scanned += ids.size();
+            if (!ids.isEmpty()) {
+                last = ids.get(ids.size() - 1);
+            }
+            if (ids.size() < shieldProperties.getBatchSize()) {
+                break;
+            }
+        }
+        redisService.mergeBitmap(bitmapKey, toRedisBitmap());
+        log.debug("Product id filter rebuilt from {} ids", scanned);
+    }
+
+    /**
+     * 增量加载可能跳过提交晚于更大ID的商品，这类ID交给调用方回源数据库确认
+     */
+    private boolean onMiss(long productId) {
+        if (productId <= maxId && !inactiveProductCache.isAbsent(productId)) {
+            unverified.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", shieldProperties.isEnabled());
+        result.put("ready", ready);
+        result.put("bits", bitCount);
+        result.put("hashes", hashCount);
+        result.put("maxId", maxId);
+        result.put("passed", passed.count());
+        result.put("rejected", rejected.count());
+        result.put("unverified", unverified.count());
+        return result;
+    }
+
+    /**
+     * 读取其他节点已构建的位图；先读最大ID再读位图，位图只增不减，读到的位一定覆盖该ID之前的全部商品
+     */
+    private void loadFromRedis() {
+        String storedMaxId = redisService.getString(maxIdKey);
+        if (storedMaxId == null) {
+            return;
+        }
+        byte[] bitmap = redisService.getBytes(bitmapKey);
+        if (bitmap == null) {
+            return;
+        }
+        int length = (int) Math.min(bitmap.length, bitCount / 8);
+        for (int i = 0; i < length; i++) {
+            int value = bitmap[i] & 0xFF;
+            for (int j = 0; j < 8 && value != 0; j++) {
+                if ((value & (0x80 >>> j)) != 0) {
+                    setLocal((long) i * 8 + j);
+                }
+            }
+        }
+        maxId = Long.parseLong(storedMaxId);
+        ready = true;
+        log.info("Loaded product id filter from Redis up to id {}", maxId);
+    }
+
+    /**
+     * Redis 位图的第 n 位是第 n/8 个字节的高位起第 n%8 位
+     */
+    private byte[] toRedisBitmap() {
+        byte[] bitmap = new byte[(int) (bitCount / 8)];
+        for (int word = 0; word < words.length(); word++) {
+            long value = words.get(word);
+            while (value != 0) {
+                int bit = Long.numberOfTrailingZeros(value);
+                long offset = (long) word * 64 + bit;
+                bitmap[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+                value &= value - 1;
+            }
+        }
+        return bitmap;
+    }
+
+    private long[] bits(long productId) {
+        long hash = mix(productId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long[] result = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            result[i] = Math.floorMod(h1 + (long) i * h2, bitCount);
+        }
+        return result;
+    }
+
+    private void setLocal(long bit) {
+        int index = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(index);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(index, current, current | mask));
+    }
+
+    /**
+     * 64 位整数的混合函数，使连续ID的哈希均匀分布
+     */
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        return h;
+    }
+}
@@ -0,0 +1,164 @@
+package com.tom.shop.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tom.shop.model.SeckillProduct;
+import com.tom.shop.service.ActiveProductsSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 节点内的商品元数据一级缓存，位于 Redis {@code seckill:product:data} 之前。
+ * <p>
+ * 只缓存名称、价格、活动时间等几乎不变的字段，库存始终以 Redis 为准。
+ * 任一节点写入商品缓存时通过 Redis 频道广播失效消息，保证各节点一致。
+ * </p>
+ */
+@Component
+@Log4j2
+public class ProductLocalCache implements MessageListener {
+
+    private static final String INVALIDATE_CHANNEL = "seckill:product:invalidate";
+    private static final String INVALIDATE_ALL = "*";
+    private static final String ID_SEPARATOR = ",";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ActiveProductsSnapshot activeProductsSnapshot;
+
+    @Value("${seckill.l1.max-size:10000}")
+    private long maxSize;
+
+    @Value("${seckill.l1.ttl-ms:30000}")
+    private long ttlMs;
+
+    private Cache<Long, SeckillProduct> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 读取商品，未命中时通过 loader 从 Redis 加载；返回副本，调用方修改不会污染缓存
+     */
+    public SeckillProduct get(Long productId, Function<Long, SeckillProduct> loader) {
+        if (productId == null) {
+            return null;
+        }
+        return copyOf(cache.get(productId, loader));
+    }
+
+    /**
+     * 失效本节点并广播给其他节点
+     */
+    public void invalidate(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        cache.invalidate(productId);
+        activeProductsSnapshot.invalidate();
+        stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, productId.toString());
+    }
+
+    /**
+     * 批量失效，所有ID合并为一条广播消息
+     */
+    public void invalidate(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        cache.invalidateAll(productIds);
+        activeProductsSnapshot.invalidate();
+        stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL,
+                productIds.stream().map(String::valueOf).collect(Collectors.joining(ID_SEPARATOR)));
+    }
+
+    /**
+     * 清空所有节点的一级缓存
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        activeProductsSnapshot.invalidate();
+        stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, INVALIDATE_ALL);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        activeProductsSnapshot.invalidate();
+        if (INVALIDATE_ALL.equals(body)) {
+            cache.invalidateAll();
+            return;
+        }
+        for (String id : body.split(ID_SEPARATOR)) {
+            try {
+                cache.invalidate(Long.valueOf(id));
+            } catch (NumberFormatException ignored) {
+                log.warn("Invalid product ID in invalidation message: {}", id);
+            }
+        }
+    }
+
+    /**
+     * 命中、未命中、淘汰计数，用于评估容量设置
+     */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("maxSize", maxSize);
+        result.put("ttlMs", ttlMs);
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        return result;
+    }
+
+    private static SeckillProduct copyOf(SeckillProduct source) {
+        if (source == null) {
+            return null;
+        }
+        SeckillProduct copy = new SeckillProduct();
+        copy.setId(source.getId());
+        copy.setName(source.getName());
+        copy.setDescription(source.getDescription());
+        copy.setPrice(source.getPrice());
+        copy.setStock(source.getStock());
+        copy.setStartTime(source.getStartTime());
+        copy.setEndTime(source.getEndTime());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setVersion(source.getVersion());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        return copy;
+    }
+}
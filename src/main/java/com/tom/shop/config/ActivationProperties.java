@@ -0,0 +1,49 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀商品上下线调度配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.activation")
+public class ActivationProperties {
+
+    /**
+     * 领导者扫描数据库时纳入时间索引的范围（毫秒），即只索引该时长内将要开始的商品
+     */
+    private long horizonMs = 600000;
+
+    /**
+     * 商品开始前提前写入缓存的时长（毫秒）
+     */
+    private long prewarmMs = 30000;
+
+    /**
+     * 各节点读取时间索引的间隔（毫秒）
+     */
+    private long pollMs = 1000;
+
+    /**
+     * 每次读取时间索引时向后看的时长（毫秒），应大于读取间隔
+     */
+    private long lookaheadMs = 10000;
+
+    /**
+     * 时间轮刻度（毫秒），决定上下线的时间精度
+     */
+    private long tickMs = 10;
+
+    /**
+     * 领导者租约时长（毫秒）
+     */
+    private long leaseTtlMs = 15000;
+
+    /**
+     * 领导者续约间隔（毫秒），应明显小于租约时长
+     */
+    private long leaseRenewMs = 5000;
+}
@@ -0,0 +1,29 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 多商品、多数量批量购买的配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.bulk")
+public class BulkPurchaseProperties {
+
+    /**
+     * 是否开放批量购买接口
+     */
+    private boolean enabled = true;
+
+    /**
+     * 一次请求最多包含的商品数（合并重复商品之后）
+     */
+    private int maxLines = 20;
+
+    /**
+     * 一次请求中单个商品最多购买的数量
+     */
+    private int maxQuantityPerLine = 5;
+}
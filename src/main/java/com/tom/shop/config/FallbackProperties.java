@@ -0,0 +1,46 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis 不可用时直接在数据库扣减库存的降级配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.fallback")
+public class FallbackProperties {
+
+    /**
+     * 是否在 Redis 不可用时降级到数据库扣减，关闭后 Redis 故障直接返回错误
+     */
+    private boolean enabled = true;
+
+    /**
+     * 连续多少次 Redis 调用失败后断开，之后的购买请求不再访问 Redis
+     */
+    private int failureThreshold = 3;
+
+    /**
+     * 断开期间探测 Redis 的间隔（毫秒），同时也是认领降级售出数量并扣回 Redis 的间隔
+     */
+    private long probeMs = 1000;
+
+    /**
+     * 数据库扣减的合并窗口（微秒），同一商品窗口内的请求合并为一条语句
+     */
+    private long windowMicros = 2000;
+
+    /**
+     * 单条扣减语句最多合并的请求数
+     */
+    private int maxBatch = 256;
+
+    /**
+     * 降级期间每个商品最后保留不在数据库售出的数量。各节点只在本节点熔断时回写自己的本地日志，
+     * 其他节点一个回写周期内的 Redis 售出可能尚未反映在数据库中，保留数量应不小于
+     * 单节点最大未回写售出数量乘以节点数，否则恢复后可能超卖
+     */
+    private int reservedStock = 100;
+}
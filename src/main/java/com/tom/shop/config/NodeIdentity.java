@@ -0,0 +1,39 @@
+package com.tom.shop.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 当前节点的标识，用于集群内的租约归属等场景。
+ * 未配置 {@code seckill.node-id} 时使用主机名加随机后缀，保证同一主机上的多个实例互不冲突。
+ */
+@Component
+@Log4j2
+public class NodeIdentity {
+
+    private final String id;
+
+    public NodeIdentity(@Value("${seckill.node-id:}") String configuredId) {
+        this.id = configuredId == null || configuredId.isBlank() ? generate() : configuredId.trim();
+        log.info("Seckill node id: {}", id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private static String generate() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "node";
+        }
+        return host + "-" + Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+    }
+}
@@ -0,0 +1,54 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存穿透防护配置：商品ID布隆过滤器与不可购买商品的短期负缓存
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.shield")
+public class ProductShieldProperties {
+
+    /**
+     * 是否启用布隆过滤器，关闭后所有ID都视为可能存在
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预计的商品总数，超出后误判率上升
+     */
+    private long expectedIds = 1_000_000;
+
+    /**
+     * 目标误判率
+     */
+    private double falsePositiveRate = 0.01;
+
+    /**
+     * 从数据库增量加载新商品ID并同步到 Redis 位图的间隔（毫秒）
+     */
+    private long syncMs = 5000;
+
+    /**
+     * 全量扫描商品ID并合并到 Redis 位图的间隔（毫秒），补齐增量加载因提交顺序跳过的ID
+     */
+    private long rebuildMs = 600_000;
+
+    /**
+     * 每次分页加载的商品ID数量
+     */
+    private int batchSize = 1000;
+
+    /**
+     * 不存在或不在活动时间内的商品的负缓存时间（毫秒）
+     */
+    private long negativeTtlMs = 5000;
+
+    /**
+     * 负缓存最多记录的商品数
+     */
+    private long negativeMaxSize = 100_000;
+}
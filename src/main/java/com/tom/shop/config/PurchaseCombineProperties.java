@@ -0,0 +1,41 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 同一商品并发购买请求的合并配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.combine")
+public class PurchaseCombineProperties {
+
+    /**
+     * 是否启用请求合并
+     */
+    private boolean enabled = false;
+
+    /**
+     * 启用合并的商品ID，为空时对所有未分桶、未租约的商品生效
+     */
+    private Set<Long> products = new HashSet<>();
+
+    /**
+     * 合并窗口（微秒），窗口结束或凑满一批即发起扣减
+     */
+    private long windowMicros = 1000;
+
+    /**
+     * 单批最多合并的请求数
+     */
+    private int maxBatch = 64;
+
+    public boolean isCombined(Long productId) {
+        return enabled && (products.isEmpty() || products.contains(productId));
+    }
+}
@@ -0,0 +1,55 @@
+package com.tom.shop.config;
+
+import com.tom.shop.mapper.SeckillProductMapper;
+import com.tom.shop.service.DbBulkhead;
+import com.tom.shop.service.PurchaseCombiner;
+import com.tom.shop.service.RedisService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static com.tom.shop.redis.SeckillKeys.*;
+
+@Configuration
+public class PurchaseCombinerConfig {
+
+    private static final List<String> TAKE_SCRIPT_KEYS =
+            List.of(STOCK_CACHE_HASH, WINDOW_CACHE_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY);
+
+    /**
+     * 基于 Redis 的合并扣减：一批请求只执行一次扣减脚本
+     */
+    @Bean
+    public PurchaseCombiner redisPurchaseCombiner(RedisService redisService, PurchaseCombineProperties properties) {
+        return new PurchaseCombiner((productId, requested, nowMillis) -> {
+            List<Long> result = redisService.executeTake(TAKE_SCRIPT_KEYS, productId.toString(), requested, nowMillis);
+            if (result == null || result.size() < 2) {
+                return new PurchaseCombiner.BatchTake(RedisService.SECKILL_NOT_CACHED, 0);
+            }
+            return new PurchaseCombiner.BatchTake(result.get(0), result.get(1));
+        }, properties.getWindowMicros(), properties.getMaxBatch());
+    }
+
+    /**
+     * Redis 不可用时基于数据库的合并扣减：一批请求只执行一条条件扣减语句，行锁保证不超卖
+     */
+    @Bean
+    public PurchaseCombiner dbPurchaseCombiner(SeckillProductMapper seckillProductMapper, DbBulkhead dbBulkhead,
+                                               FallbackProperties properties) {
+        return new PurchaseCombiner((productId, requested, nowMillis) -> {
+            LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneId.systemDefault());
+            Map<String, Object> result = dbBulkhead.call(() -> seckillProductMapper.takeStock(productId, requested,
+                    properties.getReservedStock(), now));
+            if (result == null || !(result.get("granted") instanceof Number granted)) {
+                return new PurchaseCombiner.BatchTake(RedisService.SECKILL_INACTIVE, 0);
+            }
+            long remaining = result.get("remaining") instanceof Number number ? number.longValue() : 0;
+            return new PurchaseCombiner.BatchTake(granted.longValue(), remaining);
+        }, properties.getWindowMicros(), properties.getMaxBatch());
+    }
+}
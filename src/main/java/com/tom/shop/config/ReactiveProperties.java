@@ -0,0 +1,39 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 非阻塞购买接口配置，在独立端口上以 Reactor Netty 提供与 {@code /shop/item/*} 相同的路由
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.reactive")
+public class ReactiveProperties {
+
+    /**
+     * 是否启动非阻塞接口
+     */
+    private boolean enabled = false;
+
+    /**
+     * 监听端口，与 Servlet 接口并存
+     */
+    private int port = 8019;
+
+    /**
+     * 同时处理中的请求上限，超出时直接返回 503
+     */
+    private int maxInFlight = 100000;
+
+    /**
+     * 需要回退到阻塞实现（回源数据库、分桶/租约/合并商品）时使用的线程数
+     */
+    private int blockingThreads = 16;
+
+    /**
+     * 回退任务的排队上限，排满时直接返回 503
+     */
+    private int blockingQueue = 1000;
+}
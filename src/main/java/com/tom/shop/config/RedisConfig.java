@@ -4,18 +4,28 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tom.shop.redis.ProductCodec;
+import com.tom.shop.redis.ProductCodecRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       @Value("${seckill.redis.product-codec:JSON}") ProductCodec productCodec) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(redisConnectionFactory);
 
@@ -24,8 +34,38 @@ public class RedisConfig {
         template.setHashKeySerializer(new StringRedisSerializer());
 
 
+        RedisSerializer<Object> valueSerializer = valueSerializer(productCodec);
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
+
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * 响应式模板，序列化方式与 {@link #redisTemplate} 一致，两套接口读写同一份缓存
+     */
+    @Bean
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory reactiveRedisConnectionFactory,
+                                                                       @Value("${seckill.redis.product-codec:JSON}") ProductCodec productCodec) {
+        RedisSerializer<Object> valueSerializer = valueSerializer(productCodec);
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(valueSerializer)
+                .hashKey(new StringRedisSerializer())
+                .hashValue(valueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, context);
+    }
+
+    /**
+     * 值序列化器：商品对象按 {@code seckill.redis.product-codec} 选择的格式写入，其余值使用 JSON，读取时两种格式均可识别
+     */
+    public static RedisSerializer<Object> valueSerializer(ProductCodec productCodec) {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        // 商品的时间字段为 LocalDateTime，需要 JSR-310 模块才能序列化
+        objectMapper.registerModule(new JavaTimeModule());
 
         // 安全地启用多态类型（防止反序列化漏洞）
         objectMapper.activateDefaultTyping(
@@ -37,12 +77,17 @@ public class RedisConfig {
 
         Jackson2JsonRedisSerializer<Object> jsonRedisSerializer =
                 new Jackson2JsonRedisSerializer<>(objectMapper, Object.class);
+        return new ProductCodecRedisSerializer(jsonRedisSerializer, productCodec);
+    }
 
-        template.setValueSerializer(jsonRedisSerializer);
-        template.setHashValueSerializer(jsonRedisSerializer);
-
-        template.afterPropertiesSet();
-        return template;
+    /**
+     * 统一的 Pub/Sub 监听容器，各节点间的缓存失效等广播消息均通过它订阅
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
     }
 
 }
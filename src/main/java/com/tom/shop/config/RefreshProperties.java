@@ -0,0 +1,37 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 领导者定期从数据库刷新商品缓存的方式
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.refresh")
+public class RefreshProperties {
+
+    public enum Mode {
+        /**
+         * 每次重新加载全部进行中的商品
+         */
+        FULL,
+        /**
+         * 只加载 updated_at 水位线之后修改过的商品
+         */
+        DELTA
+    }
+
+    private Mode mode = Mode.DELTA;
+
+    /**
+     * 增量刷新时水位线回退的时长（毫秒），覆盖提交时间晚于水位线的长事务
+     */
+    private long overlapMs = 5000;
+
+    /**
+     * 增量刷新每页读取的行数
+     */
+    private int batchSize = 500;
+}
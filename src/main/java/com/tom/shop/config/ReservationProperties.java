@@ -0,0 +1,49 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 库存预留配置：预留后在 {@code ttl-ms} 内确认才生成订单，超时未确认的库存自动归还
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.reservation")
+public class ReservationProperties {
+
+    /**
+     * 是否开放预留接口
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预留的有效期（毫秒）
+     */
+    private long ttlMs = 300_000;
+
+    /**
+     * 到期时间轮的刻度（毫秒），决定库存归还的时间精度
+     */
+    private long tickMs = 100;
+
+    /**
+     * 到期时间轮每层的槽位数
+     */
+    private int wheelSize = 512;
+
+    /**
+     * 单次预留的最大数量
+     */
+    private int maxQuantity = 5;
+
+    /**
+     * 预留到期超过该时长（毫秒）仍未释放时，视为所属节点已下线，由领导者代为释放
+     */
+    private long orphanGraceMs = 60_000;
+
+    /**
+     * 领导者检查过期预留的间隔（毫秒）
+     */
+    private long sweepMs = 5000;
+}
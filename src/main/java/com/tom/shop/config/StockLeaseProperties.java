@@ -0,0 +1,62 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 节点库存租约配置：节点一次从 Redis 领取一批库存，在本地内存中发放
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.lease")
+public class StockLeaseProperties {
+
+    /**
+     * 是否启用库存租约
+     */
+    private boolean enabled = false;
+
+    /**
+     * 启用租约的商品ID，为空时对所有商品生效
+     */
+    private Set<Long> products = new HashSet<>();
+
+    /**
+     * 单次领取的最小数量
+     */
+    private int minBlock = 10;
+
+    /**
+     * 单次领取的最大数量
+     */
+    private int maxBlock = 1000;
+
+    /**
+     * 期望一批库存覆盖的本地售卖时长（毫秒），按近期售卖速率换算领取数量
+     */
+    private long targetWindowMs = 200;
+
+    /**
+     * 租约空闲超过该时长（毫秒）后归还未售出库存
+     */
+    private long idleMs = 3000;
+
+    /**
+     * 库存被其他节点租约占用时，本节点在该时长（毫秒）内直接拒绝而不访问 Redis
+     */
+    private long heldRetryMs = 50;
+
+    /**
+     * 检查空闲租约的间隔（毫秒），持有租约的节点同时按该间隔续期心跳
+     */
+    private long checkMs = 1000;
+
+    /**
+     * 节点心跳有效期（毫秒），超过该时长未续期的节点视为下线，其租约由领导者回收
+     */
+    private long heartbeatTtlMs = 10000;
+}
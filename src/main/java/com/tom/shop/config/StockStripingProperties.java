@@ -0,0 +1,48 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分桶库存配置：将热点商品的库存拆分到多个 Hash Key，分散单 Key 压力
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.striping")
+public class StockStripingProperties {
+
+    /**
+     * 是否启用分桶库存
+     */
+    private boolean enabled = false;
+
+    /**
+     * 选桶策略
+     */
+    private Strategy strategy = Strategy.HASH;
+
+    /**
+     * 未单独配置的商品默认分桶数，1 表示不分桶
+     */
+    private int defaultBuckets = 1;
+
+    /**
+     * 按商品ID单独配置分桶数
+     */
+    private Map<Long, Integer> products = new HashMap<>();
+
+    public enum Strategy {
+        /**
+         * 按请求线程哈希选桶
+         */
+        HASH,
+        /**
+         * 按商品轮询选桶
+         */
+        ROUND_ROBIN
+    }
+}
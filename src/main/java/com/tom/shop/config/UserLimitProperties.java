@@ -0,0 +1,61 @@
+package com.tom.shop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 每用户限购与重复请求去重配置。用户通过请求头 {@code X-User-Id} 标识，幂等键通过 {@code Idempotency-Key} 传入
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "seckill.user-limit")
+public class UserLimitProperties {
+
+    /**
+     * 是否启用限购与去重，关闭后忽略用户与幂等键请求头
+     */
+    private boolean enabled = true;
+
+    /**
+     * 是否要求购买请求携带用户ID，关闭时不带用户ID的请求不限购
+     */
+    private boolean requireUser = false;
+
+    /**
+     * 每个用户对单个商品的默认限购数量
+     */
+    private int defaultLimit = 1;
+
+    /**
+     * 按商品覆盖的限购数量
+     */
+    private Map<Long, Integer> limits = new HashMap<>();
+
+    /**
+     * 活动结束后购买记录与幂等键的保留时间（毫秒），覆盖活动末尾的重试
+     */
+    private long retainAfterEndMs = 600_000;
+
+    /**
+     * 活动不限结束时间时购买记录的保留时间（毫秒）
+     */
+    private long openWindowTtlMs = 86_400_000;
+
+    /**
+     * 本地已达限购用户预过滤器每一代容纳的记录数，写满后换代，内存占用固定
+     */
+    private long filterCapacity = 1_000_000;
+
+    /**
+     * 本地预过滤器的误判率，误判会把未达限购的用户当作已达限购
+     */
+    private double filterFalsePositiveRate = 0.0001;
+
+    public int limitOf(Long productId) {
+        return limits.getOrDefault(productId, defaultLimit);
+    }
+}
@@ -0,0 +1,122 @@
+package com.tom.shop.controller;
+
+import com.tom.shop.admission.PurchaseAdmission;
+import com.tom.shop.admission.RepeatBuyerFilter;
+import com.tom.shop.cache.InactiveProductCache;
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.cache.ProductLocalCache;
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.service.RedisCircuitBreaker;
+import com.tom.shop.service.ReservationService;
+import jakarta.annotation.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/shop/monitor")
+public class MonitorController {
+
+    @Resource
+    private ProductLocalCache productLocalCache;
+
+    @Resource
+    private PurchaseAdmission purchaseAdmission;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+
+    @Resource
+    private ReactiveSeckillHandler reactiveSeckillHandler;
+
+    @Resource
+    private ReactiveSeckillServer reactiveSeckillServer;
+
+    @Resource
+    private ProductIdFilter productIdFilter;
+
+    @Resource
+    private InactiveProductCache inactiveProductCache;
+
+    @Resource
+    private RepeatBuyerFilter repeatBuyerFilter;
+
+    @Resource
+    private ReservationService reservationService;
+
+    /**
+     * 查看本节点商品一级缓存的命中与淘汰统计
+     */
+    @GetMapping("/l1-cache")
+    public ResponseEntity<Map<String, Object>> getLocalCacheStats() {
+        return ResponseEntity.ok(productLocalCache.stats());
+    }
+
+    /**
+     * 查看购买链路各阶段耗时、每请求 Redis 往返次数、售罄快速拒绝命中率与库存回写延迟，
+     * 完整的直方图见 {@code /actuator/metrics/seckill.purchase.stage}
+     */
+    @GetMapping("/purchase")
+    public ResponseEntity<Map<String, Object>> getPurchaseStats() {
+        return ResponseEntity.ok(purchaseMetrics.stats());
+    }
+
+    /**
+     * 查看购买入口的放行与各类拒绝计数
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(purchaseAdmission.stats());
+    }
+
+    /**
+     * 查看 Redis 熔断状态与降级期间在数据库完成的购买数
+     */
+    @GetMapping("/fallback")
+    public ResponseEntity<Map<String, Object>> getFallbackStats() {
+        return ResponseEntity.ok(redisCircuitBreaker.stats());
+    }
+
+    /**
+     * 查看非阻塞接口的监听端口、处理中请求数与因背压拒绝的请求数
+     */
+    @GetMapping("/reactive")
+    public ResponseEntity<Map<String, Object>> getReactiveStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("port", reactiveSeckillServer.port());
+        result.putAll(reactiveSeckillHandler.stats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查看商品ID布隆过滤器的拒绝计数与负缓存命中率
+     */
+    @GetMapping("/shield")
+    public ResponseEntity<Map<String, Object>> getShieldStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("bloom", productIdFilter.stats());
+        result.put("negative", inactiveProductCache.stats());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查看本地已达限购用户预过滤器的命中情况
+     */
+    @GetMapping("/user-limit")
+    public ResponseEntity<Map<String, Object>> getUserLimitStats() {
+        return ResponseEntity.ok(repeatBuyerFilter.stats());
+    }
+
+    /**
+     * 查看本节点待到期的预留数量，以及预留、确认、取消、到期与代为释放的次数
+     */
+    @GetMapping("/reservation")
+    public ResponseEntity<Map<String, Object>> getReservationStats() {
+        return ResponseEntity.ok(reservationService.stats());
+    }
+}
@@ -0,0 +1,262 @@
+package com.tom.shop.controller;
+
+import com.tom.shop.admission.PurchaseAdmission;
+import com.tom.shop.config.BulkPurchaseProperties;
+import com.tom.shop.config.ReactiveProperties;
+import com.tom.shop.config.ReservationProperties;
+import com.tom.shop.dto.Buyer;
+import com.tom.shop.dto.PurchaseLine;
+import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.service.ActiveProductsSnapshot;
+import com.tom.shop.service.DbBulkhead;
+import com.tom.shop.service.ReactiveSeckillService;
+import com.tom.shop.service.SoldOutRegistry;
+import jakarta.annotation.Resource;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 非阻塞版本的 {@link SeckillController}，路由与响应格式保持一致。
+ * <p>
+ * 所有路由共享一个处理中请求计数，超过 {@code seckill.reactive.max-in-flight} 时立即返回 503；
+ * 回退到阻塞实现的线程池或数据库舱壁排满时同样返回 503，请求不会在服务端无限排队。
+ * </p>
+ */
+@Component
+public class ReactiveSeckillHandler {
+
+    /**
+     * 长轮询的最长等待时间
+     */
+    private static final long MAX_ORDER_WAIT_MS = 30000;
+
+    private static final SeckillResult BUSY = SeckillResult.error("系统繁忙，请稍后重试");
+
+    private static final ParameterizedTypeReference<List<PurchaseLine>> PURCHASE_LINES = new ParameterizedTypeReference<>() {
+    };
+
+    @Resource
+    private ReactiveSeckillService reactiveSeckillService;
+
+    @Resource
+    private PurchaseAdmission purchaseAdmission;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private ReactiveProperties reactiveProperties;
+
+    @Resource
+    private BulkPurchaseProperties bulkPurchaseProperties;
+
+    @Resource
+    private ReservationProperties reservationProperties;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .GET("/shop/item/products", request -> limited(this::getActiveSeckillProducts, request))
+                .GET("/shop/item/product/{id}", request -> limited(this::getSeckillProduct, request))
+                .POST("/shop/item/purchase/{productId}", request -> limited(this::performSeckill, request))
+                .POST("/shop/item/purchase", request -> limited(this::performBulkSeckill, request))
+                .POST("/shop/item/reserve/{productId}", request -> limited(this::reserve, request))
+                .POST("/shop/item/reservation/{reservationId}/confirm", request -> limited(this::confirmReservation, request))
+                .POST("/shop/item/reservation/{reservationId}/cancel", request -> limited(this::cancelReservation, request))
+                .GET("/shop/item/order/{ticket}", request -> limited(this::getOrder, request))
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inFlight", inFlight.get());
+        result.put("rejected", rejected.sum());
+        return result;
+    }
+
+    /**
+     * 获取所有正在进行的秒杀商品，ETag 未变化时返回 304
+     */
+    private Mono<ServerResponse> getActiveSeckillProducts(ServerRequest request) {
+        String ifNoneMatch = request.headers().firstHeader(HttpHeaders.IF_NONE_MATCH);
+        return reactiveSeckillService.getActiveProductsSnapshot().flatMap(snapshot -> snapshotResponse(snapshot, ifNoneMatch));
+    }
+
+    /**
+     * 根据ID获取秒杀商品详情
+     */
+    private Mono<ServerResponse> getSeckillProduct(ServerRequest request) {
+        Long id = Long.valueOf(request.pathVariable("id"));
+        return reactiveSeckillService.getSeckillProductById(id)
+                .flatMap(product -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(product))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    /**
+     * 执行秒杀操作，准入控制与 Servlet 接口共用同一组限流器
+     */
+    private Mono<ServerResponse> performSeckill(ServerRequest request) {
+        Long productId = Long.valueOf(request.pathVariable("productId"));
+        Buyer buyer = Buyer.of(request.headers().firstHeader(Buyer.USER_HEADER),
+                request.headers().firstHeader(Buyer.REQUEST_KEY_HEADER));
+        if (!purchaseAdmission.isEnabled()) {
+            return reactiveSeckillService.performSeckill(productId, buyer).flatMap(ReactiveSeckillHandler::ok);
+        }
+        if (soldOutRegistry.isSoldOut(productId)) {
+            return fromEntity(purchaseAdmission.rejection(PurchaseAdmission.Decision.SOLD_OUT));
+        }
+        PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(productId, clientKey(request, buyer));
+        if (decision != PurchaseAdmission.Decision.ADMITTED) {
+            return fromEntity(purchaseAdmission.rejection(decision));
+        }
+        return reactiveSeckillService.performSeckill(productId, buyer)
+                .flatMap(ReactiveSeckillHandler::ok)
+                .doFinally(signal -> purchaseAdmission.exit());
+    }
+
+    /**
+     * 批量购买，准入控制按整个请求计一次，商品限流以清单中的第一个商品为准
+     */
+    private Mono<ServerResponse> performBulkSeckill(ServerRequest request) {
+        if (!bulkPurchaseProperties.isEnabled()) {
+            return ServerResponse.notFound().build();
+        }
+        Buyer buyer = Buyer.of(request.headers().firstHeader(Buyer.USER_HEADER), null);
+        String clientKey = clientKey(request, buyer);
+        return request.bodyToMono(PURCHASE_LINES).defaultIfEmpty(List.of()).flatMap(lines -> {
+            PurchaseLine first = lines.isEmpty() ? null : lines.get(0);
+            if (!purchaseAdmission.isEnabled() || first == null || first.getProductId() == null) {
+                return reactiveSeckillService.performBulkSeckill(lines, buyer).flatMap(ReactiveSeckillHandler::ok);
+            }
+            PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(first.getProductId(), clientKey);
+            if (decision != PurchaseAdmission.Decision.ADMITTED) {
+                return fromEntity(purchaseAdmission.rejection(decision));
+            }
+            return reactiveSeckillService.performBulkSeckill(lines, buyer)
+                    .flatMap(ReactiveSeckillHandler::ok)
+                    .doFinally(signal -> purchaseAdmission.exit());
+        });
+    }
+
+    /**
+     * 预留库存，准入控制与购买接口相同
+     */
+    private Mono<ServerResponse> reserve(ServerRequest request) {
+        if (!reservationProperties.isEnabled()) {
+            return ServerResponse.notFound().build();
+        }
+        Long productId = Long.valueOf(request.pathVariable("productId"));
+        int quantity = request.queryParam("quantity").map(Integer::valueOf).orElse(1);
+        Buyer buyer = Buyer.of(request.headers().firstHeader(Buyer.USER_HEADER), null);
+        if (!purchaseAdmission.isEnabled()) {
+            return reactiveSeckillService.reserve(productId, quantity, buyer).flatMap(ReactiveSeckillHandler::ok);
+        }
+        if (soldOutRegistry.isSoldOut(productId)) {
+            return fromEntity(purchaseAdmission.rejection(PurchaseAdmission.Decision.SOLD_OUT));
+        }
+        PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(productId, clientKey(request, buyer));
+        if (decision != PurchaseAdmission.Decision.ADMITTED) {
+            return fromEntity(purchaseAdmission.rejection(decision));
+        }
+        return reactiveSeckillService.reserve(productId, quantity, buyer)
+                .flatMap(ReactiveSeckillHandler::ok)
+                .doFinally(signal -> purchaseAdmission.exit());
+    }
+
+    private Mono<ServerResponse> confirmReservation(ServerRequest request) {
+        return reactiveSeckillService.confirmReservation(request.pathVariable("reservationId"))
+                .flatMap(ReactiveSeckillHandler::ok);
+    }
+
+    private Mono<ServerResponse> cancelReservation(ServerRequest request) {
+        return reactiveSeckillService.cancelReservation(request.pathVariable("reservationId"))
+                .flatMap(ReactiveSeckillHandler::ok);
+    }
+
+    /**
+     * 根据购买凭证查询订单状态，waitMs 大于 0 时在订单写入完成前挂起请求（长轮询），等待期间不占用线程
+     */
+    private Mono<ServerResponse> getOrder(ServerRequest request) {
+        String ticket = request.pathVariable("ticket");
+        long waitMs = request.queryParam("waitMs").map(Long::valueOf).orElse(0L);
+        long timeout = Math.min(Math.max(waitMs, 0), MAX_ORDER_WAIT_MS);
+        return reactiveSeckillService.getOrder(ticket, timeout)
+                .flatMap(order -> ok(SeckillResult.ok(order)))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    /**
+     * 处理中请求数超过上限时直接拒绝；阻塞线程池或数据库舱壁排满时返回 503
+     */
+    private Mono<ServerResponse> limited(Function<ServerRequest, Mono<ServerResponse>> handler,
+                                         ServerRequest request) {
+        if (inFlight.incrementAndGet() > reactiveProperties.getMaxInFlight()) {
+            inFlight.decrementAndGet();
+            return busy();
+        }
+        return Mono.defer(() -> handler.apply(request))
+                .onErrorResume(e -> e instanceof RejectedExecutionException || e instanceof DbBulkhead.BusyException,
+                        e -> busy())
+                .onErrorResume(NumberFormatException.class, e -> ServerResponse.badRequest().build())
+                .doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    private static Mono<ServerResponse> snapshotResponse(ActiveProductsSnapshot.Snapshot snapshot, String ifNoneMatch) {
+        if (snapshot.matches(ifNoneMatch)) {
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .bodyValue(snapshot.body());
+    }
+
+    private static Mono<ServerResponse> ok(SeckillResult result) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(result);
+    }
+
+    private Mono<ServerResponse> busy() {
+        rejected.increment();
+        return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.APPLICATION_JSON).bodyValue(BUSY);
+    }
+
+    private String clientKey(ServerRequest request, Buyer buyer) {
+        String remoteAddr = request.remoteAddress()
+                .map(InetSocketAddress::getAddress)
+                .map(InetAddress::getHostAddress)
+                .orElse(null);
+        return purchaseAdmission.clientKey(buyer.userId(),
+                request.headers().header(PurchaseAdmission.FORWARDED_FOR_HEADER), remoteAddr);
+    }
+
+    private static Mono<ServerResponse> fromEntity(ResponseEntity<SeckillResult> entity) {
+        return ServerResponse.status(entity.getStatusCode()).contentType(MediaType.APPLICATION_JSON).bodyValue(entity.getBody());
+    }
+}
@@ -0,0 +1,73 @@
+package com.tom.shop.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tom.shop.config.ReactiveProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * 在独立端口上启动 Reactor Netty，承载 {@link ReactiveSeckillHandler} 的路由。
+ * <p>
+ * 应用主体仍是 Servlet 栈，这里不依赖 WebFlux 自动配置，只用少量事件循环线程处理全部连接；
+ * JSON 编解码使用应用的 {@link ObjectMapper}，与 Servlet 接口输出一致。
+ * </p>
+ */
+@Component
+@Log4j2
+public class ReactiveSeckillServer {
+
+    @Resource
+    private ReactiveSeckillHandler reactiveSeckillHandler;
+
+    @Resource
+    private ReactiveProperties reactiveProperties;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private DisposableServer server;
+
+    @PostConstruct
+    public void start() {
+        if (!reactiveProperties.isEnabled()) {
+            return;
+        }
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(reactiveSeckillHandler.routes(), strategies);
+        server = HttpServer.create()
+                .port(reactiveProperties.getPort())
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("Reactive seckill endpoints listening on port {}", server.port());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    /**
+     * 实际监听的端口，未启动时返回 -1
+     */
+    public int port() {
+        return server == null ? -1 : server.port();
+    }
+}
@@ -1,28 +1,85 @@
 package com.tom.shop.controller;
 
+import com.tom.shop.admission.PurchaseAdmission;
+import com.tom.shop.config.BulkPurchaseProperties;
+import com.tom.shop.config.ReservationProperties;
+import com.tom.shop.dto.Buyer;
+import com.tom.shop.dto.PurchaseLine;
 import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.model.SeckillOrder;
 import com.tom.shop.model.SeckillProduct;
+import com.tom.shop.service.ActiveProductsSnapshot;
+import com.tom.shop.service.DbBulkhead;
+import com.tom.shop.service.OrderPipeline;
+import com.tom.shop.service.ReservationService;
 import com.tom.shop.service.SeckillService;
+import com.tom.shop.service.SoldOutRegistry;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/shop/item")
 public class SeckillController {
 
+    /**
+     * 长轮询的最长等待时间
+     */
+    private static final long MAX_ORDER_WAIT_MS = 30000;
+
     @Resource
     private SeckillService seckillService;
 
+    @Resource
+    private OrderPipeline orderPipeline;
+
+    @Resource
+    private PurchaseAdmission purchaseAdmission;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    @Resource
+    private BulkPurchaseProperties bulkPurchaseProperties;
+
+    @Resource
+    private ReservationService reservationService;
+
+    @Resource
+    private ReservationProperties reservationProperties;
+
     /**
-     * 获取所有正在进行的秒杀商品
+     * 获取所有正在进行的秒杀商品，直接输出预序列化的快照，ETag 未变化时返回 304
      */
     @GetMapping("/products")
-    public ResponseEntity<List<SeckillProduct>> getActiveSeckillProducts() {
-        var products = seckillService.getActiveSeckillProducts();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<byte[]> getActiveSeckillProducts(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ActiveProductsSnapshot.Snapshot snapshot = seckillService.getActiveProductsSnapshot();
+        if (snapshot.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(snapshot.body());
     }
 
     /**
@@ -39,11 +96,140 @@ public class SeckillController {
     }
 
     /**
-     * 执行秒杀操作
+     * 执行秒杀操作，携带 {@code X-User-Id} 时按用户限购，携带 {@code Idempotency-Key} 时重复请求返回首次请求的凭证
      */
     @PostMapping("/purchase/{productId}")
-    public ResponseEntity<SeckillResult> performSeckill(@PathVariable Long productId) {
-        SeckillResult result = seckillService.performSeckill(productId);
-        return ResponseEntity.ok(result);
+    public ResponseEntity<SeckillResult> performSeckill(@PathVariable Long productId,
+                                                        @RequestHeader(value = Buyer.USER_HEADER, required = false) String userId,
+                                                        @RequestHeader(value = Buyer.REQUEST_KEY_HEADER, required = false) String requestKey,
+                                                        HttpServletRequest request) {
+        Buyer buyer = Buyer.of(userId, requestKey);
+        if (!purchaseAdmission.isEnabled()) {
+            return ResponseEntity.ok(seckillService.performSeckill(productId, buyer));
+        }
+        if (soldOutRegistry.isSoldOut(productId)) {
+            // 未命中时由 SeckillService 再次检查并计数，这里只记录命中
+            purchaseMetrics.soldOutFastPath(true);
+            return purchaseAdmission.rejection(PurchaseAdmission.Decision.SOLD_OUT);
+        }
+        PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(productId, clientKey(request, buyer));
+        if (decision != PurchaseAdmission.Decision.ADMITTED) {
+            return purchaseAdmission.rejection(decision);
+        }
+        try {
+            return ResponseEntity.ok(seckillService.performSeckill(productId, buyer));
+        } finally {
+            purchaseAdmission.exit();
+        }
+    }
+
+    /**
+     * 批量购买多个商品，每个商品可购买多件，全部成功或全部失败；成功时每个商品返回一张购买凭证。
+     * 准入控制按整个请求计一次，商品限流以清单中的第一个商品为准；携带 {@code X-User-Id} 时按用户限购。
+     */
+    @PostMapping("/purchase")
+    public ResponseEntity<SeckillResult> performBulkSeckill(@RequestBody List<PurchaseLine> lines,
+                                                            @RequestHeader(value = Buyer.USER_HEADER, required = false) String userId,
+                                                            HttpServletRequest request) {
+        Buyer buyer = Buyer.of(userId, null);
+        if (!bulkPurchaseProperties.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(SeckillResult.error("批量购买未开放"));
+        }
+        if (!purchaseAdmission.isEnabled() || lines == null || lines.isEmpty() || lines.get(0) == null
+                || lines.get(0).getProductId() == null) {
+            return ResponseEntity.ok(seckillService.performBulkSeckill(lines, buyer));
+        }
+        PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(lines.get(0).getProductId(), clientKey(request, buyer));
+        if (decision != PurchaseAdmission.Decision.ADMITTED) {
+            return purchaseAdmission.rejection(decision);
+        }
+        try {
+            return ResponseEntity.ok(seckillService.performBulkSeckill(lines, buyer));
+        } finally {
+            purchaseAdmission.exit();
+        }
+    }
+
+    /**
+     * 预留 quantity 件库存，在返回的 expiresAt 之前确认才生成订单，超时未确认自动归还；准入控制与购买接口相同
+     */
+    @PostMapping("/reserve/{productId}")
+    public ResponseEntity<SeckillResult> reserve(@PathVariable Long productId,
+                                                 @RequestParam(defaultValue = "1") int quantity,
+                                                 @RequestHeader(value = Buyer.USER_HEADER, required = false) String userId,
+                                                 HttpServletRequest request) {
+        if (!reservationProperties.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(SeckillResult.error("库存预留未开放"));
+        }
+        Buyer buyer = Buyer.of(userId, null);
+        if (!purchaseAdmission.isEnabled()) {
+            return ResponseEntity.ok(reservationService.reserve(productId, quantity, buyer));
+        }
+        if (soldOutRegistry.isSoldOut(productId)) {
+            return purchaseAdmission.rejection(PurchaseAdmission.Decision.SOLD_OUT);
+        }
+        PurchaseAdmission.Decision decision = purchaseAdmission.tryEnter(productId, clientKey(request, buyer));
+        if (decision != PurchaseAdmission.Decision.ADMITTED) {
+            return purchaseAdmission.rejection(decision);
+        }
+        try {
+            return ResponseEntity.ok(reservationService.reserve(productId, quantity, buyer));
+        } finally {
+            purchaseAdmission.exit();
+        }
+    }
+
+    /**
+     * 确认预留并提交订单，返回的购买凭证即预留时的 ticket
+     */
+    @PostMapping("/reservation/{reservationId}/confirm")
+    public ResponseEntity<SeckillResult> confirmReservation(@PathVariable String reservationId) {
+        return ResponseEntity.ok(reservationService.confirm(reservationId));
+    }
+
+    /**
+     * 取消预留，库存立即归还
+     */
+    @PostMapping("/reservation/{reservationId}/cancel")
+    public ResponseEntity<SeckillResult> cancelReservation(@PathVariable String reservationId) {
+        return ResponseEntity.ok(reservationService.cancel(reservationId));
+    }
+
+    /**
+     * 根据购买凭证查询订单状态，waitMs 大于 0 时在订单写入完成前挂起请求（长轮询）
+     */
+    @GetMapping("/order/{ticket}")
+    public DeferredResult<ResponseEntity<SeckillResult>> getOrder(@PathVariable String ticket,
+                                                                  @RequestParam(defaultValue = "0") long waitMs) {
+        long timeout = Math.min(Math.max(waitMs, 0), MAX_ORDER_WAIT_MS);
+        DeferredResult<ResponseEntity<SeckillResult>> deferred = new DeferredResult<>(timeout > 0 ? timeout : null);
+        CompletableFuture<SeckillOrder> completion = timeout > 0 ? orderPipeline.completion(ticket) : null;
+        if (completion == null) {
+            deferred.setResult(toOrderResponse(orderPipeline.findOrder(ticket)));
+            return deferred;
+        }
+        deferred.onTimeout(() -> deferred.setResult(toOrderResponse(orderPipeline.findOrder(ticket))));
+        completion.thenAccept(order -> deferred.setResult(toOrderResponse(order)));
+        return deferred;
+    }
+
+    /**
+     * 回源数据库的并发已达上限
+     */
+    @ExceptionHandler(DbBulkhead.BusyException.class)
+    public ResponseEntity<SeckillResult> handleDbBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(SeckillResult.error("系统繁忙，请稍后重试"));
+    }
+
+    private ResponseEntity<SeckillResult> toOrderResponse(SeckillOrder order) {
+        if (order == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(SeckillResult.ok(order));
+    }
+
+    private String clientKey(HttpServletRequest request, Buyer buyer) {
+        return purchaseAdmission.clientKey(buyer.userId(),
+                Collections.list(request.getHeaders(PurchaseAdmission.FORWARDED_FOR_HEADER)), request.getRemoteAddr());
     }
 }
@@ -1,5 +1,6 @@
 package com.tom.shop.controller;
 
+import com.tom.shop.service.RedisBatch;
 import com.tom.shop.service.RedisService;
 import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.*;
@@ -22,8 +23,11 @@ public class UserController {
         userInfo.put("age", 30);
         userInfo.put("email", "alice@example.com");
 
-        redisService.hSetAll("user:1001", userInfo);
-        redisService.expire("user:1001", 30, TimeUnit.MINUTES); // 30分钟过期
+        // 写入与设置过期放在同一事务中，一次往返且不会留下没有过期时间的 key
+        RedisBatch transaction = redisService.transaction();
+        transaction.hSetAll("user:1001", userInfo);
+        transaction.expire("user:1001", 30, TimeUnit.MINUTES); // 30分钟过期
+        transaction.execute();
 
         return "OK";
     }
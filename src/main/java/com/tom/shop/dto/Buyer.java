@@ -0,0 +1,22 @@
+package com.tom.shop.dto;
+
+/**
+ * 购买请求的用户ID与幂等键，来自请求头 {@code X-User-Id} 与 {@code Idempotency-Key}，未携带时为 null
+ */
+public record Buyer(String userId, String requestKey) {
+
+    public static final Buyer ANONYMOUS = new Buyer(null, null);
+
+    public static final String USER_HEADER = "X-User-Id";
+
+    public static final String REQUEST_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * 空白的请求头视为未携带
+     */
+    public static Buyer of(String userId, String requestKey) {
+        String user = userId == null || userId.isBlank() ? null : userId.trim();
+        String key = requestKey == null || requestKey.isBlank() ? null : requestKey.trim();
+        return user == null && key == null ? ANONYMOUS : new Buyer(user, key);
+    }
+}
@@ -0,0 +1,18 @@
+package com.tom.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量购买中的一行：商品与数量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseLine {
+
+    private Long productId;
+
+    private Integer quantity;
+}
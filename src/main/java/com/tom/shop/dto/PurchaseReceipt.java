@@ -0,0 +1,27 @@
+package com.tom.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 秒杀成功后的购买凭证，仅携带轻量字段，避免回传完整商品对象
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseReceipt {
+
+    /**
+     * 购买凭证，用于查询异步创建的订单状态
+     */
+    private String ticket;
+
+    private Long productId;
+
+    /**
+     * 扣减后的剩余库存。分桶商品为所扣分桶的剩余数量，租约商品为本节点租约中的剩余数量，均不是全局库存；
+     * 重复请求返回首次凭证时为 null
+     */
+    private Integer remainingStock;
+}
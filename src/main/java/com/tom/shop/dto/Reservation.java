@@ -0,0 +1,29 @@
+package com.tom.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 库存预留凭证，在 expiresAt 之前确认才生成订单，确认后的订单凭证为 ticket
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reservation {
+
+    private String reservationId;
+
+    private String ticket;
+
+    private Long productId;
+
+    private Integer quantity;
+
+    private Integer remainingStock;
+
+    /**
+     * 到期时间（毫秒）
+     */
+    private Long expiresAt;
+}
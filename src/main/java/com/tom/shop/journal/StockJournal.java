@@ -0,0 +1,430 @@
+package com.tom.shop.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Redis 库存回写数据库前的本地预写日志（write-behind journal）。
+ * <p>
+ * 三个定长的内存映射文件分别担任活动段、已封存待回写段与备用段，每次库存变化追加一条 16 字节记录，写入时不做 fsync，
+ * 由后台线程按 {@code seckill.journal.flush-ms} 间隔统一刷盘（group commit）。
+ * 回写任务开始前 {@link #rotate(Runnable)} 封存当前段并在同一临界区内取出待回写ID，批量写入数据库成功后 {@link #truncate(int)} 清空该段。
+ * 写入方在段上登记后才写记录并标记待回写，封存时等待该段的写入方全部退出，封存段中的每条记录都一定已标记待回写，清空时不会丢失。
+ * 进程异常退出后，启动时通过 {@link #replay()} 找回尚未落库的库存。
+ * </p>
+ * <p>
+ * 段头记录代数（generation），每条记录的校验值包含所属代数，清空后迟到的旧记录与写了一半的记录在重放时都会被忽略。
+ * 库存可能回升（租约归还、预留释放），重放时同一商品取最后一条记录；并发写入同一商品时顺序以写入位置为准，
+ * 恢复时仍会以 Redis 中的当前值重新回写。活动段写满时（通常是数据库不可用、封存段迟迟不能清空）
+ * 把每个商品的最后一条记录压缩到备用段后切换，不丢弃记录。
+ * </p>
+ */
+@Component
+@Log4j2
+public class StockJournal {
+
+    /**
+     * 库存值未知，重放时需以 Redis 中的当前值为准
+     */
+    public static final int UNKNOWN_STOCK = -1;
+
+    private static final long MAGIC = 0x5345434B4A524E4CL;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+    private static final int SEGMENT_COUNT = 3;
+
+    @Value("${seckill.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${seckill.journal.dir:./data/journal}")
+    private String directory;
+
+    @Value("${seckill.journal.segment-bytes:16777216}")
+    private int segmentBytes;
+
+    @Value("${seckill.journal.flush-ms:20}")
+    private long flushMs;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    private final AtomicLong generations = new AtomicLong();
+
+    /**
+     * 压缩后仍放不下全部商品时丢弃的记录数，正常情况下始终为 0
+     */
+    private final LongAdder droppedRecords = new LongAdder();
+
+    private volatile int activeIndex;
+
+    /**
+     * 已封存、等待回写成功后清空的段，没有时为 -1
+     */
+    private int sealedIndex = -1;
+
+    /**
+     * 段切换、压缩与清空之间的互斥，虚拟线程持锁时不会钉住载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            Path file = dir.resolve("stock-" + i + ".journal");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+            }
+            generations.accumulateAndGet(segments[i].readGeneration(), Math::max);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flush();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 追加一条库存变化记录，不等待刷盘；记录写入后、段封存前调用 onAppended（通常是标记待回写）
+     */
+    public void append(long productId, int stock, LongConsumer onAppended) {
+        if (!enabled) {
+            onAppended.accept(productId);
+            return;
+        }
+        while (true) {
+            Segment segment = segments[activeIndex];
+            boolean full = false;
+            segment.writers.incrementAndGet();
+            try {
+                // 登记后再次确认仍是活动段，与 rotate/compact 中先切换、再等待写入方退出的顺序配对
+                if (segment == segments[activeIndex] && !segment.compacting) {
+                    int position = segment.position.getAndAdd(RECORD_BYTES);
+                    if (position + RECORD_BYTES <= segmentBytes) {
+                        segment.write(position, productId, stock);
+                        onAppended.accept(productId);
+                        return;
+                    }
+                    full = true;
+                }
+            } finally {
+                segment.writers.decrementAndGet();
+            }
+            if (full && !compact(segment)) {
+                // 压缩也腾不出空间：只保留待回写标记，下一次回写以 Redis 为准
+                droppedRecords.increment();
+                onAppended.accept(productId);
+                return;
+            }
+            if (!full && segment.compacting) {
+                // 等待压缩完成
+                lock.lock();
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 封存当前活动段并切换到备用段，在同一临界区内执行 drain（取出待回写ID），返回回写成功后应清空的段。
+     * 若上一次封存的段尚未清空（上次回写失败），则不切换，继续返回该段。
+     */
+    public int rotate(Runnable drain) {
+        if (!enabled) {
+            drain.run();
+            return -1;
+        }
+        lock.lock();
+        try {
+            if (sealedIndex < 0 && !segments[activeIndex].isEmpty()) {
+                Segment sealed = segments[activeIndex];
+                sealedIndex = activeIndex;
+                activeIndex = spareIndex();
+                sealed.awaitWriters();
+            }
+            drain.run();
+            return sealedIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回写成功后清空指定段
+     */
+    public void truncate(int segmentIndex) {
+        if (!enabled || segmentIndex < 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (segmentIndex == sealedIndex) {
+                segments[segmentIndex].reset(generations.incrementAndGet());
+                sealedIndex = -1;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取所有段中尚未清空的记录，按段代数从旧到新合并，同一商品取最后一条，返回商品ID到库存的映射，
+     * 值为 {@link #UNKNOWN_STOCK} 表示只知道库存有变化
+     */
+    public Map<Long, Integer> replay() {
+        Map<Long, Integer> result = new HashMap<>();
+        if (!enabled) {
+            return result;
+        }
+        lock.lock();
+        try {
+            Segment[] ordered = Arrays.copyOf(segments, SEGMENT_COUNT);
+            Arrays.sort(ordered, Comparator.comparingLong(segment -> segment.generation));
+            for (Segment segment : ordered) {
+                segment.read().forEach((productId, stock) -> result.merge(productId, stock, StockJournal::mergeStock));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (droppedRecords.sum() > 0) {
+            log.error("Stock journal dropped {} records because compaction could not free a segment", droppedRecords.sum());
+        }
+        return result;
+    }
+
+    /**
+     * 重放完成且已写入数据库后清空全部段
+     */
+    public void reset() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.reset(generations.incrementAndGet());
+            }
+            activeIndex = 0;
+            sealedIndex = -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long droppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    /**
+     * 活动段已满：把每个商品的最后一条记录写入备用段并刷盘，再切换活动段、清空原段。
+     * 刷盘前崩溃时原段仍完整，刷盘后两段同时有效，备用段代数更大，重放结果相同。
+     * 返回 false 表示段中商品数超过段容量，压缩腾不出空间，该段清空前不再重复压缩
+     */
+    private boolean compact(Segment full) {
+        lock.lock();
+        try {
+            if (full != segments[activeIndex] || full.position.get() + RECORD_BYTES <= segmentBytes) {
+                return true;
+            }
+            if (full.saturated) {
+                return false;
+            }
+            full.compacting = true;
+            full.awaitWriters();
+            int fullIndex = activeIndex;
+            int targetIndex = spareIndex();
+            Segment target = segments[targetIndex];
+            target.reset(generations.incrementAndGet());
+            int position = HEADER_BYTES;
+            for (Map.Entry<Long, Integer> entry : full.read().entrySet()) {
+                if (position + RECORD_BYTES > segmentBytes) {
+                    droppedRecords.increment();
+                    continue;
+                }
+                target.write(position, entry.getKey(), entry.getValue());
+                position += RECORD_BYTES;
+            }
+            target.position.set(position);
+            target.buffer.force();
+            activeIndex = targetIndex;
+            full.reset(generations.incrementAndGet());
+            full.compacting = false;
+            if (position + RECORD_BYTES > segmentBytes) {
+                target.saturated = true;
+                log.error("Stock journal segment cannot hold one record per product, increase seckill.journal.segment-bytes");
+                return false;
+            }
+            log.warn("Stock journal segment full, compacted to {} bytes", position);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 既不是活动段也不是封存段的段，调用方需持有锁
+     */
+    private int spareIndex() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            if (i != activeIndex && i != sealedIndex) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no spare journal segment");
+    }
+
+    private void flush() {
+        for (Segment segment : segments) {
+            if (segment != null && !segment.isEmpty()) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    private static int checksum(long productId, int stock, long generation) {
+        long h = (productId * 0x9E3779B97F4A7C15L) ^ (stock * 0xC2B2AE3D27D4EB4FL) ^ generation ^ MAGIC;
+        int result = (int) (h ^ (h >>> 32));
+        return result == 0 ? 1 : result;
+    }
+
+    private final class Segment {
+
+        private final MappedByteBuffer buffer;
+
+        private final AtomicInteger position = new AtomicInteger(HEADER_BYTES);
+
+        /**
+         * 正在本段写记录的线程数
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private volatile boolean compacting;
+
+        /**
+         * 本段由压缩产生且已装满，清空前不再压缩，只在持有锁时访问
+         */
+        private boolean saturated;
+
+        private volatile long generation;
+
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.generation = readGeneration();
+            if (buffer.getLong(0) != MAGIC) {
+                writeHeader(generation);
+            }
+        }
+
+        private long readGeneration() {
+            return buffer.getLong(0) == MAGIC ? buffer.getLong(8) : 0L;
+        }
+
+        private boolean isEmpty() {
+            return position.get() <= HEADER_BYTES;
+        }
+
+        private void write(int position, long productId, int stock) {
+            buffer.putLong(position, productId);
+            buffer.putInt(position + 8, stock);
+            buffer.putInt(position + 12, checksum(productId, stock, generation));
+        }
+
+        /**
+         * 等待已登记的写入方写完，调用前活动段已切走或已标记压缩，不会再有新的写入方
+         */
+        private void awaitWriters() {
+            while (writers.get() != 0) {
+                Thread.onSpinWait();
+            }
+        }
+
+        /**
+         * 读取本段有效记录，同一商品取最后一条已知库存
+         */
+        private Map<Long, Integer> read() {
+            Map<Long, Integer> stocks = new LinkedHashMap<>();
+            if (buffer.getLong(0) != MAGIC) {
+                return stocks;
+            }
+            int limit = HEADER_BYTES;
+            for (int offset = HEADER_BYTES; offset + RECORD_BYTES <= segmentBytes; offset += RECORD_BYTES) {
+                long productId = buffer.getLong(offset);
+                int stock = buffer.getInt(offset + 8);
+                int check = buffer.getInt(offset + 12);
+                if (check == 0 || check != checksum(productId, stock, generation)) {
+                    continue;
+                }
+                limit = offset + RECORD_BYTES;
+                stocks.merge(productId, stock, StockJournal::mergeStock);
+            }
+            position.accumulateAndGet(limit, Math::max);
+            return stocks;
+        }
+
+        private void reset(long newGeneration) {
+            int end = Math.min(position.get(), segmentBytes);
+            for (int offset = HEADER_BYTES; offset < end; offset += RECORD_BYTES) {
+                buffer.putLong(offset, 0L);
+                buffer.putLong(offset + 8, 0L);
+            }
+            writeHeader(newGeneration);
+            position.set(HEADER_BYTES);
+            saturated = false;
+            buffer.force();
+        }
+
+        private void writeHeader(long newGeneration) {
+            generation = newGeneration;
+            buffer.putLong(8, newGeneration);
+            buffer.putLong(0, MAGIC);
+        }
+    }
+
+    /**
+     * 已知库存覆盖之前的记录；未知库存只说明有变化，不覆盖已知值
+     */
+    private static int mergeStock(int previous, int current) {
+        return current == UNKNOWN_STOCK ? previous : current;
+    }
+}
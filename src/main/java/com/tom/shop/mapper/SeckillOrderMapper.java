@@ -0,0 +1,29 @@
+package com.tom.shop.mapper;
+
+import com.tom.shop.model.SeckillOrder;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+public interface SeckillOrderMapper {
+
+    /**
+     * 批量写入订单，凭证重复时忽略（写入重试场景）
+     */
+    @Insert("<script>" +
+            "INSERT INTO seckill_order (ticket, product_id, quantity, status, created_at) VALUES " +
+            "<foreach collection='orders' item='order' separator=','>" +
+            "(#{order.ticket}, #{order.productId}, #{order.quantity}, #{order.status}, #{order.createdAt})" +
+            "</foreach>" +
+            " ON CONFLICT (ticket) DO NOTHING" +
+            "</script>")
+    int batchInsert(@Param("orders") List<SeckillOrder> orders);
+
+    /**
+     * 根据购买凭证查询订单
+     */
+    @Select("SELECT * FROM seckill_order WHERE ticket = #{ticket}")
+    SeckillOrder selectByTicket(@Param("ticket") String ticket);
+}
@@ -6,7 +6,9 @@ import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface SeckillProductMapper {
 
@@ -16,12 +18,44 @@ public interface SeckillProductMapper {
     @Select("SELECT * FROM seckill_product WHERE start_time <= #{now} AND end_time >= #{now} AND stock > 0")
     List<SeckillProduct> selectActiveSeckillProducts(@Param("now") LocalDateTime now);
 
+    /**
+     * 查询尚未结束且在 until 之前开始的秒杀商品，用于建立活动时间索引
+     */
+    @Select("SELECT * FROM seckill_product WHERE end_time >= #{now} AND start_time <= #{until}")
+    List<SeckillProduct> selectUpcomingSeckillProducts(@Param("now") LocalDateTime now,
+                                                       @Param("until") LocalDateTime until);
+
+    /**
+     * 按 (updated_at, id) 顺序分页查询水位线之后修改过的商品，用于增量刷新缓存
+     */
+    @Select("SELECT * FROM seckill_product WHERE (updated_at, id) > (#{since}, #{sinceId}) " +
+            "ORDER BY updated_at, id LIMIT #{limit}")
+    List<SeckillProduct> selectChangedSince(@Param("since") LocalDateTime since, @Param("sinceId") long sinceId,
+                                            @Param("limit") int limit);
+
     /**
      * 根据商品ID查询正在进行的秒杀商品
      */
     @Select("SELECT * FROM seckill_product WHERE id = #{id} AND start_time <= #{now} AND end_time >= #{now} AND stock > 0")
     SeckillProduct selectActiveSeckillProductById(@Param("id") Long id, @Param("now") LocalDateTime now);
 
+    /**
+     * 批量查询指定ID中正在进行且有库存的秒杀商品，用于批量购买时加载尚未缓存的商品
+     */
+    @Select("<script>" +
+            "SELECT * FROM seckill_product WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            " AND start_time &lt;= #{now} AND end_time &gt;= #{now} AND stock &gt; 0" +
+            "</script>")
+    List<SeckillProduct> selectActiveSeckillProductsByIds(@Param("ids") Collection<Long> ids,
+                                                          @Param("now") LocalDateTime now);
+
+    /**
+     * 按 ID 顺序分页查询 afterId 之后的商品ID，用于增量构建商品ID过滤器
+     */
+    @Select("SELECT id FROM seckill_product WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Long> selectIdsAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
     /**
      * 根据ID查询商品详情
      */
@@ -35,14 +69,59 @@ public interface SeckillProductMapper {
     Integer selectStockById(@Param("id") Long id);
 
     /**
-     * 在并发场景下扣减库存并更新版本号
+     * Redis 不可用时以一条语句为一批请求扣减至多 requested 件库存：在行锁内校验库存与活动时间，
+     * 同时累加 degraded_sold 供 Redis 恢复后扣回。最后 reserved 件不在数据库售出，留给其他节点尚未回写的 Redis 售出。
+     * 返回 granted（实际扣减数量；-1 已售罄，-2 不在活动时间内或商品不存在）与 remaining（扣减后除保留数量外的剩余库存）
      */
-    @Update("UPDATE seckill_product SET stock = stock - 1, version = version + 1 WHERE id = #{id} AND stock = #{currentStock} AND stock > 0")
-    int decrementStock(@Param("id") Long id, @Param("currentStock") Integer currentStock);
+    @Select("WITH target AS (SELECT id, stock - #{reserved} AS sellable FROM seckill_product WHERE id = #{id} " +
+            "AND stock > #{reserved} AND start_time <= #{now} AND end_time >= #{now} FOR UPDATE), " +
+            "taken AS (UPDATE seckill_product AS p SET stock = p.stock - LEAST(t.sellable, #{requested}), " +
+            "degraded_sold = p.degraded_sold + LEAST(t.sellable, #{requested}), version = p.version + 1 " +
+            "FROM target AS t WHERE p.id = t.id " +
+            "RETURNING LEAST(t.sellable, #{requested}) AS granted, p.stock - #{reserved} AS remaining) " +
+            "SELECT COALESCE((SELECT granted FROM taken), CASE WHEN EXISTS (SELECT 1 FROM seckill_product " +
+            "WHERE id = #{id} AND start_time <= #{now} AND end_time >= #{now}) THEN -1 ELSE -2 END) AS granted, " +
+            "COALESCE((SELECT remaining FROM taken), 0) AS remaining")
+    Map<String, Object> takeStock(@Param("id") Long id, @Param("requested") int requested,
+                                  @Param("reserved") int reserved, @Param("now") LocalDateTime now);
+
+    /**
+     * 认领 Redis 不可用期间在数据库售出的数量并清零，返回各商品的 id 与 sold（认领数量）
+     */
+    @Select("WITH claimed AS (SELECT id, degraded_sold FROM seckill_product WHERE degraded_sold > 0 FOR UPDATE) " +
+            "UPDATE seckill_product AS p SET degraded_sold = p.degraded_sold - c.degraded_sold FROM claimed AS c " +
+            "WHERE p.id = c.id RETURNING p.id AS id, c.degraded_sold AS sold")
+    List<Map<String, Object>> claimDegradedSold();
+
+    /**
+     * 归还未能从 Redis 扣回的降级售出数量，留待 Redis 库存回升（租约归还、预留释放）后再扣
+     */
+    @Update("UPDATE seckill_product SET degraded_sold = degraded_sold + #{sold} WHERE id = #{id}")
+    int restoreDegradedSold(@Param("id") Long id, @Param("sold") long sold);
 
     /**
      * 将库存值同步写回数据库
      */
     @Update("UPDATE seckill_product SET stock = #{stock}, version = version + 1 WHERE id = #{id}")
     int syncStock(@Param("id") Long id, @Param("stock") Integer stock);
+
+    /**
+     * 批量将库存值写回数据库，一条语句完成整批更新；尚未从 Redis 扣回的降级售出数量（degraded_sold）一并扣除
+     */
+    @Update("<script>" +
+            "UPDATE seckill_product AS p SET stock = GREATEST(v.stock - p.degraded_sold, 0), version = p.version + 1 FROM (VALUES " +
+            "<foreach collection='products' item='item' separator=','>(#{item.id}, #{item.stock})</foreach>" +
+            ") AS v(id, stock) WHERE p.id = v.id" +
+            "</script>")
+    int batchSyncStock(@Param("products") List<SeckillProduct> products);
+
+    /**
+     * 批量写回库存，但只允许库存变小，用于重放本地日志时避免覆盖其他节点已写入的更新值
+     */
+    @Update("<script>" +
+            "UPDATE seckill_product AS p SET stock = GREATEST(v.stock - p.degraded_sold, 0), version = p.version + 1 FROM (VALUES " +
+            "<foreach collection='products' item='item' separator=','>(#{item.id}, #{item.stock})</foreach>" +
+            ") AS v(id, stock) WHERE p.id = v.id AND v.stock - p.degraded_sold &lt; p.stock" +
+            "</script>")
+    int batchSyncStockIfLower(@Param("products") List<SeckillProduct> products);
 }
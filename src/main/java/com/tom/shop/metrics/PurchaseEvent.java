@@ -0,0 +1,40 @@
+package com.tom.shop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次购买请求的 JFR 事件，只在 JFR 录制进行时提交，未录制时 {@code commit()} 为空操作
+ */
+@Name("com.tom.shop.Purchase")
+@Label("Seckill Purchase")
+@Category({"Seckill"})
+@Description("一次秒杀购买请求及其各阶段耗时")
+@StackTrace(false)
+public class PurchaseEvent extends jdk.jfr.Event {
+
+    @Label("Product Id")
+    public long productId;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Redis Round Trips")
+    public int redisRoundTrips;
+
+    @Label("Take Stock")
+    @Timespan(Timespan.NANOSECONDS)
+    public long takeStock;
+
+    @Label("DB Fallback")
+    @Timespan(Timespan.NANOSECONDS)
+    public long dbFallback;
+
+    @Label("Submit Order")
+    @Timespan(Timespan.NANOSECONDS)
+    public long submitOrder;
+}
@@ -0,0 +1,342 @@
+package com.tom.shop.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * 购买链路的分阶段耗时与 Redis 往返统计，通过 Micrometer 注册，由 Actuator 的 metrics 端点输出。
+ * <p>
+ * 计时只在调用线程上读取 {@link System#nanoTime()} 并写入预先创建好的 {@link Timer}，不分配对象；
+ * 每个请求的阶段耗时与 Redis 往返次数记录在线程本地的请求状态中，由 {@link #beginRequest} / {@link #endRequest()} 界定。
+ * 按 1/{@code seckill.metrics.sample-every} 的概率随机采样计时（JFR 录制时每个请求都计时），
+ * 随机采样而非按线程计数，虚拟线程模式下每个请求都是新线程也能正确采样；
+ * 售罄快速拒绝与待回写等计数不采样。关闭 {@code seckill.metrics.enabled} 后所有方法退化为空操作。
+ * </p>
+ */
+@Component
+public final class PurchaseMetrics {
+
+    public enum Stage {
+        /**
+         * Redis 脚本扣减（含分桶、租约与请求合并）
+         */
+        TAKE_STOCK,
+        /**
+         * 库存未缓存时回源数据库查询
+         */
+        DB_FALLBACK,
+        /**
+         * 回源后写入商品缓存
+         */
+        CACHE_PRODUCT,
+        /**
+         * 写本地库存日志并标记待回写
+         */
+        JOURNAL,
+        /**
+         * 提交异步订单
+         */
+        SUBMIT_ORDER
+    }
+
+    private static final ThreadLocal<RequestScope> REQUEST = ThreadLocal.withInitial(RequestScope::new);
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+
+    private final int sampleMask;
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    private final ConcurrentHashMap<String, Timer> redisTimers = new ConcurrentHashMap<>();
+
+    private final Timer purchaseTimer;
+
+    private final DistributionSummary roundTrips;
+
+    private final Counter soldOutHits;
+
+    private final Counter soldOutMisses;
+
+    private final Timer syncTimer;
+
+    private final Timer syncLagTimer;
+
+    /**
+     * 最早一次未回写标记的时间，0 表示没有待回写的商品
+     */
+    private final AtomicLong oldestDirtyNanos = new AtomicLong();
+
+    public PurchaseMetrics(MeterRegistry meterRegistry,
+                           @Value("${seckill.metrics.enabled:true}") boolean enabled,
+                           @Value("${seckill.metrics.sample-every:8}") int sampleEvery) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.sampleMask = Integer.highestOneBit(Math.max(sampleEvery, 1) * 2 - 1) - 1;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("seckill.purchase.stage")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        purchaseTimer = Timer.builder("seckill.purchase").register(meterRegistry);
+        roundTrips = DistributionSummary.builder("seckill.purchase.redis.round-trips")
+                .description("每个购买请求的 Redis 往返次数")
+                .register(meterRegistry);
+        soldOutHits = Counter.builder("seckill.purchase.soldout.fastpath").tag("result", "hit").register(meterRegistry);
+        soldOutMisses = Counter.builder("seckill.purchase.soldout.fastpath").tag("result", "miss").register(meterRegistry);
+        syncTimer = Timer.builder("seckill.sync").register(meterRegistry);
+        syncLagTimer = Timer.builder("seckill.sync.drain-lag")
+                .description("库存第一次被标记待回写到被回写任务取出的时间")
+                .register(meterRegistry);
+        Gauge.builder("seckill.sync.oldest-pending", this, PurchaseMetrics::oldestPendingMillis)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计时起点；未启用或当前线程处于未采样的请求中时返回 0，对应的记录会被跳过
+     */
+    public long start() {
+        if (!enabled) {
+            return 0L;
+        }
+        RequestScope scope = REQUEST.get();
+        return scope.inRequest && !scope.active ? 0L : System.nanoTime();
+    }
+
+    /**
+     * 开始一个购买请求，采样命中时统计总耗时、各阶段耗时与 Redis 往返次数
+     *
+     * @param force 不论采样与否都计时，用于 JFR 录制
+     */
+    public void beginRequest(boolean force) {
+        if (!enabled) {
+            return;
+        }
+        RequestScope scope = REQUEST.get();
+        scope.inRequest = true;
+        scope.active = force || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+        if (scope.active) {
+            scope.roundTrips = 0;
+            Arrays.fill(scope.stageNanos, 0L);
+            scope.start = System.nanoTime();
+            scope.mark = scope.start;
+        }
+    }
+
+    /**
+     * 结束一个阶段：记录从上一阶段结束（或请求开始）到现在的耗时。
+     * 相邻阶段共用一次时钟读取，每个阶段只调用一次 {@link System#nanoTime()}。
+     */
+    public void stage(Stage stage) {
+        if (!enabled) {
+            return;
+        }
+        RequestScope scope = REQUEST.get();
+        if (!scope.active) {
+            return;
+        }
+        long now = System.nanoTime();
+        long elapsed = now - scope.mark;
+        scope.mark = now;
+        scope.stageNanos[stage.ordinal()] += elapsed;
+        stageTimers.get(stage).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 当前线程发起了一次 Redis 往返
+     */
+    public void roundTrip() {
+        if (enabled) {
+            RequestScope scope = REQUEST.get();
+            if (scope.active) {
+                scope.roundTrips++;
+            }
+        }
+    }
+
+    /**
+     * 结束请求并记录总耗时与往返次数
+     */
+    public void endRequest() {
+        if (!enabled) {
+            return;
+        }
+        RequestScope scope = REQUEST.get();
+        scope.inRequest = false;
+        if (scope.active) {
+            scope.active = false;
+            purchaseTimer.record(System.nanoTime() - scope.start, TimeUnit.NANOSECONDS);
+            roundTrips.record(scope.roundTrips);
+        }
+    }
+
+    /**
+     * 开始一个跨线程的非阻塞购买请求，与 {@link #beginRequest} 按同样的概率采样；未采样时返回 0。
+     * 非阻塞请求不使用线程本地的请求状态，只记录总耗时、扣减耗时与往返次数
+     */
+    public long beginAsyncRequest(boolean force) {
+        if (!enabled || !(force || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0)) {
+            return 0L;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 非阻塞请求的扣减脚本返回，startNanos 为 {@link #beginAsyncRequest} 的返回值
+     */
+    public void asyncStockTaken(long startNanos) {
+        if (startNanos != 0L) {
+            long elapsed = System.nanoTime() - startNanos;
+            stageTimers.get(Stage.TAKE_STOCK).record(elapsed, TimeUnit.NANOSECONDS);
+            redisTimers.computeIfAbsent("purchase", name -> Timer.builder("seckill.redis.command")
+                            .tag("command", name)
+                            .register(meterRegistry))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 结束非阻塞请求并记录总耗时与往返次数
+     */
+    public void endAsyncRequest(long startNanos, int requestRoundTrips) {
+        if (startNanos != 0L) {
+            purchaseTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            roundTrips.record(requestRoundTrips);
+        }
+    }
+
+    /**
+     * 当前线程最近一个请求的 Redis 往返次数，供 JFR 事件使用
+     */
+    public int requestRoundTrips() {
+        return enabled ? REQUEST.get().roundTrips : 0;
+    }
+
+    /**
+     * 当前线程最近一个请求在指定阶段的累计耗时（纳秒），供 JFR 事件使用
+     */
+    public long requestStageNanos(Stage stage) {
+        return enabled ? REQUEST.get().stageNanos[stage.ordinal()] : 0L;
+    }
+
+    /**
+     * 单次 Redis 命令（脚本或批次）的耗时
+     */
+    public void redisCommand(String command, long startNanos) {
+        if (startNanos != 0L) {
+            redisTimers.computeIfAbsent(command, name -> Timer.builder("seckill.redis.command")
+                            .tag("command", name)
+                            .register(meterRegistry))
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 本地售罄标记的快速拒绝是否命中
+     */
+    public void soldOutFastPath(boolean hit) {
+        if (enabled) {
+            (hit ? soldOutHits : soldOutMisses).increment();
+        }
+    }
+
+    /**
+     * 商品被标记待回写，只记录第一次标记的时间
+     */
+    public void markDirty() {
+        if (enabled && oldestDirtyNanos.get() == 0L) {
+            oldestDirtyNanos.compareAndSet(0L, System.nanoTime());
+        }
+    }
+
+    /**
+     * 回写任务取出待回写集合时调用，记录最早的标记等待了多久
+     */
+    public void drained() {
+        long since = oldestDirtyNanos.getAndSet(0L);
+        if (enabled && since != 0L) {
+            syncLagTimer.record(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void sync(long startNanos) {
+        if (enabled) {
+            syncTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 注册待回写集合深度
+     */
+    public void registerSyncBacklog(IntSupplier backlog) {
+        Gauge.builder("seckill.sync.pending", backlog, IntSupplier::getAsInt).register(meterRegistry);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("sampleEvery", sampleMask + 1);
+        result.put("purchase", summary(purchaseTimer));
+        stageTimers.forEach((stage, timer) -> result.put(stage.name().toLowerCase(), summary(timer)));
+        result.put("redisRoundTripsMean", roundTrips.mean());
+        double hits = soldOutHits.count();
+        double total = hits + soldOutMisses.count();
+        result.put("soldOutFastPathHitRate", total == 0 ? 0 : hits / total);
+        result.put("sync", summary(syncTimer));
+        result.put("syncDrainLag", summary(syncLagTimer));
+        result.put("syncOldestPendingMs", oldestPendingMillis());
+        return result;
+    }
+
+    private double oldestPendingMillis() {
+        long since = oldestDirtyNanos.get();
+        return since == 0L ? 0 : (System.nanoTime() - since) / 1_000_000.0;
+    }
+
+    private static Map<String, Object> summary(Timer timer) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", timer.count());
+        result.put("meanMicros", timer.mean(TimeUnit.MICROSECONDS));
+        result.put("maxMicros", timer.max(TimeUnit.MICROSECONDS));
+        return result;
+    }
+
+    private static final class RequestScope {
+
+        private final long[] stageNanos = new long[Stage.values().length];
+
+        private boolean inRequest;
+
+        /**
+         * 当前请求是否被采样计时
+         */
+        private boolean active;
+
+        private int roundTrips;
+
+        private long start;
+
+        private long mark;
+    }
+}
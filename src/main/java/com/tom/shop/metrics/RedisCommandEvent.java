@@ -0,0 +1,24 @@
+package com.tom.shop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次 Redis 往返（脚本或批次）的 JFR 事件
+ */
+@Name("com.tom.shop.RedisCommand")
+@Label("Seckill Redis Command")
+@Category({"Seckill"})
+@Description("RedisService 发起的一次脚本调用或批次执行")
+@StackTrace(false)
+public class RedisCommandEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    public String command;
+
+    @Label("Commands In Batch")
+    public int size;
+}
@@ -0,0 +1,22 @@
+package com.tom.shop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 一次库存回写任务的 JFR 事件
+ */
+@Name("com.tom.shop.StockSync")
+@Label("Seckill Stock Sync")
+@Category({"Seckill"})
+@Description("将 Redis 库存批量回写数据库")
+public class StockSyncEvent extends jdk.jfr.Event {
+
+    @Label("Products")
+    public int products;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
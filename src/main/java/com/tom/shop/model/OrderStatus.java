@@ -0,0 +1,14 @@
+package com.tom.shop.model;
+
+public enum OrderStatus {
+
+    /**
+     * 库存已扣减，订单排队等待写入数据库
+     */
+    PENDING,
+
+    /**
+     * 订单已写入数据库
+     */
+    CREATED
+}
@@ -0,0 +1,21 @@
+package com.tom.shop.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class SeckillOrder {
+
+    private Long id;
+
+    private String ticket;
+
+    private Long productId;
+
+    private Integer quantity;
+
+    private OrderStatus status;
+
+    private LocalDateTime createdAt;
+}
@@ -25,4 +25,9 @@ public class SeckillProduct {
     private LocalDateTime createdAt;
 
     private Integer version;
+
+    /**
+     * 最近一次修改时间，由数据库触发器维护，用于增量刷新缓存
+     */
+    private LocalDateTime updatedAt;
 }
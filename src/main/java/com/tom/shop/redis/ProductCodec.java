@@ -0,0 +1,17 @@
+package com.tom.shop.redis;
+
+/**
+ * 缓存中 {@link com.tom.shop.model.SeckillProduct} 的写入格式，读取时两种格式均可识别
+ */
+public enum ProductCodec {
+
+    /**
+     * 带默认类型信息的 JSON，与早期版本节点兼容
+     */
+    JSON,
+
+    /**
+     * {@link SeckillProductCodec} 定义的紧凑二进制格式
+     */
+    BINARY
+}
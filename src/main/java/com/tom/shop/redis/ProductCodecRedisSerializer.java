@@ -0,0 +1,39 @@
+package com.tom.shop.redis;
+
+import com.tom.shop.model.SeckillProduct;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 值序列化器：{@link SeckillProduct} 按配置的 {@link ProductCodec} 写入，其余类型交给 JSON 序列化器。
+ * <p>
+ * 读取时按首字节识别格式，二进制与 JSON 数据可以共存，切换写入格式无需清空缓存。
+ * </p>
+ */
+public class ProductCodecRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> jsonSerializer;
+
+    private final ProductCodec productCodec;
+
+    public ProductCodecRedisSerializer(RedisSerializer<Object> jsonSerializer, ProductCodec productCodec) {
+        this.jsonSerializer = jsonSerializer;
+        this.productCodec = productCodec;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (productCodec == ProductCodec.BINARY && value instanceof SeckillProduct product) {
+            return SeckillProductCodec.encode(product);
+        }
+        return jsonSerializer.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (SeckillProductCodec.isEncoded(bytes)) {
+            return SeckillProductCodec.decode(bytes);
+        }
+        return jsonSerializer.deserialize(bytes);
+    }
+}
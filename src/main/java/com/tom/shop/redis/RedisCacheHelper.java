@@ -1,12 +1,19 @@
 package com.tom.shop.redis;
 
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -66,6 +73,43 @@ public class RedisCacheHelper {
         stringRedisTemplate.opsForHash().put(hashKey, field, String.valueOf(value));
     }
 
+    /**
+     * 一次 HMSET 写入多个字段的字符串值。
+     */
+    public void putHashValues(String hashKey, Map<String, ?> values) {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        Map<String, String> stringValues = new LinkedHashMap<>();
+        values.forEach((field, value) -> stringValues.put(field, String.valueOf(value)));
+        stringRedisTemplate.opsForHash().putAll(hashKey, stringValues);
+    }
+
+    /**
+     * 一次 HMGET 读取多个字段并转换为 Integer，结果与字段顺序一一对应，不存在或转换失败的字段为 null。
+     */
+    public List<Integer> getHashFieldsAsInt(String hashKey, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> values = stringRedisTemplate.<String, String>opsForHash().multiGet(hashKey, fields);
+        List<Integer> result = new ArrayList<>(fields.size());
+        for (String value : values) {
+            result.add(parseInt(value));
+        }
+        return result;
+    }
+
+    /**
+     * 在一次管道中执行多条命令，返回与命令一一对应的结果（字符串已解码）。
+     */
+    public List<Object> executePipelined(Consumer<StringRedisConnection> commands) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            commands.accept((StringRedisConnection) connection);
+            return null;
+        });
+    }
+
     /**
      * 判断 Hash 中是否存在指定字段。
      */
@@ -84,15 +128,7 @@ public class RedisCacheHelper {
      * 以 Integer 形式读取 Hash 字段的值，转换失败时返回 null。
      */
     public Integer getHashFieldAsInt(String hashKey, String field) {
-        String value = stringRedisTemplate.<String, String>opsForHash().get(hashKey, field);
-        if (value == null) {
-            return null;
-        }
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException ignored) {
-            return null;
-        }
+        return parseInt(stringRedisTemplate.<String, String>opsForHash().get(hashKey, field));
     }
 
     /**
@@ -127,4 +163,15 @@ public class RedisCacheHelper {
     public <T> T cast(Object value) {
         return (T) value;
     }
+
+    private static Integer parseInt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
 }
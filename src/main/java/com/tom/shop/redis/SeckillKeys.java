@@ -0,0 +1,33 @@
+package com.tom.shop.redis;
+
+/**
+ * 秒杀相关的 Redis Key 布局，供各组件共享，避免各处重复定义字符串
+ */
+public final class SeckillKeys {
+
+    public static final String PRODUCT_CACHE_HASH = "seckill:product:data";
+    public static final String STOCK_CACHE_HASH = "seckill:product:stock";
+    public static final String ACTIVE_SET_KEY = "seckill:product:active";
+    public static final String SOLD_OUT_SET_KEY = "seckill:product:soldout";
+    public static final String WINDOW_CACHE_HASH = "seckill:product:window";
+    public static final String LEASED_STOCK_HASH = "seckill:product:leased";
+    public static final String LEASE_HOLDERS_HASH_PREFIX = "seckill:lease:holders:";
+    public static final String LEASE_NODE_PRODUCTS_PREFIX = "seckill:lease:products:";
+    public static final String LEASE_HEARTBEAT_ZSET = "seckill:lease:heartbeats";
+    public static final String START_INDEX_ZSET = "seckill:product:starts";
+    public static final String END_INDEX_ZSET = "seckill:product:ends";
+    public static final String SCHEDULER_LEADER_KEY = "seckill:scheduler:leader";
+    public static final String REFRESH_WATERMARK_KEY = "seckill:refresh:watermark";
+    public static final String PRODUCT_ID_FILTER_PREFIX = "seckill:product:ids";
+    public static final String BUYERS_HASH_PREFIX = "seckill:product:buyers:";
+    public static final String REQUESTS_HASH_PREFIX = "seckill:product:requests:";
+    public static final String RESERVATION_HASH = "seckill:reservation:data";
+    public static final String RESERVATION_EXPIRY_PREFIX = "seckill:reservation:expiry:";
+    public static final String RESERVATION_NODES_SET = "seckill:reservation:nodes";
+    public static final String ORDER_PREFIX_ZSET = "seckill:order:prefixes";
+
+    public static final String SOLD_OUT_CHANNEL = "seckill:product:soldout-events";
+
+    private SeckillKeys() {
+    }
+}
@@ -0,0 +1,256 @@
+package com.tom.shop.redis;
+
+import com.tom.shop.model.SeckillProduct;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * {@link SeckillProduct} 的紧凑二进制编码，逐字段手写读写，不依赖反射，也不写入类名。
+ * <p>
+ * 布局：魔数 {@code 0xB1}、格式版本、16 位字段存在位图，之后按字段顺序依次写入非空字段：
+ * 整数为 zigzag 变长编码，字符串为长度前缀的 UTF-8，价格为 scale 加未缩放值的补码字节，
+ * 时间为 UTC 纪元秒加纳秒。魔数不是合法的 UTF-8 首字节，可与 JSON 明确区分。
+ * 新增字段时分配新的位、追加在末尾并提升版本号：旧数据缺少该位即为 null，旧解码器接受更高的版本，
+ * 读完已知字段后忽略未知的位与尾部字节。布局不兼容的修改需要换用新的魔数。
+ * </p>
+ */
+public final class SeckillProductCodec {
+
+    public static final byte MAGIC = (byte) 0xB1;
+
+    public static final byte VERSION = 1;
+
+    private static final int ID = 1;
+    private static final int NAME = 1 << 1;
+    private static final int DESCRIPTION = 1 << 2;
+    private static final int PRICE = 1 << 3;
+    private static final int STOCK = 1 << 4;
+    private static final int START_TIME = 1 << 5;
+    private static final int END_TIME = 1 << 6;
+    private static final int CREATED_AT = 1 << 7;
+    private static final int ROW_VERSION = 1 << 8;
+    private static final int UPDATED_AT = 1 << 9;
+
+    private SeckillProductCodec() {
+    }
+
+    /**
+     * 判断数据是否为本编码格式
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    public static byte[] encode(SeckillProduct product) {
+        int fields = (product.getId() != null ? ID : 0)
+                | (product.getName() != null ? NAME : 0)
+                | (product.getDescription() != null ? DESCRIPTION : 0)
+                | (product.getPrice() != null ? PRICE : 0)
+                | (product.getStock() != null ? STOCK : 0)
+                | (product.getStartTime() != null ? START_TIME : 0)
+                | (product.getEndTime() != null ? END_TIME : 0)
+                | (product.getCreatedAt() != null ? CREATED_AT : 0)
+                | (product.getVersion() != null ? ROW_VERSION : 0)
+                | (product.getUpdatedAt() != null ? UPDATED_AT : 0);
+        Writer out = new Writer(64);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(fields >>> 8);
+        out.writeByte(fields);
+        if ((fields & ID) != 0) {
+            out.writeLong(product.getId());
+        }
+        if ((fields & NAME) != 0) {
+            out.writeString(product.getName());
+        }
+        if ((fields & DESCRIPTION) != 0) {
+            out.writeString(product.getDescription());
+        }
+        if ((fields & PRICE) != 0) {
+            out.writeLong(product.getPrice().scale());
+            out.writeBytes(product.getPrice().unscaledValue().toByteArray());
+        }
+        if ((fields & STOCK) != 0) {
+            out.writeLong(product.getStock());
+        }
+        if ((fields & START_TIME) != 0) {
+            out.writeTime(product.getStartTime());
+        }
+        if ((fields & END_TIME) != 0) {
+            out.writeTime(product.getEndTime());
+        }
+        if ((fields & CREATED_AT) != 0) {
+            out.writeTime(product.getCreatedAt());
+        }
+        if ((fields & ROW_VERSION) != 0) {
+            out.writeLong(product.getVersion());
+        }
+        if ((fields & UPDATED_AT) != 0) {
+            out.writeTime(product.getUpdatedAt());
+        }
+        return out.toByteArray();
+    }
+
+    public static SeckillProduct decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw new SerializationException("Not a binary SeckillProduct");
+        }
+        if (bytes[1] < 1) {
+            throw new SerializationException("Unsupported SeckillProduct codec version " + bytes[1]);
+        }
+        try {
+            Reader in = new Reader(bytes, 2);
+            int fields = (in.readByte() << 8) | in.readByte();
+            SeckillProduct product = new SeckillProduct();
+            if ((fields & ID) != 0) {
+                product.setId(in.readLong());
+            }
+            if ((fields & NAME) != 0) {
+                product.setName(in.readString());
+            }
+            if ((fields & DESCRIPTION) != 0) {
+                product.setDescription(in.readString());
+            }
+            if ((fields & PRICE) != 0) {
+                int scale = (int) in.readLong();
+                product.setPrice(new BigDecimal(new BigInteger(in.readBytes()), scale));
+            }
+            if ((fields & STOCK) != 0) {
+                product.setStock((int) in.readLong());
+            }
+            if ((fields & START_TIME) != 0) {
+                product.setStartTime(in.readTime());
+            }
+            if ((fields & END_TIME) != 0) {
+                product.setEndTime(in.readTime());
+            }
+            if ((fields & CREATED_AT) != 0) {
+                product.setCreatedAt(in.readTime());
+            }
+            if ((fields & ROW_VERSION) != 0) {
+                product.setVersion((int) in.readLong());
+            }
+            if ((fields & UPDATED_AT) != 0) {
+                product.setUpdatedAt(in.readTime());
+            }
+            return product;
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new SerializationException("Corrupted binary SeckillProduct", e);
+        }
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer;
+
+        private int size;
+
+        private Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * zigzag 变长编码，小的正负数都只占 1~2 字节
+         */
+        private void writeLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeTime(LocalDateTime time) {
+            writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            writeLong(time.getNano());
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        private Reader(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private int readByte() {
+            return buffer[position++] & 0xFF;
+        }
+
+        private long readLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new NumberFormatException("Malformed varint");
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new ArrayIndexOutOfBoundsException(length);
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        private String readString() {
+            int length = (int) readLong();
+            if (length < 0 || position + length > buffer.length) {
+                throw new ArrayIndexOutOfBoundsException(length);
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private LocalDateTime readTime() {
+            long seconds = readLong();
+            int nanos = (int) readLong();
+            return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        }
+    }
+}
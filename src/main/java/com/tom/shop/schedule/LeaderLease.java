@@ -0,0 +1,75 @@
+package com.tom.shop.schedule;
+
+import com.tom.shop.config.ActivationProperties;
+import com.tom.shop.config.NodeIdentity;
+import com.tom.shop.service.RedisService;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static com.tom.shop.redis.SeckillKeys.SCHEDULER_LEADER_KEY;
+
+/**
+ * 调度领导者租约：各节点定期尝试抢占或续期 Redis 中带过期时间的租约，持有者负责扫描数据库和修改共享状态。
+ * <p>
+ * 本地只在最近一次续约成功后的租约时长内认为自己是领导者，并扣除一个续约间隔作为时钟误差余量，
+ * 领导者失联时其他节点最迟在租约过期后接管。
+ * </p>
+ */
+@Component
+@Log4j2
+public class LeaderLease {
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private NodeIdentity nodeIdentity;
+
+    @Resource
+    private ActivationProperties activationProperties;
+
+    private volatile long validUntilMillis;
+
+    @Scheduled(fixedDelayString = "${seckill.activation.lease-renew-ms:5000}")
+    public void renew() {
+        tryAcquire();
+    }
+
+    /**
+     * 抢占或续期租约，返回本节点当前是否为领导者
+     */
+    public boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        boolean wasLeader = isLeader();
+        try {
+            if (redisService.acquireLeadership(SCHEDULER_LEADER_KEY, nodeIdentity.getId(),
+                    activationProperties.getLeaseTtlMs())) {
+                validUntilMillis = now + activationProperties.getLeaseTtlMs() - activationProperties.getLeaseRenewMs();
+            } else {
+                validUntilMillis = 0;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew scheduler leadership", e);
+        }
+        boolean leader = isLeader();
+        if (leader != wasLeader) {
+            log.info("Node {} {} scheduler leadership", nodeIdentity.getId(), leader ? "acquired" : "lost");
+        }
+        return leader;
+    }
+
+    public boolean isLeader() {
+        return System.currentTimeMillis() < validUntilMillis;
+    }
+
+    @PreDestroy
+    public void release() {
+        if (isLeader()) {
+            validUntilMillis = 0;
+            redisService.releaseLeadership(SCHEDULER_LEADER_KEY, nodeIdentity.getId());
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.tom.shop.schedule;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分层时间轮：单个工作线程按固定刻度推进。第 0 层每个槽位对应一个刻度，第 n 层每个槽位对应第 n-1 层转一圈的时长，
+ * 到期刻度离当前越远的任务挂在越高的层级；高层槽位轮到时其中的任务降级到低层（cascade），最终在第 0 层到期。
+ * <p>
+ * 每个任务是所在槽位双向链表中的一个节点，新增与取消均为 O(1)：取消的任务在下一个刻度直接从链表摘除，不会滞留到原定到期时间。
+ * 每个刻度只处理当前槽位，远期任务不会被逐刻度遍历，适合同时挂载大量按绝对时间触发、且多数会被提前取消的任务。
+ * 高层按需创建，只挂近期任务时只占用第 0 层。
+ * </p>
+ * <p>
+ * 到期任务交给 executor 执行，避免耗时任务拖慢刻度推进；刻度向上取整，任务不会早于指定时间触发；过去时间的任务在下一个刻度立即执行。
+ * 槽位只由工作线程修改，其他线程的新增与取消通过无锁队列提交。
+ * </p>
+ */
+@Log4j2
+public class TimerWheel implements AutoCloseable {
+
+    private final long tickMillis;
+
+    /**
+     * 每层槽位数的二进制位数
+     */
+    private final int bits;
+
+    private final int mask;
+
+    private final Bucket[][] levels;
+
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final Executor executor;
+
+    private final long startMillis;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private long tick;
+
+    /**
+     * @param wheelSize 每层槽位数，向上取整为 2 的幂
+     */
+    public TimerWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+        int slots = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickMillis = Math.max(tickMillis, 1);
+        this.bits = Integer.numberOfTrailingZeros(slots);
+        this.mask = slots - 1;
+        // 刻度为非负 long，最多需要覆盖 63 位
+        this.levels = new Bucket[Math.ceilDiv(Long.SIZE - 1, bits)][];
+        this.executor = executor;
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 在指定的绝对时间（毫秒）执行任务
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(this, deadlineMillis, task);
+        size.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 尚未到期且未取消的任务数
+     */
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long wait = startMillis + (tick + 1) * tickMillis - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            removeCancelled();
+            transferPending();
+            cascade();
+            expire(bucket(0, (int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            size.decrementAndGet();
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            // 已取消的任务由 removeCancelled 计数
+            if (timeout.state == Timeout.WAITING) {
+                timeout.due = Math.max(Math.ceilDiv(timeout.deadlineMillis - startMillis, tickMillis), tick);
+                place(timeout);
+            }
+        }
+    }
+
+    /**
+     * 挂到最低的层级 l：到期刻度与当前刻度在 l 层以上的各位都相同，槽位取到期刻度在第 l 层的那一位
+     */
+    private void place(Timeout timeout) {
+        long diff = timeout.due ^ tick;
+        int level = 0;
+        while ((level + 1) * bits < Long.SIZE && (diff >>> ((level + 1) * bits)) != 0) {
+            level++;
+        }
+        bucket(level, (int) ((timeout.due >>> (level * bits)) & mask)).add(timeout);
+    }
+
+    /**
+     * 当前刻度在第 l 层以下全部为 0 时，第 l 层对应槽位中的任务都落在接下来的这一段，从高到低逐层降级
+     */
+    private void cascade() {
+        int top = 0;
+        while (top + 1 < levels.length && (tick & ((1L << ((top + 1) * bits)) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level > 0; level--) {
+            if (levels[level] == null) {
+                continue;
+            }
+            Bucket bucket = levels[level][(int) ((tick >>> (level * bits)) & mask)];
+            Timeout timeout = bucket.clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                timeout.prev = null;
+                place(timeout);
+                timeout = next;
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            if (Timeout.STATE.compareAndSet(timeout, Timeout.WAITING, Timeout.EXPIRED)) {
+                size.decrementAndGet();
+                submit(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private Bucket bucket(int level, int slot) {
+        Bucket[] buckets = levels[level];
+        if (buckets == null) {
+            buckets = new Bucket[mask + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket();
+            }
+            levels[level] = buckets;
+        }
+        return buckets[slot];
+    }
+
+    private void submit(Timeout timeout) {
+        try {
+            executor.execute(() -> {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Timer task failed", e);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to submit timer task", e);
+        }
+    }
+
+    /**
+     * 槽位中的任务双向链表，只由工作线程访问
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * 摘下整条链表并返回表头，链表中的任务不再属于任何槽位
+         */
+        Timeout clear() {
+            Timeout first = head;
+            for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+
+    public static final class Timeout {
+
+        private static final int WAITING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimerWheel wheel;
+
+        private final long deadlineMillis;
+
+        private final Runnable task;
+
+        private volatile int state;
+
+        private long due;
+
+        private Bucket bucket;
+
+        private Timeout prev;
+
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, long deadlineMillis, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /**
+         * 取消尚未到期的任务，返回 false 表示任务已到期执行或已被取消
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled.add(this);
+            return true;
+        }
+    }
+}
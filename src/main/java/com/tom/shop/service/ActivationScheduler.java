@@ -0,0 +1,211 @@
+package com.tom.shop.service;
+
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.config.ActivationProperties;
+import com.tom.shop.config.RefreshProperties;
+import com.tom.shop.mapper.SeckillProductMapper;
+import com.tom.shop.model.SeckillProduct;
+import com.tom.shop.schedule.LeaderLease;
+import com.tom.shop.schedule.TimerWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.tom.shop.redis.SeckillKeys.END_INDEX_ZSET;
+import static com.tom.shop.redis.SeckillKeys.START_INDEX_ZSET;
+
+/**
+ * 事件驱动的商品上下线调度。
+ * <p>
+ * 持有 {@link LeaderLease} 的节点定期扫描数据库，把即将开始与进行中的商品按开始/结束时间写入
+ * {@code seckill:product:starts} / {@code seckill:product:ends} 两个有序集合；其余节点不再查询数据库。
+ * 每个节点按 {@code seckill.activation.poll-ms} 读取索引中临近的时间点，挂到本地 {@link TimerWheel} 上：
+ * 开始前 {@code prewarm-ms} 预热缓存，开始时刻加入活动集合，结束时刻移出。修改 Redis 共享状态的动作只由领导者执行，
+ * 所有节点各自刷新本地的活动列表快照与售罄标记。
+ * </p>
+ */
+@Component
+@Log4j2
+public class ActivationScheduler {
+
+    private static final int WHEEL_SIZE = 1024;
+
+    private enum Action {
+        PREWARM, ACTIVATE, RETIRE
+    }
+
+    @Resource
+    private SeckillService seckillService;
+
+    @Resource
+    private SeckillProductMapper seckillProductMapper;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private LeaderLease leaderLease;
+
+    @Resource
+    private ActivationProperties activationProperties;
+
+    @Resource
+    private RefreshProperties refreshProperties;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private ActiveProductsSnapshot activeProductsSnapshot;
+
+    @Resource
+    private ProductIdFilter productIdFilter;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 已挂到时间轮上的事件，键为 动作:商品ID:触发时间，避免重复调度
+     */
+    private final Map<String, Long> scheduled = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    private TimerWheel timerWheel;
+
+    @PostConstruct
+    public void start() {
+        // 时间轮的 tick 线程保持平台线程以保证精度，执行预热/激活的工作线程可以是虚拟线程
+        executor = Executors.newSingleThreadExecutor(virtualThreads
+                ? Thread.ofVirtual().name("activation-worker").factory()
+                : Thread.ofPlatform().name("activation-worker").daemon(true).factory());
+        timerWheel = new TimerWheel("activation-timer", activationProperties.getTickMs(), WHEEL_SIZE, executor);
+    }
+
+    @PreDestroy
+    public void stop() {
+        timerWheel.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 领导者扫描数据库刷新活动商品并重建时间索引，所有节点以 Redis 售罄集合校准本地标记
+     */
+    @Scheduled(fixedDelayString = "${seckill.cache-refresh-ms:60000}")
+    public void scanProducts() {
+        if (leaderLease.tryAcquire()) {
+            indexProducts();
+        }
+        soldOutRegistry.reconcile();
+    }
+
+    /**
+     * 读取时间索引中临近的开始/结束时间，挂到本地时间轮
+     */
+    @Scheduled(fixedDelayString = "${seckill.activation.poll-ms:1000}")
+    public void pollIndex() {
+        long now = System.currentTimeMillis();
+        long from = now - activationProperties.getLookaheadMs();
+        long until = now + activationProperties.getLookaheadMs();
+        redisService.zRangeByScoreWithScores(START_INDEX_ZSET, from, until + activationProperties.getPrewarmMs())
+                .forEach((member, score) -> {
+                    long startAt = score.longValue();
+                    if (startAt > now) {
+                        schedule(Action.PREWARM, member, Math.max(startAt - activationProperties.getPrewarmMs(), now));
+                    }
+                    if (startAt <= until) {
+                        schedule(Action.ACTIVATE, member, startAt);
+                    }
+                });
+        redisService.zRangeByScoreWithScores(END_INDEX_ZSET, from, until)
+                .forEach((member, score) -> schedule(Action.RETIRE, member, score.longValue() + 1));
+        scheduled.values().removeIf(deadline -> deadline < from);
+    }
+
+    private void indexProducts() {
+        LocalDateTime now = LocalDateTime.now();
+        if (refreshProperties.getMode() == RefreshProperties.Mode.DELTA) {
+            // 增量写入缓存时已同步维护时间索引
+            seckillService.refreshChangedProducts();
+        } else {
+            indexAllProducts(now);
+        }
+        double expired = SeckillService.toEpochMillis(now) - activationProperties.getHorizonMs();
+        redisService.zRemoveRangeByScore(START_INDEX_ZSET, Double.NEGATIVE_INFINITY, expired);
+        redisService.zRemoveRangeByScore(END_INDEX_ZSET, Double.NEGATIVE_INFINITY, expired);
+    }
+
+    private void indexAllProducts(LocalDateTime now) {
+        List<SeckillProduct> products = new ArrayList<>(seckillService.refreshActiveProducts());
+        products.addAll(seckillProductMapper.selectUpcomingSeckillProducts(now,
+                now.plusNanos(activationProperties.getHorizonMs() * 1_000_000L)));
+        for (SeckillProduct product : products) {
+            if (product == null || product.getId() == null) {
+                continue;
+            }
+            String member = product.getId().toString();
+            if (product.getStartTime() != null) {
+                redisService.zAdd(START_INDEX_ZSET, member, SeckillService.toEpochMillis(product.getStartTime()));
+            }
+            if (product.getEndTime() != null) {
+                redisService.zAdd(END_INDEX_ZSET, member, SeckillService.toEpochMillis(product.getEndTime()));
+            }
+        }
+    }
+
+    private void schedule(Action action, String member, long deadline) {
+        Long productId;
+        try {
+            productId = Long.valueOf(member);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid product ID in time index: {}", member);
+            return;
+        }
+        if (scheduled.putIfAbsent(action + ":" + member + ":" + deadline, deadline) != null) {
+            return;
+        }
+        timerWheel.schedule(deadline, () -> fire(action, productId));
+    }
+
+    private void fire(Action action, Long productId) {
+        boolean leader = leaderLease.isLeader();
+        if (action != Action.RETIRE) {
+            // 每个节点都调度了时间索引中的商品，在各自的过滤器中立即可见，不必等下一次同步
+            productIdFilter.add(productId);
+        }
+        switch (action) {
+            case PREWARM -> {
+                if (leader) {
+                    seckillService.prewarmProduct(productId);
+                }
+            }
+            case ACTIVATE -> {
+                if (leader) {
+                    seckillService.activateProduct(productId);
+                } else {
+                    activeProductsSnapshot.invalidate();
+                }
+            }
+            case RETIRE -> {
+                if (leader) {
+                    seckillService.retireProduct(productId);
+                } else {
+                    soldOutRegistry.clearLocal(productId);
+                    activeProductsSnapshot.invalidate();
+                }
+            }
+        }
+    }
+}
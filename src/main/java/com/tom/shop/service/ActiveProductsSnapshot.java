@@ -0,0 +1,152 @@
+package com.tom.shop.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tom.shop.model.SeckillProduct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 活动商品列表的预序列化快照。
+ * <p>
+ * 快照保存已排序列表序列化后的响应字节与按内容计算的 ETag，请求直接返回同一个字节数组，不再逐个反序列化、
+ * 过滤、排序和重新序列化。以下情况快照失效，由下一次请求重建：商品缓存写入或收到其他节点的失效广播、
+ * 售罄状态变化、到达任一商品的开始/结束时间，以及超过 {@code seckill.snapshot.max-stale-ms}（保证展示的库存不会过旧）。
+ * 重建期间其他请求继续使用旧快照，同一时刻只有一个线程重建。
+ * </p>
+ */
+@Component
+public class ActiveProductsSnapshot {
+
+    /**
+     * @param body       序列化后的响应体，调用方不得修改
+     * @param etag       带引号的强 ETag
+     * @param generation 构建时的失效代数
+     * @param expiresAt  下一个活动时间边界或最长缓存时间，毫秒
+     */
+    public record Snapshot(byte[] body, String etag, long generation, long expiresAt) {
+
+        /**
+         * 判断请求头 If-None-Match 是否命中当前快照
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Value("${seckill.snapshot.max-stale-ms:1000}")
+    private long maxStaleMs;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private volatile Snapshot current;
+
+    /**
+     * 商品或售罄状态发生变化，下次读取时重建
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 当前快照仍然有效时返回它，否则返回 null，不触发重建
+     */
+    public Snapshot peek() {
+        Snapshot snapshot = current;
+        return isFresh(snapshot) ? snapshot : null;
+    }
+
+    /**
+     * 返回当前快照，失效时用 loader 提供的候选商品（含库存）重建
+     */
+    public Snapshot get(Supplier<List<SeckillProduct>> loader) {
+        Snapshot snapshot = current;
+        if (isFresh(snapshot)) {
+            return snapshot;
+        }
+        if (snapshot == null) {
+            rebuildLock.lock();
+        } else if (!rebuildLock.tryLock()) {
+            return snapshot;
+        }
+        try {
+            snapshot = current;
+            if (isFresh(snapshot)) {
+                return snapshot;
+            }
+            long builtGeneration = generation.get();
+            snapshot = build(loader.get(), builtGeneration);
+            current = snapshot;
+            return snapshot;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private boolean isFresh(Snapshot snapshot) {
+        return snapshot != null
+                && snapshot.generation() == generation.get()
+                && System.currentTimeMillis() < snapshot.expiresAt();
+    }
+
+    private Snapshot build(List<SeckillProduct> candidates, long builtGeneration) {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMillis = SeckillService.toEpochMillis(now);
+        List<SeckillProduct> active = SeckillService.selectActive(candidates, now);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(active);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize active products", e);
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        long expiresAt = Math.min(nextBoundary(candidates, now), nowMillis + maxStaleMs);
+        return new Snapshot(body, etag, builtGeneration, expiresAt);
+    }
+
+    /**
+     * 最近一个会改变活动列表的时间点：尚未开始商品的开始时间，或进行中商品结束后的下一毫秒
+     */
+    private static long nextBoundary(Collection<SeckillProduct> candidates, LocalDateTime now) {
+        long boundary = Long.MAX_VALUE;
+        for (SeckillProduct product : candidates) {
+            if (product == null) {
+                continue;
+            }
+            LocalDateTime start = product.getStartTime();
+            LocalDateTime end = product.getEndTime();
+            if (start != null && start.isAfter(now)) {
+                boundary = Math.min(boundary, SeckillService.toEpochMillis(start));
+            } else if (end != null && !end.isBefore(now)) {
+                boundary = Math.min(boundary, SeckillService.toEpochMillis(end) + 1);
+            }
+        }
+        return boundary;
+    }
+}
@@ -0,0 +1,93 @@
+package com.tom.shop.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Serial;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求路径上数据库访问的并发上限（舱壁）。
+ * <p>
+ * 虚拟线程模式下请求并发不再受 Tomcat 线程池约束，缓存未命中的洪峰会同时回源数据库。
+ * 上限应小于连接池大小，为库存回写、订单写入等后台任务留出连接；超出上限的请求短暂等待后直接失败，
+ * 而不是在连接池中排队直到 {@code connectionTimeout}。
+ * </p>
+ */
+@Component
+public class DbBulkhead {
+
+    /**
+     * 舱壁已满，调用方应按“系统繁忙”处理
+     */
+    public static class BusyException extends RuntimeException {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public BusyException() {
+            super("数据库访问繁忙", null, false, false);
+        }
+    }
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${seckill.db.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${seckill.db.acquire-timeout-ms:100}")
+    private long acquireTimeoutMs;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrency);
+        Gauge.builder("seckill.db.bulkhead.available", permits, Semaphore::availablePermits).register(meterRegistry);
+        FunctionCounter.builder("seckill.db.bulkhead.rejected", rejected, LongAdder::sum).register(meterRegistry);
+    }
+
+    /**
+     * 申请一次数据库访问许可，成功后必须调用 {@link #release()}
+     */
+    public boolean tryAcquire() {
+        try {
+            if (permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * 在许可内执行一次数据库访问，申请不到许可时抛出 {@link BusyException}
+     */
+    public <T> T call(Supplier<T> query) {
+        if (!tryAcquire()) {
+            throw new BusyException();
+        }
+        try {
+            return query.get();
+        } finally {
+            release();
+        }
+    }
+}
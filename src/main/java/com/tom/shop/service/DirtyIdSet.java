@@ -0,0 +1,142 @@
+package com.tom.shop.service;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * 待回写商品ID集合，替代逐次入队的 {@code ConcurrentLinkedQueue<Long>}。
+ * <p>
+ * 基于开放寻址的 {@link AtomicLongArray}，同一商品重复标记只会命中已有槽位，不产生任何对象分配；
+ * 新ID通过 CAS 写入空槽。内部维护两张表，{@link #drain} 时交换后再扫描旧表，写入方在交换后
+ * 发现表已变化会重新写入新表，保证不丢失标记（偶尔重复回写，回写本身是幂等的）。
+ * 表满时退化为写入溢出集合。
+ * </p>
+ */
+public class DirtyIdSet {
+
+    private static final long EMPTY = 0L;
+
+    private final int mask;
+
+    private volatile AtomicLongArray active;
+
+    private AtomicLongArray standby;
+
+    private final Set<Long> overflow = ConcurrentHashMap.newKeySet();
+
+    /**
+     * drain 之间的互斥，回调在虚拟线程上阻塞时不会钉住载体线程
+     */
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    /**
+     * @param capacity 槽位数，向上取整为 2 的幂
+     */
+    public DirtyIdSet(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.mask = size - 1;
+        this.active = new AtomicLongArray(size);
+        this.standby = new AtomicLongArray(size);
+    }
+
+    /**
+     * 标记商品待回写
+     */
+    public void add(long id) {
+        if (id == EMPTY) {
+            overflow.add(id);
+            return;
+        }
+        for (; ; ) {
+            AtomicLongArray table = active;
+            if (!insert(table, id)) {
+                overflow.add(id);
+                return;
+            }
+            if (table == active) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取出当前所有待回写ID，多次 drain 之间互斥。
+     *
+     * @return 取出的数量
+     */
+    public int drain(LongConsumer consumer) {
+        drainLock.lock();
+        try {
+            return drainLocked(consumer);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private int drainLocked(LongConsumer consumer) {
+        AtomicLongArray drained = active;
+        active = standby;
+        int count = 0;
+        for (int i = 0; i <= mask; i++) {
+            long id = drained.get(i);
+            if (id != EMPTY) {
+                drained.set(i, EMPTY);
+                consumer.accept(id);
+                count++;
+            }
+        }
+        standby = drained;
+        if (!overflow.isEmpty()) {
+            Iterator<Long> iterator = overflow.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                iterator.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 当前待回写的数量（扫描整张表，仅用于监控）
+     */
+    public int size() {
+        AtomicLongArray table = active;
+        int count = overflow.size();
+        for (int i = 0; i <= mask; i++) {
+            if (table.get(i) != EMPTY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean insert(AtomicLongArray table, long id) {
+        int index = mix(id) & mask;
+        for (int probe = 0; probe <= mask; probe++) {
+            long current = table.get(index);
+            if (current == id) {
+                return true;
+            }
+            if (current == EMPTY) {
+                if (table.compareAndSet(index, EMPTY, id)) {
+                    return true;
+                }
+                if (table.get(index) == id) {
+                    return true;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,407 @@
+package com.tom.shop.service;
+
+import com.tom.shop.mapper.SeckillOrderMapper;
+import com.tom.shop.model.OrderStatus;
+import com.tom.shop.model.SeckillOrder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.tom.shop.redis.SeckillKeys.ORDER_PREFIX_ZSET;
+
+/**
+ * 异步订单流水线。
+ * <p>
+ * 秒杀扣减成功后立即返回购买凭证，订单进入有界队列，由单独的写入线程按批写入 {@code seckill_order}。
+ * 入口通过信号量做准入：队列满（数据库写入跟不上）时新的购买在扣减库存前即被拒绝，形成反压，
+ * 已扣减库存的订单不会被丢弃，写入失败时按退避策略持续重试。
+ * </p>
+ * <p>
+ * 关闭时先同步写入队列中剩余的订单，仍写不进数据库的保存到本地文件，下次启动时重新入队。
+ * 各节点在 Redis 中登记凭证前缀并定期续期，查询其他节点排队中的凭证时，前缀仍在登记中即返回 PENDING。
+ * </p>
+ */
+@Service
+@Log4j2
+public class OrderPipeline {
+
+    private static final long MAX_RETRY_BACKOFF_MS = 2000;
+
+    private static final String SPILL_FILE = "orders.pending";
+
+    @Resource
+    private SeckillOrderMapper seckillOrderMapper;
+
+    @Resource
+    private RedisService redisService;
+
+    @Value("${seckill.order.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${seckill.order.batch-size:500}")
+    private int batchSize;
+
+    @Value("${seckill.order.admit-timeout-ms:50}")
+    private long admitTimeoutMs;
+
+    @Value("${seckill.order.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${seckill.order.prefix-ttl-ms:30000}")
+    private long prefixTtlMs;
+
+    @Value("${seckill.journal.dir:./data/journal}")
+    private String spillDirectory;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private BlockingQueue<SeckillOrder> queue;
+
+    private Semaphore admission;
+
+    private final ConcurrentHashMap<String, CompletableFuture<SeckillOrder>> pendingOrders = new ConcurrentHashMap<>();
+
+    /**
+     * 节点随机前缀加自增序号，保证多节点、重启后凭证不重复
+     */
+    private final String ticketPrefix = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36) + "-";
+
+    private final AtomicLong ticketSequence = new AtomicLong();
+
+    /**
+     * 启动时从本地文件恢复的订单所属的凭证前缀，订单写完之前继续代为续期
+     */
+    private final Set<String> replayedPrefixes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 写入线程正在写的一批订单，写入成功后置空
+     */
+    private volatile List<SeckillOrder> inFlight;
+
+    private volatile boolean running = true;
+
+    private Thread writer;
+
+    @PostConstruct
+    public void start() {
+        List<SeckillOrder> spilled = readSpilled();
+        queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, spilled.size()));
+        // 恢复的订单占用队列位置，超出容量时许可为负，写完后才重新放行新的购买
+        admission = new Semaphore(queueCapacity - spilled.size());
+        for (SeckillOrder order : spilled) {
+            pendingOrders.put(order.getTicket(), new CompletableFuture<>());
+            replayedPrefixes.add(prefixOf(order.getTicket()));
+            queue.add(order);
+        }
+        if (!spilled.isEmpty()) {
+            log.info("Requeued {} orders left by the previous shutdown", spilled.size());
+        }
+        renewPrefixes();
+        // 写入线程大部分时间阻塞在队列与 JDBC 上，虚拟线程模式下不占用平台线程
+        writer = virtualThreads
+                ? Thread.ofVirtual().name("order-pipeline-writer").unstarted(this::writeLoop)
+                : Thread.ofPlatform().name("order-pipeline-writer").daemon(true).unstarted(this::writeLoop);
+        writer.start();
+    }
+
+    /**
+     * 关闭时等待写入线程排空队列；数据库不可用时中断重试，剩余订单再同步写入一次，仍失败则保存到本地文件
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        if (writer.isAlive()) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        List<SeckillOrder> unwritten = new ArrayList<>();
+        List<SeckillOrder> current = inFlight;
+        if (current != null) {
+            unwritten.addAll(current);
+        }
+        queue.drainTo(unwritten);
+        if (!unwritten.isEmpty()) {
+            try {
+                writeBatches(unwritten);
+                log.info("Order pipeline flushed {} orders on shutdown", unwritten.size());
+                unwritten.clear();
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} orders on shutdown, saving them for the next start", unwritten.size(), e);
+            }
+        }
+        writeSpilled(unwritten);
+        if (unwritten.isEmpty()) {
+            try {
+                redisService.zRemove(ORDER_PREFIX_ZSET, ticketPrefix);
+            } catch (RuntimeException e) {
+                log.warn("Failed to unregister order ticket prefix", e);
+            }
+        }
+    }
+
+    /**
+     * 续期本节点的凭证前缀；恢复的订单全部写完后停止续期其原前缀
+     */
+    @Scheduled(fixedDelayString = "${seckill.order.prefix-renew-ms:10000}")
+    public void renewPrefixes() {
+        long expiresAt = System.currentTimeMillis() + prefixTtlMs;
+        try {
+            redisService.zAdd(ORDER_PREFIX_ZSET, ticketPrefix, expiresAt);
+            for (String prefix : replayedPrefixes) {
+                if (pendingOrders.keySet().stream().anyMatch(ticket -> ticket.startsWith(prefix))) {
+                    redisService.zAdd(ORDER_PREFIX_ZSET, prefix, expiresAt);
+                } else {
+                    replayedPrefixes.remove(prefix);
+                    redisService.zRemove(ORDER_PREFIX_ZSET, prefix);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew order ticket prefix", e);
+        }
+    }
+
+    /**
+     * 扣减库存前申请一个队列位置，队列积压时在超时后放弃
+     */
+    public boolean tryAdmit() {
+        return tryAdmit(1);
+    }
+
+    /**
+     * 为一次提交多个订单的批量购买申请 permits 个队列位置
+     */
+    public boolean tryAdmit(int permits) {
+        try {
+            return admission.tryAcquire(permits, admitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 不等待地申请一个队列位置，供事件循环线程调用
+     */
+    public boolean tryAdmitNow() {
+        return admission.tryAcquire();
+    }
+
+    /**
+     * 扣减失败时归还申请到的队列位置
+     */
+    public void cancelAdmission() {
+        cancelAdmission(1);
+    }
+
+    public void cancelAdmission(int permits) {
+        admission.release(permits);
+    }
+
+    /**
+     * 提交订单并返回购买凭证，调用前必须已通过 {@link #tryAdmit()}
+     */
+    public String submit(Long productId, int quantity) {
+        return submit(productId, quantity, newTicket());
+    }
+
+    /**
+     * 以预先生成的凭证提交订单，用于扣减脚本需要同时记录凭证的场景（如幂等键）
+     */
+    public String submit(Long productId, int quantity, String ticket) {
+        SeckillOrder order = new SeckillOrder();
+        order.setTicket(ticket);
+        order.setProductId(productId);
+        order.setQuantity(quantity);
+        order.setStatus(OrderStatus.PENDING);
+        order.setCreatedAt(LocalDateTime.now());
+        pendingOrders.put(order.getTicket(), new CompletableFuture<>());
+        queue.add(order);
+        return order.getTicket();
+    }
+
+    /**
+     * 生成一个新的购买凭证
+     */
+    public String newTicket() {
+        return ticketPrefix + Long.toString(ticketSequence.incrementAndGet(), 36);
+    }
+
+    /**
+     * 查询订单：仍在本节点队列中的返回 PENDING，其余从数据库读取；
+     * 数据库中没有、但凭证属于其他仍在登记中的节点时同样返回 PENDING，订单可能还在该节点排队。确定不存在时返回 null
+     */
+    public SeckillOrder findOrder(String ticket) {
+        if (pendingOrders.containsKey(ticket)) {
+            return pending(ticket);
+        }
+        SeckillOrder order = seckillOrderMapper.selectByTicket(ticket);
+        if (order == null && isQueuedElsewhere(ticket)) {
+            return pending(ticket);
+        }
+        return order;
+    }
+
+    /**
+     * 订单写入完成的通知，凭证不在本节点排队时返回 null
+     */
+    public CompletableFuture<SeckillOrder> completion(String ticket) {
+        return pendingOrders.get(ticket);
+    }
+
+    private boolean isQueuedElsewhere(String ticket) {
+        String prefix = prefixOf(ticket);
+        if (prefix.isEmpty() || prefix.equals(ticketPrefix)) {
+            return false;
+        }
+        try {
+            Double expiresAt = redisService.zScore(ORDER_PREFIX_ZSET, prefix);
+            return expiresAt != null && expiresAt > System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            // 无法确认该节点已下线，按排队中处理
+            return true;
+        }
+    }
+
+    private static SeckillOrder pending(String ticket) {
+        SeckillOrder pending = new SeckillOrder();
+        pending.setTicket(ticket);
+        pending.setStatus(OrderStatus.PENDING);
+        return pending;
+    }
+
+    private static String prefixOf(String ticket) {
+        return ticket.substring(0, ticket.indexOf('-') + 1);
+    }
+
+    private void writeLoop() {
+        List<SeckillOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SeckillOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (lingerMs > 0 && queue.size() < batchSize - 1) {
+                    Thread.sleep(lingerMs);
+                }
+                queue.drainTo(batch, batchSize - 1);
+                inFlight = List.copyOf(batch);
+                writeWithRetry(batch);
+                inFlight = null;
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeWithRetry(List<SeckillOrder> batch) throws InterruptedException {
+        batch.forEach(order -> order.setStatus(OrderStatus.CREATED));
+        long backoff = 50;
+        while (true) {
+            try {
+                seckillOrderMapper.batchInsert(batch);
+                break;
+            } catch (RuntimeException e) {
+                log.error("Failed to write {} orders, retrying in {} ms", batch.size(), backoff, e);
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        }
+        for (SeckillOrder order : batch) {
+            CompletableFuture<SeckillOrder> completion = pendingOrders.remove(order.getTicket());
+            if (completion != null) {
+                completion.complete(order);
+            }
+        }
+        admission.release(batch.size());
+    }
+
+    /**
+     * 关闭时按批同步写入，不重试
+     */
+    private void writeBatches(List<SeckillOrder> orders) {
+        orders.forEach(order -> order.setStatus(OrderStatus.CREATED));
+        for (int from = 0; from < orders.size(); from += batchSize) {
+            seckillOrderMapper.batchInsert(orders.subList(from, Math.min(from + batchSize, orders.size())));
+        }
+    }
+
+    /**
+     * 每行一个订单：凭证,商品ID,数量,创建时间（毫秒）；没有剩余订单时删除文件
+     */
+    private void writeSpilled(List<SeckillOrder> orders) {
+        Path file = Path.of(spillDirectory, SPILL_FILE);
+        try {
+            if (orders.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.createDirectories(file.getParent());
+            List<String> lines = new ArrayList<>(orders.size());
+            for (SeckillOrder order : orders) {
+                long createdAt = order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                lines.add(order.getTicket() + "," + order.getProductId() + "," + order.getQuantity() + "," + createdAt);
+            }
+            Path temp = file.resolveSibling(SPILL_FILE + ".tmp");
+            Files.write(temp, lines);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.warn("Saved {} unwritten orders to {}", orders.size(), file);
+        } catch (IOException e) {
+            log.error("Failed to save {} unwritten orders", orders.size(), e);
+        }
+    }
+
+    /**
+     * 读取上次关闭时保存的订单；文件保留到下次关闭时重写，期间崩溃会再次恢复，重复写入由凭证唯一约束忽略
+     */
+    private List<SeckillOrder> readSpilled() {
+        Path file = Path.of(spillDirectory, SPILL_FILE);
+        List<SeckillOrder> orders = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return orders;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法读取未写入的订单: " + file, e);
+        }
+        for (String line : lines) {
+            String[] fields = line.split(",");
+            if (fields.length != 4) {
+                continue;
+            }
+            SeckillOrder order = new SeckillOrder();
+            order.setTicket(fields[0]);
+            order.setProductId(Long.valueOf(fields[1]));
+            order.setQuantity(Integer.valueOf(fields[2]));
+            order.setStatus(OrderStatus.PENDING);
+            order.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(fields[3])), ZoneId.systemDefault()));
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,155 @@
+package com.tom.shop.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同一商品并发购买请求的合并器。
+ * <p>
+ * 在合并窗口内（时间或数量先到者为准）到达的请求归入同一批，由第一个到达的请求（leader）
+ * 发起一次“至多扣减 N 件”的操作，再按到达顺序把扣到的库存逐件分配给等待中的请求，
+ * 其余请求得到售罄结果。每个请求拿到的剩余库存与逐个扣减时完全一致。
+ * </p>
+ */
+public class PurchaseCombiner {
+
+    /**
+     * 一批请求的扣减操作
+     */
+    @FunctionalInterface
+    public interface BatchTaker {
+
+        /**
+         * @return granted 为实际扣减数量（小于 0 时为状态码，整批共享），remaining 为扣减后剩余库存
+         */
+        BatchTake take(Long productId, int requested, long nowMillis);
+    }
+
+    public record BatchTake(long granted, long remaining) {
+    }
+
+    private final BatchTaker taker;
+
+    private final long windowMicros;
+
+    private final int maxBatch;
+
+    private final ConcurrentHashMap<Long, Batch> openBatches = new ConcurrentHashMap<>();
+
+    public PurchaseCombiner(BatchTaker taker, long windowMicros, int maxBatch) {
+        this.taker = taker;
+        this.windowMicros = windowMicros;
+        this.maxBatch = Math.max(maxBatch, 1);
+    }
+
+    /**
+     * 为当前请求扣减一件库存，阻塞至所在批次完成。
+     *
+     * @return 本请求扣减后的剩余库存，或批次共享的状态码（小于 0）
+     */
+    public long acquire(Long productId, long nowMillis) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        for (; ; ) {
+            Batch batch = openBatches.computeIfAbsent(productId, Batch::new);
+            int slot = batch.join(result);
+            if (slot < 0) {
+                openBatches.remove(productId, batch);
+                continue;
+            }
+            if (slot == 0) {
+                lead(batch, nowMillis);
+            }
+            return result.join();
+        }
+    }
+
+    /**
+     * 扣减失败（包括 Error）时整批请求都以同一异常结束，不会有请求永远等在 {@code result.join()} 上
+     */
+    private void lead(Batch batch, long nowMillis) {
+        try {
+            batch.full.await(windowMicros, TimeUnit.MICROSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<CompletableFuture<Long>> waiters = batch.seal();
+        openBatches.remove(batch.productId, batch);
+        try {
+            BatchTake take = taker.take(batch.productId, waiters.size(), nowMillis);
+            distribute(take, waiters);
+        } catch (Throwable e) {
+            waiters.forEach(waiter -> waiter.completeExceptionally(e));
+            if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * 按到达顺序分配：第 i 个请求得到的剩余库存为 remaining + (granted - 1 - i)
+     */
+    private void distribute(BatchTake take, List<CompletableFuture<Long>> waiters) {
+        long granted = take.granted();
+        for (int i = 0; i < waiters.size(); i++) {
+            if (granted < 0) {
+                waiters.get(i).complete(granted);
+            } else if (i < granted) {
+                waiters.get(i).complete(take.remaining() + (granted - 1 - i));
+            } else {
+                waiters.get(i).complete(RedisService.SECKILL_SOLD_OUT);
+            }
+        }
+    }
+
+    private final class Batch {
+
+        private final Long productId;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final CountDownLatch full = new CountDownLatch(1);
+
+        private final List<CompletableFuture<Long>> waiters = new ArrayList<>(maxBatch);
+
+        private boolean sealed;
+
+        private Batch(Long productId) {
+            this.productId = productId;
+        }
+
+        /**
+         * @return 在批次中的位置，批次已封闭时返回 -1
+         */
+        private int join(CompletableFuture<Long> waiter) {
+            lock.lock();
+            try {
+                if (sealed) {
+                    return -1;
+                }
+                waiters.add(waiter);
+                if (waiters.size() >= maxBatch) {
+                    sealed = true;
+                    full.countDown();
+                }
+                return waiters.size() - 1;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private List<CompletableFuture<Long>> seal() {
+            lock.lock();
+            try {
+                sealed = true;
+                return waiters;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
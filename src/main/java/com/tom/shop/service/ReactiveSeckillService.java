@@ -0,0 +1,330 @@
+package com.tom.shop.service;
+
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.config.ReactiveProperties;
+import com.tom.shop.config.UserLimitProperties;
+import com.tom.shop.dto.Buyer;
+import com.tom.shop.dto.PurchaseLine;
+import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.metrics.PurchaseEvent;
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.model.SeckillOrder;
+import com.tom.shop.model.SeckillProduct;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.tom.shop.redis.SeckillKeys.*;
+
+/**
+ * {@link SeckillService} 的非阻塞版本，通过 {@link ReactiveRedisTemplate} 访问同一套 Redis Key，两套接口可以同时运行。
+ * <p>
+ * 普通商品的购买只执行一次 EVALSHA，之后的售罄标记、本地日志与订单提交与阻塞实现共用同一段代码；
+ * 回源数据库以及分桶、租约、合并商品交给阻塞实现，在容量有限的独立线程池上执行，排满时直接拒绝，
+ * 不会让事件循环线程阻塞，也不会无限堆积任务。
+ * </p>
+ */
+@Service
+@Log4j2
+public class ReactiveSeckillService {
+
+    private static final SeckillResult BUSY = SeckillResult.error("系统繁忙，请稍后重试");
+
+    private static final SeckillResult SOLD_OUT = SeckillResult.error("商品已售罄");
+
+    private static final SeckillResult INACTIVE = SeckillResult.error("秒杀活动未开始或已结束");
+
+    @Resource
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    /**
+     * 库存与脚本参数按原始字符串读写，与 Lua 脚本中的格式一致
+     */
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Resource
+    private SeckillService seckillService;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private OrderPipeline orderPipeline;
+
+    @Resource
+    private ReservationService reservationService;
+
+    @Resource
+    private ProductIdFilter productIdFilter;
+
+    @Resource
+    private StockStripes stockStripes;
+
+    @Resource
+    private ActiveProductsSnapshot activeProductsSnapshot;
+
+    @Resource
+    private ReactiveProperties reactiveProperties;
+
+    @Resource
+    private UserLimitProperties userLimitProperties;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+
+    private Scheduler blockingScheduler;
+
+    @PostConstruct
+    public void start() {
+        blockingScheduler = Schedulers.newBoundedElastic(reactiveProperties.getBlockingThreads(),
+                reactiveProperties.getBlockingQueue(), "seckill-reactive-blocking");
+    }
+
+    @PreDestroy
+    public void stop() {
+        blockingScheduler.dispose();
+    }
+
+    /**
+     * 活动商品列表快照：快照有效时直接返回；否则从缓存读取商品与库存后重建，缓存中没有进行中的商品时回退到阻塞实现回源数据库
+     */
+    public Mono<ActiveProductsSnapshot.Snapshot> getActiveProductsSnapshot() {
+        ActiveProductsSnapshot.Snapshot snapshot = activeProductsSnapshot.peek();
+        if (snapshot != null) {
+            return Mono.just(snapshot);
+        }
+        return reactiveRedisTemplate.<String, Object>opsForHash().values(PRODUCT_CACHE_HASH)
+                .ofType(SeckillProduct.class)
+                .collectList()
+                .flatMap(products -> readTotalStocks(products.stream().map(SeckillProduct::getId).toList())
+                        .flatMap(stocks -> {
+                            products.forEach(product -> overlayStock(product, stocks.get(product.getId())));
+                            LocalDateTime now = LocalDateTime.now();
+                            boolean anyActive = products.stream()
+                                    .anyMatch(product -> SeckillService.isProductActive(product, now)
+                                            && product.getStock() != null && product.getStock() > 0);
+                            if (anyActive) {
+                                return Mono.just(activeProductsSnapshot.get(() -> products));
+                            }
+                            return blocking(seckillService::getActiveProductsSnapshot);
+                        }));
+    }
+
+    /**
+     * 根据ID获取秒杀商品详情，缓存未命中时回退到阻塞实现
+     */
+    public Mono<SeckillProduct> getSeckillProductById(Long id) {
+        if (!productIdFilter.mightContain(id)) {
+            return Mono.empty();
+        }
+        return reactiveRedisTemplate.<String, Object>opsForHash().get(PRODUCT_CACHE_HASH, id.toString())
+                .ofType(SeckillProduct.class)
+                .flatMap(product -> readTotalStocks(List.of(id)).map(stocks -> {
+                    overlayStock(product, stocks.get(id));
+                    return product;
+                }))
+                .switchIfEmpty(Mono.defer(() -> blocking(() -> seckillService.getSeckillProductById(id))));
+    }
+
+    /**
+     * 执行秒杀购买。订单流水线不等待地申请队列位置，库存未缓存时归还位置并回退到阻塞实现。
+     * 卖出最后一件或判定售罄时需要广播售罄消息，这一步放到阻塞线程池上执行。限购请求交给阻塞实现。
+     * 准入控制由调用方完成；购买耗时与 JFR 事件与阻塞实现记录在同一组指标中。
+     * Redis 熔断断开时、或脚本因 Redis 不可用而失败时交给阻塞实现，由其熔断计数并在数据库扣减。
+     */
+    public Mono<SeckillResult> performSeckill(Long productId, Buyer buyer) {
+        if (!productIdFilter.mightContain(productId)) {
+            return Mono.just(INACTIVE);
+        }
+        boolean soldOut = soldOutRegistry.isSoldOut(productId);
+        purchaseMetrics.soldOutFastPath(soldOut);
+        if (soldOut) {
+            return Mono.just(SOLD_OUT);
+        }
+        if (seckillService.usesUserScript(buyer) || (userLimitProperties.isEnabled() && userLimitProperties.isRequireUser())) {
+            return blocking(() -> seckillService.performSeckill(productId, buyer));
+        }
+        if (!seckillService.isDirectPurchase(productId)
+                || (redisCircuitBreaker.isEnabled() && redisCircuitBreaker.isOpen())) {
+            return blocking(() -> seckillService.performSeckill(productId));
+        }
+        if (!orderPipeline.tryAdmitNow()) {
+            return Mono.just(BUSY);
+        }
+        AtomicBoolean admitted = new AtomicBoolean(true);
+        Runnable cancelAdmission = () -> {
+            if (admitted.compareAndSet(true, false)) {
+                orderPipeline.cancelAdmission();
+            }
+        };
+        PurchaseEvent event = new PurchaseEvent();
+        event.begin();
+        long start = purchaseMetrics.beginAsyncRequest(event.isEnabled());
+        AtomicReference<SeckillResult> outcome = new AtomicReference<>();
+        String productIdKey = productId.toString();
+        String nowMillis = String.valueOf(SeckillService.toEpochMillis(LocalDateTime.now()));
+        return reactiveStringRedisTemplate.execute(RedisService.SECKILL_SCRIPT, SeckillService.SECKILL_SCRIPT_KEYS,
+                        List.of(productIdKey, nowMillis))
+                .next()
+                // 脚本没有执行成功，库存未扣减，与库存未缓存一样回退到阻塞实现
+                .onErrorResume(RedisCircuitBreaker::isRedisUnavailable, e -> Mono.just(RedisService.SECKILL_NOT_CACHED))
+                .doOnNext(status -> purchaseMetrics.asyncStockTaken(start))
+                .flatMap(status -> {
+                    if (status == RedisService.SECKILL_NOT_CACHED) {
+                        cancelAdmission.run();
+                        return blocking(() -> seckillService.performSeckill(productId));
+                    }
+                    Callable<SeckillResult> settle = () -> {
+                        SeckillResult result = seckillService.settleDirectPurchase(productId, status);
+                        if (result.isSuccess()) {
+                            // 队列位置已随订单提交转移给订单流水线
+                            admitted.set(false);
+                        }
+                        return result;
+                    };
+                    // 售罄广播是阻塞的 Redis 发布，只发生在卖出最后一件（剩余 0）或判定售罄时；其余已扣减的库存当场提交订单
+                    return status <= 0 ? blocking(settle) : Mono.fromCallable(settle);
+                })
+                .defaultIfEmpty(BUSY)
+                .doOnNext(outcome::set)
+                .doFinally(signal -> {
+                    cancelAdmission.run();
+                    purchaseMetrics.endAsyncRequest(start, 1);
+                    if (event.shouldCommit()) {
+                        SeckillResult result = outcome.get();
+                        event.productId = productId;
+                        event.outcome = result == null ? signal.toString() : result.isSuccess() ? "success" : result.getMessage();
+                        event.redisRoundTrips = 1;
+                        event.commit();
+                    }
+                });
+    }
+
+    /**
+     * 批量购买，整体交给阻塞实现在独立线程池上执行
+     */
+    public Mono<SeckillResult> performBulkSeckill(List<PurchaseLine> lines, Buyer buyer) {
+        return blocking(() -> seckillService.performBulkSeckill(lines, buyer));
+    }
+
+    /**
+     * 库存预留、确认与取消，交给阻塞实现在独立线程池上执行
+     */
+    public Mono<SeckillResult> reserve(Long productId, int quantity, Buyer buyer) {
+        return blocking(() -> reservationService.reserve(productId, quantity, buyer));
+    }
+
+    public Mono<SeckillResult> confirmReservation(String reservationId) {
+        return blocking(() -> reservationService.confirm(reservationId));
+    }
+
+    public Mono<SeckillResult> cancelReservation(String reservationId) {
+        return blocking(() -> reservationService.cancel(reservationId));
+    }
+
+    /**
+     * 查询订单状态，waitMs 大于 0 且订单仍在本节点排队时等待写入完成
+     */
+    public Mono<SeckillOrder> getOrder(String ticket, long waitMs) {
+        CompletableFuture<SeckillOrder> completion = waitMs > 0 ? orderPipeline.completion(ticket) : null;
+        Mono<SeckillOrder> lookup = blocking(() -> orderPipeline.findOrder(ticket));
+        if (completion == null) {
+            return lookup;
+        }
+        // 完成通知由多个请求共享，取消订阅时不能取消它
+        return Mono.fromFuture(completion, true)
+                .timeout(Duration.ofMillis(waitMs))
+                .onErrorResume(TimeoutException.class, e -> lookup);
+    }
+
+    /**
+     * 读取多个商品的总库存：每个分桶一条 HMGET，经同一连接流水线发送；尚未缓存的商品不出现在结果中
+     */
+    private Mono<Map<Long, Integer>> readTotalStocks(List<Long> productIds) {
+        List<Long> ids = productIds.stream().filter(Objects::nonNull).toList();
+        if (ids.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        int[] bucketCounts = new int[ids.size()];
+        int maxBuckets = 1;
+        for (int i = 0; i < ids.size(); i++) {
+            bucketCounts[i] = seckillService.bucketCount(ids.get(i));
+            maxBuckets = Math.max(maxBuckets, bucketCounts[i]);
+        }
+        List<String> fields = ids.stream().map(String::valueOf).toList();
+        List<Mono<List<String>>> reads = new ArrayList<>(maxBuckets);
+        for (int bucket = 0; bucket < maxBuckets; bucket++) {
+            reads.add(reactiveStringRedisTemplate.<String, String>opsForHash()
+                    .multiGet(stockStripes.bucketKey(STOCK_CACHE_HASH, bucket), fields));
+        }
+        return Flux.mergeSequential(reads).collectList().map(buckets -> {
+            Map<Long, Integer> totals = new HashMap<>();
+            List<String> baseStocks = buckets.get(0);
+            for (int i = 0; i < ids.size(); i++) {
+                Integer base = parseStock(baseStocks.get(i));
+                if (base == null) {
+                    continue;
+                }
+                int total = base;
+                for (int bucket = 1; bucket < bucketCounts[i]; bucket++) {
+                    Integer bucketStock = parseStock(buckets.get(bucket).get(i));
+                    if (bucketStock != null) {
+                        total += bucketStock;
+                    }
+                }
+                totals.put(ids.get(i), total);
+            }
+            return totals;
+        });
+    }
+
+    /**
+     * 在容量有限的线程池上执行阻塞实现，线程与队列都已占满时返回 {@link java.util.concurrent.RejectedExecutionException}
+     */
+    private <T> Mono<T> blocking(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(blockingScheduler);
+    }
+
+    private static void overlayStock(SeckillProduct product, Integer stock) {
+        if (product != null && stock != null) {
+            product.setStock(stock);
+        }
+    }
+
+    private static Integer parseStock(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid stock value in cache: {}", value);
+            return null;
+        }
+    }
+}
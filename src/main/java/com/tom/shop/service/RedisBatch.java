@@ -0,0 +1,363 @@
+package com.tom.shop.service;
+
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.metrics.RedisCommandEvent;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 一组 Redis 命令，{@link #execute()} 时一次性发送，只产生一次网络往返。
+ * <p>
+ * 管道模式（{@link RedisService#batch()}）下各命令相互独立；事务模式（{@link RedisService#transaction()}）下
+ * 命令包裹在 MULTI/EXEC 中原子执行。每条命令返回一个 {@link Response}，执行后从中取得已按类型解码的结果。
+ * 键、Hash 字段、Set/ZSet 成员与脚本参数均按原始字符串写入，Hash 值使用模板的值序列化器，
+ * 与 {@link RedisService} 中对应方法写入的格式一致。
+ * </p>
+ * <p>
+ * 脚本以 EVALSHA 发送。Redis 重启或清空脚本缓存后返回 NOSCRIPT 时重新加载全部脚本并重发一次：
+ * 管道模式只重发失败的脚本命令，其余命令的结果保留；事务模式下 EXEC 已提交其余命令，只有全部由脚本组成的事务才整体重发。
+ * </p>
+ */
+public class RedisBatch {
+
+    private static final RedisSerializer<String> STRING = StringRedisSerializer.UTF_8;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisSerializer<Object> valueSerializer;
+
+    private final boolean transactional;
+
+    private final PurchaseMetrics purchaseMetrics;
+
+    /**
+     * 重新加载全部脚本，见 {@link RedisService#preloadScripts()}
+     */
+    private final Runnable scriptLoader;
+
+    private final List<Command<?>> commands = new ArrayList<>();
+
+    private boolean executed;
+
+    @SuppressWarnings("unchecked")
+    RedisBatch(RedisTemplate<String, Object> redisTemplate, boolean transactional, PurchaseMetrics purchaseMetrics,
+               Runnable scriptLoader) {
+        this.redisTemplate = redisTemplate;
+        this.valueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        this.transactional = transactional;
+        this.purchaseMetrics = purchaseMetrics;
+        this.scriptLoader = scriptLoader;
+    }
+
+    /**
+     * 批次中一条命令的结果，批次执行前调用 {@link #get()} 会抛出异常
+     */
+    public static final class Response<T> {
+
+        private T value;
+
+        private boolean done;
+
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("Redis 批次尚未执行");
+            }
+            return value;
+        }
+
+        private void set(T value) {
+            this.value = value;
+            this.done = true;
+        }
+    }
+
+    private record Command<T>(Consumer<RedisConnection> action, Function<Object, T> decoder, Response<T> response,
+                              boolean script) {
+
+        void complete(Object raw) {
+            response.set(raw == null ? null : decoder.apply(raw));
+        }
+    }
+
+    public Response<Boolean> hSet(String key, String field, Object value) {
+        return add(connection -> connection.hashCommands().hSet(raw(key), raw(field), valueSerializer.serialize(value)),
+                RedisBatch::toBoolean);
+    }
+
+    /**
+     * 一次 HMSET 写入多个字段
+     */
+    public Response<Void> hSetAll(String key, Map<String, ?> map) {
+        return add(connection -> {
+            Map<byte[], byte[]> rawMap = new LinkedHashMap<>();
+            map.forEach((field, value) -> rawMap.put(raw(field), valueSerializer.serialize(value)));
+            connection.hashCommands().hMSet(raw(key), rawMap);
+        }, raw -> null);
+    }
+
+    public Response<Object> hGet(String key, String field) {
+        return add(connection -> connection.hashCommands().hGet(raw(key), raw(field)), this::decodeValue);
+    }
+
+    /**
+     * 一次 HMGET 读取多个字段，结果与字段顺序一一对应，不存在的字段为 null
+     */
+    public Response<List<Object>> hMultiGet(String key, Collection<String> fields) {
+        byte[][] rawFields = raw(fields.toArray(String[]::new));
+        return add(connection -> connection.hashCommands().hMGet(raw(key), rawFields), raw -> {
+            List<Object> values = new ArrayList<>();
+            for (Object value : (List<?>) raw) {
+                values.add(value == null ? null : decodeValue(value));
+            }
+            return values;
+        });
+    }
+
+    public Response<Long> hIncrement(String key, String field, long delta) {
+        return add(connection -> connection.hashCommands().hIncrBy(raw(key), raw(field), delta), RedisBatch::toLong);
+    }
+
+    /**
+     * 返回实际新增的成员数量
+     */
+    public Response<Long> sAdd(String key, String... members) {
+        return add(connection -> connection.setCommands().sAdd(raw(key), raw(members)), RedisBatch::toLong);
+    }
+
+    /**
+     * 返回实际移除的成员数量
+     */
+    public Response<Long> sRem(String key, String... members) {
+        return add(connection -> connection.setCommands().sRem(raw(key), raw(members)), RedisBatch::toLong);
+    }
+
+    public Response<Boolean> zAdd(String key, String member, double score) {
+        return add(connection -> connection.zSetCommands().zAdd(raw(key), score, raw(member)), RedisBatch::toBoolean);
+    }
+
+    public Response<Boolean> expire(String key, long timeout, TimeUnit unit) {
+        long seconds = unit.toSeconds(timeout);
+        return add(connection -> connection.keyCommands().expire(raw(key), seconds), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 返回该位原来的值
+     */
+    public Response<Boolean> setBit(String key, long offset) {
+        return add(connection -> connection.stringCommands().setBit(raw(key), offset, true), RedisBatch::toBoolean);
+    }
+
+    public Response<Void> set(String key, String value) {
+        return add(connection -> connection.stringCommands().set(raw(key), raw(value)), raw -> null);
+    }
+
+    /**
+     * 以 EVALSHA 执行脚本，脚本需已在启动时预加载
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Response<T> eval(RedisScript<T> script, List<String> keys, String... args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = raw(keys.get(i));
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = raw(args[i]);
+        }
+        return add(connection -> connection.scriptingCommands().evalSha(script.getSha1(),
+                ReturnType.fromJavaType(script.getResultType()), keys.size(), keysAndArgs), raw -> (T) raw, true);
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * 发送所有命令并填充各 {@link Response}，一个批次只能执行一次
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("Redis 批次不能重复执行");
+        }
+        executed = true;
+        if (commands.isEmpty()) {
+            return;
+        }
+        String command = transactional ? "transaction" : "pipeline";
+        RedisCommandEvent event = new RedisCommandEvent();
+        event.begin();
+        long start = purchaseMetrics.start();
+        List<Object> results;
+        try {
+            results = transactional ? executeTransaction() : executePipeline();
+        } finally {
+            purchaseMetrics.roundTrip();
+            purchaseMetrics.redisCommand(command, start);
+            if (event.shouldCommit()) {
+                event.command = command;
+                event.size = commands.size();
+                event.commit();
+            }
+        }
+        if (results.size() != commands.size()) {
+            throw new IllegalStateException("Redis 批次结果数量不一致: 期望 " + commands.size() + "，实际 " + results.size());
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            commands.get(i).complete(results.get(i));
+        }
+    }
+
+    /**
+     * 管道中只有 NOSCRIPT 的脚本命令在重新加载脚本后重发一次，其余命令的结果原样保留
+     */
+    private List<Object> executePipeline() {
+        List<Object> results;
+        try {
+            results = pipeline(commands);
+        } catch (RedisPipelineException e) {
+            results = e.getPipelineResult();
+            if (results.size() != commands.size() || results.stream().noneMatch(RedisBatch::isNoScript)) {
+                throw e;
+            }
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (commands.get(i).script() && isNoScript(results.get(i))) {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            scriptLoader.run();
+            List<Object> retried = resend(missing);
+            results = new ArrayList<>(results);
+            for (int i = 0; i < missing.size(); i++) {
+                results.set(missing.get(i), retried.get(i));
+            }
+        }
+        for (Object result : results) {
+            if (result instanceof Exception failure) {
+                throw new RedisPipelineException("Redis 批次中有命令执行失败", failure, results);
+            }
+        }
+        return results;
+    }
+
+    private List<Object> resend(List<Integer> indexes) {
+        List<Command<?>> retry = new ArrayList<>(indexes.size());
+        indexes.forEach(index -> retry.add(commands.get(index)));
+        purchaseMetrics.roundTrip();
+        try {
+            return pipeline(retry);
+        } catch (RedisPipelineException e) {
+            return e.getPipelineResult();
+        }
+    }
+
+    private List<Object> pipeline(List<Command<?>> batch) {
+        // 不使用模板的值序列化器，由各命令自行解码
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            batch.forEach(command -> command.action().accept(connection));
+            return null;
+        }, null);
+        return results == null ? Collections.emptyList() : results;
+    }
+
+    /**
+     * EXEC 中任一命令失败时整个结果以异常返回，其余命令已经提交；只有全部由脚本组成的事务在 NOSCRIPT 时整体重发
+     */
+    private List<Object> executeTransaction() {
+        try {
+            return transaction();
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            scriptLoader.run();
+            if (commands.stream().anyMatch(command -> !command.script())) {
+                throw e;
+            }
+            purchaseMetrics.roundTrip();
+            return transaction();
+        }
+    }
+
+    private List<Object> transaction() {
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.multi();
+            commands.forEach(command -> command.action().accept(connection));
+            return connection.exec();
+        });
+        if (results == null) {
+            throw new IllegalStateException("Redis 事务被中止");
+        }
+        return results;
+    }
+
+    private <T> Response<T> add(Consumer<RedisConnection> action, Function<Object, T> decoder) {
+        return add(action, decoder, false);
+    }
+
+    private <T> Response<T> add(Consumer<RedisConnection> action, Function<Object, T> decoder, boolean script) {
+        Response<T> response = new Response<>();
+        commands.add(new Command<>(action, decoder, response, script));
+        return response;
+    }
+
+    /**
+     * 结果或异常链中带有 NOSCRIPT 错误，即 EVALSHA 的脚本不在 Redis 脚本缓存中
+     */
+    private static boolean isNoScript(Object result) {
+        for (Throwable e = result instanceof Throwable t ? t : null; e != null; e = e.getCause()) {
+            if (e.getMessage() != null && e.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object decodeValue(Object raw) {
+        return raw instanceof byte[] bytes ? valueSerializer.deserialize(bytes) : raw;
+    }
+
+    private static Long toLong(Object raw) {
+        return raw instanceof Number number ? number.longValue() : null;
+    }
+
+    private static Boolean toBoolean(Object raw) {
+        if (raw instanceof Boolean bool) {
+            return bool;
+        }
+        return raw instanceof Number number ? number.longValue() != 0 : null;
+    }
+
+    private static byte[] raw(String value) {
+        return STRING.serialize(value);
+    }
+
+    private static byte[][] raw(String... values) {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = raw(values[i]);
+        }
+        return result;
+    }
+}
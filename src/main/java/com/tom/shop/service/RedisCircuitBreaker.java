@@ -0,0 +1,134 @@
+package com.tom.shop.service;
+
+import com.tom.shop.config.FallbackProperties;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 购买链路对 Redis 的熔断器。
+ * <p>
+ * 连续 {@code seckill.fallback.failure-threshold} 次连接失败或超时后，先把本节点尚未回写的库存写入数据库，
+ * 再断开，之后的购买请求直接在数据库扣减；断开前遇到故障的请求返回“系统繁忙”，避免按过期的数据库库存超卖。
+ * 断开后不在请求路径上试探，由 {@link SeckillService#reconcileDegradedSales()} 定期探测，
+ * 扣回降级期间的售出数量后再闭合。只统计连接类故障，脚本错误等其他异常照常抛出。
+ * </p>
+ */
+@Component
+@Log4j2
+public class RedisCircuitBreaker {
+
+    @Resource
+    private FallbackProperties fallbackProperties;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicBoolean tripping = new AtomicBoolean();
+
+    private final LongAdder dbPurchases = new LongAdder();
+
+    private volatile boolean open;
+
+    private volatile long openedAt;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("seckill.redis.circuit.open", this, breaker -> breaker.open ? 1 : 0).register(meterRegistry);
+        Gauge.builder("seckill.fallback.db-purchases", dbPurchases, LongAdder::sum).register(meterRegistry);
+    }
+
+    /**
+     * 当前是否处于断开状态
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    public boolean isEnabled() {
+        return fallbackProperties.isEnabled();
+    }
+
+    public void recordSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * 记录一次 Redis 故障。达到阈值时只有一个调用方得到 true，由它完成切换前的准备后调用 {@link #open()}，
+     * 准备失败时调用 {@link #abortTrip()}
+     */
+    public boolean recordFailure(RuntimeException e) {
+        if (consecutiveFailures.incrementAndGet() < fallbackProperties.getFailureThreshold() || open) {
+            return false;
+        }
+        if (tripping.compareAndSet(false, true)) {
+            log.warn("Redis unavailable after {} consecutive failures", consecutiveFailures.get(), e);
+            return true;
+        }
+        return false;
+    }
+
+    public void open() {
+        openedAt = System.currentTimeMillis();
+        open = true;
+        tripping.set(false);
+        log.warn("Purchases fall back to database");
+    }
+
+    public void abortTrip() {
+        tripping.set(false);
+    }
+
+    /**
+     * Redis 已恢复且降级期间的售出数量已扣回
+     */
+    public void close() {
+        if (open) {
+            log.info("Redis recovered after {} ms, purchases switch back to Redis", System.currentTimeMillis() - openedAt);
+        }
+        consecutiveFailures.set(0);
+        open = false;
+    }
+
+    public void countDbPurchase() {
+        dbPurchases.increment();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", fallbackProperties.isEnabled());
+        result.put("open", open);
+        result.put("consecutiveFailures", consecutiveFailures.get());
+        result.put("dbPurchases", dbPurchases.sum());
+        return result;
+    }
+
+    /**
+     * 是否为 Redis 连接失败或命令超时，这类异常才计入熔断；数据库异常与脚本错误不计入
+     */
+    public static boolean isRedisUnavailable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedisConnectionFailureException || cause instanceof RedisConnectionException
+                    || cause instanceof RedisCommandTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,22 +1,378 @@
 package com.tom.shop.service;
 
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.metrics.RedisCommandEvent;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class RedisService {
 
+    /**
+     * 秒杀脚本返回码：已售罄
+     */
+    public static final long SECKILL_SOLD_OUT = -1L;
+
+    /**
+     * 秒杀脚本返回码：不在活动时间内
+     */
+    public static final long SECKILL_INACTIVE = -2L;
+
+    /**
+     * 秒杀脚本返回码：库存尚未写入缓存
+     */
+    public static final long SECKILL_NOT_CACHED = -3L;
+
+    /**
+     * 限购脚本返回码：同一用户以相同幂等键重复提交，结果中附带首次请求的凭证
+     */
+    public static final long SECKILL_DUPLICATE = -5L;
+
+    /**
+     * 限购脚本返回码：用户已达限购数量
+     */
+    public static final long SECKILL_LIMIT_REACHED = -6L;
+
+    /**
+     * 秒杀扣减脚本，非阻塞接口通过响应式模板以 EVALSHA 直接执行
+     */
+    static final RedisScript<Long> SECKILL_SCRIPT = loadScript("lua/seckill_purchase.lua", Long.class);
+
+    private static final RedisScript<Long> BUCKET_SECKILL_SCRIPT =
+            loadScript("lua/seckill_bucket_purchase.lua", Long.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEASE_SCRIPT = loadScript("lua/seckill_lease.lua", List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEASE_RECLAIM_SCRIPT = loadScript("lua/seckill_lease_reclaim.lua", List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = loadScript("lua/seckill_take.lua", List.class);
+
+    /**
+     * 缓存单个库存分桶的合并脚本，只能通过 {@link RedisBatch#eval} 批量执行
+     */
+    static final RedisScript<Long> STOCK_MERGE_SCRIPT = loadScript("lua/seckill_stock_merge.lua", Long.class);
+
+    /**
+     * 从单个库存分桶扣回降级期间数据库售出库存的脚本，只能通过 {@link RedisBatch#eval} 批量执行
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> STOCK_DEDUCT_SCRIPT = loadScript("lua/seckill_stock_deduct.lua", List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> BULK_SECKILL_SCRIPT = loadScript("lua/seckill_bulk_purchase.lua", List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> USER_SECKILL_SCRIPT = loadScript("lua/seckill_user_purchase.lua", List.class);
+
+    private static final RedisScript<Long> USER_RELEASE_SCRIPT = loadScript("lua/seckill_user_release.lua", Long.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RESERVE_SCRIPT = loadScript("lua/seckill_reserve.lua", List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> RESERVATION_RELEASE_SCRIPT =
+            loadScript("lua/seckill_reservation_release.lua", List.class);
+
+    private static final RedisScript<String> RESERVATION_CONFIRM_SCRIPT =
+            loadScript("lua/seckill_reservation_confirm.lua", String.class);
+
+    private static final RedisScript<Long> LEADER_ACQUIRE_SCRIPT = loadScript("lua/leader_acquire.lua", Long.class);
+
+    private static final RedisScript<Long> LEADER_RELEASE_SCRIPT = loadScript("lua/leader_release.lua", Long.class);
+
     @Resource
     private RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * Set 成员统一以原始字符串存储，与 Lua 脚本中 SADD/SREM 写入的格式保持一致
+     */
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    /**
+     * 启动时预加载 Lua 脚本，之后的调用均走 EVALSHA，避免每次传输脚本正文
+     */
+    @PostConstruct
+    public void preloadScripts() {
+        loadScriptSha(SECKILL_SCRIPT);
+        loadScriptSha(BUCKET_SECKILL_SCRIPT);
+        loadScriptSha(LEASE_SCRIPT);
+        loadScriptSha(LEASE_RECLAIM_SCRIPT);
+        loadScriptSha(TAKE_SCRIPT);
+        loadScriptSha(BULK_SECKILL_SCRIPT);
+        loadScriptSha(USER_SECKILL_SCRIPT);
+        loadScriptSha(USER_RELEASE_SCRIPT);
+        loadScriptSha(RESERVE_SCRIPT);
+        loadScriptSha(RESERVATION_RELEASE_SCRIPT);
+        loadScriptSha(RESERVATION_CONFIRM_SCRIPT);
+        loadScriptSha(STOCK_MERGE_SCRIPT);
+        loadScriptSha(STOCK_DEDUCT_SCRIPT);
+        loadScriptSha(LEADER_ACQUIRE_SCRIPT);
+        loadScriptSha(LEADER_RELEASE_SCRIPT);
+    }
+
+    /**
+     * 执行秒杀扣减脚本，一次往返完成时间校验、库存扣减与状态集合切换。
+     *
+     * @param keys      库存 Hash、活动时间 Hash、活动 Set、售罄 Set
+     * @param productId 商品ID
+     * @param nowMillis 当前时间（毫秒）
+     * @return 剩余库存，或 {@link #SECKILL_SOLD_OUT} / {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}
+     */
+    public Long executeSeckill(List<String> keys, String productId, long nowMillis) {
+        return executeScript("purchase", SECKILL_SCRIPT, keys, productId, String.valueOf(nowMillis));
+    }
+
+    /**
+     * 对单个库存分桶执行扣减，分桶为空时返回 {@link #SECKILL_SOLD_OUT} 但不切换售罄集合。
+     * 脚本只访问分桶 Key，活动时间由调用方传入。
+     *
+     * @param bucketKey   分桶库存 Hash
+     * @param productId   商品ID
+     * @param nowMillis   当前时间（毫秒）
+     * @param startMillis 活动开始时间（毫秒，-1 表示不限）
+     * @param endMillis   活动结束时间（毫秒，-1 表示不限）
+     * @return 分桶剩余库存，或 {@link #SECKILL_SOLD_OUT} / {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}
+     */
+    public Long executeBucketSeckill(String bucketKey, String productId, long nowMillis, long startMillis, long endMillis) {
+        return executeScript("bucket_purchase", BUCKET_SECKILL_SCRIPT, List.of(bucketKey), productId,
+                String.valueOf(nowMillis), String.valueOf(startMillis), String.valueOf(endMillis));
+    }
+
+    /**
+     * 执行库存租约脚本：先归还与结算上一批租约，再申请新的一批库存。
+     *
+     * @param keys      库存 Hash、租约 Hash、活动时间 Hash、活动 Set、售罄 Set、租约持有 Hash、节点租约 Set、节点心跳 ZSet
+     * @param productId 商品ID
+     * @param returned  归还的未售出数量
+     * @param settled   已售出待结算数量
+     * @param requested 申请数量，为 0 时仅归还/结算
+     * @param nowMillis 当前时间（毫秒）
+     * @param nodeId    节点ID
+     * @param heartbeatExpiresAt 本节点心跳到期时间（毫秒）
+     * @return [领取数量或 {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}, 剩余库存, 租约总量, 活动结束时间]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> executeLease(List<String> keys, String productId, long returned, long settled,
+                                   long requested, long nowMillis, String nodeId, long heartbeatExpiresAt) {
+        return (List<Long>) executeScript("lease", LEASE_SCRIPT, keys, productId, String.valueOf(returned),
+                String.valueOf(settled), String.valueOf(requested), String.valueOf(nowMillis), nodeId,
+                String.valueOf(heartbeatExpiresAt));
+    }
+
+    /**
+     * 回收心跳已过期节点在某个商品上的租约，持有数量按已售出从租约总量中扣除
+     *
+     * @param keys 库存 Hash、租约 Hash、活动 Set、售罄 Set、租约持有 Hash、节点租约 Set、节点心跳 ZSet
+     * @return [回收数量（节点心跳已恢复时为 -1）, 租约总量, 是否加入售罄集合]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> reclaimLease(List<String> keys, String productId, String nodeId, long nowMillis) {
+        return (List<Long>) executeScript("lease_reclaim", LEASE_RECLAIM_SCRIPT, keys, productId, nodeId,
+                String.valueOf(nowMillis));
+    }
+
+    /**
+     * 一次为一批请求扣减至多 requested 件库存。
+     *
+     * @param keys      库存 Hash、活动时间 Hash、活动 Set、售罄 Set
+     * @param productId 商品ID
+     * @param requested 申请数量
+     * @param nowMillis 当前时间（毫秒）
+     * @return [实际扣减数量或 {@link #SECKILL_SOLD_OUT} / {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}, 剩余库存]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> executeTake(List<String> keys, String productId, int requested, long nowMillis) {
+        return (List<Long>) executeScript("take", TAKE_SCRIPT, keys, productId, String.valueOf(nowMillis),
+                String.valueOf(requested));
+    }
+
+    /**
+     * 在一次往返中扣减多个商品的库存，任一商品失败时所有商品均不扣减，参数顺序见 {@code lua/seckill_bulk_purchase.lua}。
+     *
+     * @param keys 库存 Hash、活动时间 Hash、活动 Set、售罄 Set，限购时依次加上各行商品的购买记录 Hash
+     * @param args 当前时间、用户ID、保留时间，之后每行依次为商品ID、数量、限购数量
+     * @return [0, 各行剩余库存...]，或 [{@link #SECKILL_SOLD_OUT} / {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED} /
+     * {@link #SECKILL_LIMIT_REACHED}, 失败行号（从 1 开始）, 该行当前库存或已购数量]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> executeBulkSeckill(List<String> keys, String... args) {
+        return (List<Long>) executeScript("bulk_purchase", BULK_SECKILL_SCRIPT, keys, args);
+    }
+
+    /**
+     * 在扣减库存的同一脚本内完成请求去重与每用户限购，参数顺序见 {@code lua/seckill_user_purchase.lua}。
+     * 结果中的凭证是字符串，按原始字符串反序列化。
+     *
+     * @param keys 库存 Hash（或分桶）、活动时间 Hash、活动 Set、售罄 Set、购买记录 Hash、请求记录 Hash
+     * @return [剩余库存, 该用户已购数量]，或 [{@link #SECKILL_DUPLICATE}, 首次请求的凭证]、
+     * [{@link #SECKILL_LIMIT_REACHED}, 已购数量]、[{@link #SECKILL_SOLD_OUT} / {@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}, 0]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> executeUserSeckill(List<String> keys, String... args) {
+        return (List<Object>) executeScript("user_purchase", USER_SECKILL_SCRIPT, StringRedisSerializer.UTF_8, keys, args);
+    }
+
+    /**
+     * 撤销一次已记录的限购购买，返回撤销后该用户的已购数量
+     *
+     * @param keys 购买记录 Hash、请求记录 Hash
+     */
+    public Long releaseUserPurchase(List<String> keys, String userId, String requestKey, String ticket) {
+        return executeScript("user_release", USER_RELEASE_SCRIPT, keys, userId, requestKey, ticket);
+    }
+
+    /**
+     * 扣减库存并登记一条带到期时间的预留，参数顺序见 {@code lua/seckill_reserve.lua}
+     *
+     * @param keys 库存 Hash、活动时间 Hash、活动 Set、售罄 Set、预留记录 Hash、到期索引 ZSet、节点 Set、购买记录 Hash
+     * @return [剩余库存, 该用户已购数量]，或 [{@link #SECKILL_SOLD_OUT}, 当前库存]、[{@link #SECKILL_LIMIT_REACHED}, 已购数量]、
+     * [{@link #SECKILL_INACTIVE} / {@link #SECKILL_NOT_CACHED}, 0]
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> executeReserve(List<String> keys, String... args) {
+        return (List<Long>) executeScript("reserve", RESERVE_SCRIPT, keys, args);
+    }
+
+    /**
+     * 取消或到期时归还预留的库存，预留已确认或已释放时不做修改
+     *
+     * @param keys 库存 Hash、活动时间 Hash、活动 Set、售罄 Set、预留记录 Hash、到期索引 ZSet、购买记录 Hash
+     * @return [归还后库存, 归还数量, 是否移出售罄集合]，预留不存在时首个元素为 -1，
+     * 库存已不在缓存中时为 {@link #SECKILL_NOT_CACHED}
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> releaseReservation(List<String> keys, String reservationId, long nowMillis) {
+        return (List<Long>) executeScript("reservation_release", RESERVATION_RELEASE_SCRIPT, keys,
+                reservationId, String.valueOf(nowMillis));
+    }
+
+    /**
+     * 确认预留，返回预留记录（商品ID|数量|用户ID），预留不存在或已过到期时间时返回 null
+     *
+     * @param keys 预留记录 Hash、到期索引 ZSet
+     */
+    public String confirmReservation(List<String> keys, String reservationId, long nowMillis) {
+        return executeScript("reservation_confirm", RESERVATION_CONFIRM_SCRIPT, StringRedisSerializer.UTF_8,
+                keys, reservationId, String.valueOf(nowMillis));
+    }
+
+    /**
+     * 探测 Redis 是否可用，连接失败或超时时返回 false
+     */
+    public boolean ping() {
+        try {
+            return "PONG".equalsIgnoreCase(redisTemplate.execute((RedisCallback<String>) RedisConnection::ping));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建一个管道批次，批量发送多条命令
+     */
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate, false, purchaseMetrics, this::preloadScripts);
+    }
+
+    /**
+     * 创建一个事务批次，命令在 MULTI/EXEC 中原子执行
+     */
+    public RedisBatch transaction() {
+        return new RedisBatch(redisTemplate, true, purchaseMetrics, this::preloadScripts);
+    }
+
+    /**
+     * 抢占或续期领导者租约
+     *
+     * @return 本节点是否持有租约
+     */
+    public boolean acquireLeadership(String key, String nodeId, long ttlMillis) {
+        Long held = executeScript("leader_acquire", LEADER_ACQUIRE_SCRIPT, List.of(key), nodeId, String.valueOf(ttlMillis));
+        return held != null && held == 1L;
+    }
+
+    /**
+     * 释放本节点持有的领导者租约
+     */
+    public void releaseLeadership(String key, String nodeId) {
+        executeScript("leader_release", LEADER_RELEASE_SCRIPT, List.of(key), nodeId);
+    }
+
+    /**
+     * 以字符串形式传参执行脚本，避免参数被 JSON 序列化器加上引号；按脚本名统计耗时与往返次数
+     */
+    private <T> T executeScript(String name, RedisScript<T> script, List<String> keys, String... args) {
+        return executeScript(name, script, redisTemplate.getValueSerializer(), keys, args);
+    }
+
+    /**
+     * 列表结果的每个元素按 resultSerializer 反序列化，整数元素保持为 Long
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T executeScript(String name, RedisScript<T> script, RedisSerializer<?> elementSerializer,
+                                List<String> keys, String... args) {
+        RedisSerializer<T> resultSerializer = (RedisSerializer<T>) elementSerializer;
+        RedisCommandEvent event = new RedisCommandEvent();
+        event.begin();
+        long start = purchaseMetrics.start();
+        try {
+            return redisTemplate.execute(script, StringRedisSerializer.UTF_8, resultSerializer, keys, (Object[]) args);
+        } finally {
+            purchaseMetrics.roundTrip();
+            purchaseMetrics.redisCommand(name, start);
+            if (event.shouldCommit()) {
+                event.command = name;
+                event.size = 1;
+                event.commit();
+            }
+        }
+    }
+
+    private void loadScriptSha(RedisScript<?> script) {
+        String sha = redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands()
+                .scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+        if (!script.getSha1().equals(sha)) {
+            throw new IllegalStateException("Redis 返回的脚本 SHA 与本地不一致: " + sha);
+        }
+    }
+
+    private static <T> RedisScript<T> loadScript(String location, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType(resultType);
+        return script;
+    }
+
     // 获取 Hash 操作对象
     private HashOperations<String, String, Object> hashOps() {
         return redisTemplate.opsForHash();
@@ -60,6 +416,17 @@ public class RedisService {
         return hashOps().get(key, field);
     }
 
+    /**
+     * 一次 HMGET 读取多个字段，返回值与字段顺序一一对应，不存在的字段为 null
+     */
+    public List<Object> hMultiGet(String key, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> values = hashOps().multiGet(key, fields);
+        return values == null ? Collections.emptyList() : values;
+    }
+
     public Map<String, Object> hGetAll(String key) {
         return hashOps().entries(key);
     }
@@ -73,13 +440,8 @@ public class RedisService {
     }
 
     public Set<String> members(String key) {
-        Set<Object> members = redisTemplate.opsForSet().members(key);
-        if (members == null) {
-            return Collections.emptySet();
-        }
-        @SuppressWarnings("unchecked")
-        Set<String> result = (Set<String>) (Set<?>) members;
-        return result;
+        Set<String> members = stringRedisTemplate.opsForSet().members(key);
+        return members == null ? Collections.emptySet() : members;
     }
 
     /**
@@ -133,22 +495,102 @@ public class RedisService {
     }
 
     /**
-     * 从 Set 中移除成员。
+     * 从 Set 中移除成员，返回实际移除的数量。
      */
-    public void removeFromSet(String setKey, String... members) {
+    public long removeFromSet(String setKey, String... members) {
         if (members == null || members.length == 0) {
-            return;
+            return 0;
         }
-        redisTemplate.opsForSet().remove(setKey, (Object[]) members);
+        Long removed = stringRedisTemplate.opsForSet().remove(setKey, (Object[]) members);
+        return removed == null ? 0 : removed;
     }
 
     /**
-     * 向 Set 中加入成员。
+     * 向 Set 中加入成员，返回实际新增的数量。
      */
-    public void addToSet(String setKey, String... members) {
+    public long addToSet(String setKey, String... members) {
         if (members == null || members.length == 0) {
-            return;
+            return 0;
+        }
+        Long added = stringRedisTemplate.opsForSet().add(setKey, members);
+        return added == null ? 0 : added;
+    }
+
+    /**
+     * 向有序集合写入成员，已存在时更新分数
+     */
+    public void zAdd(String key, String member, double score) {
+        stringRedisTemplate.opsForZSet().add(key, member, score);
+    }
+
+    /**
+     * 读取分数在 [min, max] 内的成员及其分数
+     */
+    public Map<String, Double> zRangeByScoreWithScores(String key, double min, double max) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                stringRedisTemplate.opsForZSet().rangeByScoreWithScores(key, min, max);
+        if (tuples == null || tuples.isEmpty()) {
+            return Collections.emptyMap();
         }
-        redisTemplate.opsForSet().add(setKey, members);
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            result.put(tuple.getValue(), tuple.getScore());
+        }
+        return result;
+    }
+
+    /**
+     * 读取有序集合成员的分数，成员不存在时返回 null
+     */
+    public Double zScore(String key, String member) {
+        return stringRedisTemplate.opsForZSet().score(key, member);
+    }
+
+    /**
+     * 从有序集合中移除成员
+     */
+    public void zRemove(String key, String member) {
+        stringRedisTemplate.opsForZSet().remove(key, member);
+    }
+
+    /**
+     * 删除分数在 [min, max] 内的成员，返回删除数量
+     */
+    public long zRemoveRangeByScore(String key, double min, double max) {
+        Long removed = stringRedisTemplate.opsForZSet().removeRangeByScore(key, min, max);
+        return removed == null ? 0 : removed;
+    }
+
+    public String getString(String key) {
+        return stringRedisTemplate.opsForValue().get(key);
+    }
+
+    public void setString(String key, String value) {
+        stringRedisTemplate.opsForValue().set(key, value);
+    }
+
+    /**
+     * 以原始字节读取字符串值，用于位图
+     */
+    public byte[] getBytes(String key) {
+        return redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 将位图按位或合并到 key 中：先写入临时 key，再以 BITOP OR 合并，已有的位不会被覆盖
+     */
+    public void mergeBitmap(String key, byte[] bitmap) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] tempKey = (key + ":merge:" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tempKey, bitmap);
+            try {
+                connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tempKey);
+            } finally {
+                connection.keyCommands().del(tempKey);
+            }
+            return null;
+        });
     }
 }
@@ -0,0 +1,460 @@
+package com.tom.shop.service;
+
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.config.NodeIdentity;
+import com.tom.shop.config.ReservationProperties;
+import com.tom.shop.config.UserLimitProperties;
+import com.tom.shop.dto.Buyer;
+import com.tom.shop.dto.PurchaseReceipt;
+import com.tom.shop.dto.Reservation;
+import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.schedule.LeaderLease;
+import com.tom.shop.schedule.TimerWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.tom.shop.redis.SeckillKeys.*;
+
+/**
+ * 带超时的库存预留：预留时立即扣减 Redis 库存，有效期内确认才生成订单，取消或超时未确认则归还库存。
+ * <p>
+ * 预留记录保存在 {@code seckill:reservation:data}，到期时间按创建节点写入各自的到期索引 ZSet；
+ * 本节点创建的预留挂到分层 {@link TimerWheel} 上按时释放，确认或取消时 O(1) 摘除对应的定时任务，大量预留被提前确认也不会堆积。
+ * 预留、确认、释放各是一次脚本调用，三者以预留记录是否存在互斥，同一预留只会转为订单或归还库存其中之一，重复释放不会多还库存。
+ * </p>
+ * <p>
+ * 节点重启时从自己的到期索引重新挂载未到期的预留，已过期的在下一个刻度立即释放（需配置固定的 {@code seckill.node-id}）；
+ * 节点下线后遗留的预留由领导者在到期 {@code seckill.reservation.orphan-grace-ms} 后代为释放。
+ * 预留占用用户限购额度，释放时一并归还；分桶与租约商品的库存不在主库存 Hash 中，不支持预留。
+ * </p>
+ */
+@Service
+@Log4j2
+public class ReservationService {
+
+    /**
+     * 释放脚本返回码：预留已确认、已取消或已到期释放
+     */
+    private static final long NOT_FOUND = -1L;
+
+    /**
+     * Redis 暂时不可用时重试到期释放的间隔
+     */
+    private static final long RETRY_DELAY_MS = 1000;
+
+    /**
+     * 执行到期释放的线程数，每次释放是一次 Redis 往返
+     */
+    private static final int EXPIRY_THREADS = 4;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private SeckillService seckillService;
+
+    @Resource
+    private OrderPipeline orderPipeline;
+
+    @Resource
+    private ProductIdFilter productIdFilter;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private StockLeaseManager stockLeaseManager;
+
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+
+    @Resource
+    private ReservationProperties reservationProperties;
+
+    @Resource
+    private UserLimitProperties userLimitProperties;
+
+    @Resource
+    private NodeIdentity nodeIdentity;
+
+    @Resource
+    private LeaderLease leaderLease;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * 本节点尚未到期的预留及其定时任务，确认或取消时据此摘除
+     */
+    private final Map<String, TimerWheel.Timeout> timeouts = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    private TimerWheel timerWheel;
+
+    private String expiryKey;
+
+    private Counter reserved;
+
+    private Counter confirmed;
+
+    private Counter cancelled;
+
+    private Counter expired;
+
+    private Counter orphansReleased;
+
+    @PostConstruct
+    public void start() {
+        // 时间轮的 tick 线程保持平台线程以保证精度，执行释放的工作线程可以是虚拟线程
+        executor = Executors.newFixedThreadPool(EXPIRY_THREADS, virtualThreads
+                ? Thread.ofVirtual().name("reservation-expiry-", 0).factory()
+                : Thread.ofPlatform().name("reservation-expiry-", 0).daemon(true).factory());
+        timerWheel = new TimerWheel("reservation-timer", reservationProperties.getTickMs(),
+                reservationProperties.getWheelSize(), executor);
+        expiryKey = RESERVATION_EXPIRY_PREFIX + nodeIdentity.getId();
+        reserved = counter("reserved");
+        confirmed = counter("confirmed");
+        cancelled = counter("cancelled");
+        expired = counter("expired");
+        orphansReleased = counter("orphan");
+        if (!reservationProperties.isEnabled()) {
+            return;
+        }
+        try {
+            reschedulePending();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reload pending reservations, they are released by the leader after the grace period", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        timerWheel.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 预留 quantity 件库存，返回预留凭证；预留ID同时携带商品ID与负责到期释放的节点，确认与取消可以在任意节点完成
+     */
+    public SeckillResult reserve(Long productId, int quantity, Buyer buyer) {
+        if (quantity <= 0 || quantity > reservationProperties.getMaxQuantity()) {
+            return SeckillResult.error("单次预留数量应在 1 到 " + reservationProperties.getMaxQuantity() + " 件之间");
+        }
+        if (!productIdFilter.mightContain(productId)) {
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        if (seckillService.bucketCount(productId) != 1 || stockLeaseManager.isLeased(productId)) {
+            return SeckillResult.error("该商品不支持预留");
+        }
+        // 预留不支持幂等键，只校验用户
+        SeckillResult rejected = seckillService.checkBuyer(productId, buyer == null ? null : new Buyer(buyer.userId(), null));
+        if (rejected != null) {
+            return rejected;
+        }
+        if (soldOutRegistry.isSoldOut(productId)) {
+            return SeckillResult.error("商品已售罄");
+        }
+        if (redisCircuitBreaker.isOpen()) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        String ticket = orderPipeline.newTicket();
+        String reservationId = productId + "-" + ticket + "@" + nodeIdentity.getId();
+        boolean limited = seckillService.isUserLimited(buyer);
+        try {
+            long now = System.currentTimeMillis();
+            long expiresAt = now + reservationProperties.getTtlMs();
+            List<Long> result = takeReservation(productId, quantity, reservationId, limited ? buyer.userId() : "", now, expiresAt);
+            if (status(result) == RedisService.SECKILL_NOT_CACHED) {
+                SeckillResult failure = seckillService.loadUncachedProduct(productId, LocalDateTime.now());
+                if (failure != null) {
+                    return failure;
+                }
+                now = System.currentTimeMillis();
+                expiresAt = now + reservationProperties.getTtlMs();
+                result = takeReservation(productId, quantity, reservationId, limited ? buyer.userId() : "", now, expiresAt);
+            }
+            Long status = status(result);
+            if (status == null || status == RedisService.SECKILL_NOT_CACHED) {
+                return SeckillResult.error("系统繁忙，请稍后重试");
+            }
+            if (status == RedisService.SECKILL_INACTIVE) {
+                return SeckillResult.error("秒杀活动未开始或已结束");
+            }
+            if (status == RedisService.SECKILL_LIMIT_REACHED) {
+                return SeckillResult.error("已达到限购数量");
+            }
+            if (status == RedisService.SECKILL_SOLD_OUT) {
+                if (result.get(1) > 0) {
+                    return SeckillResult.error("库存不足");
+                }
+                soldOutRegistry.markSoldOut(productId, false);
+                return SeckillResult.error("商品已售罄");
+            }
+            int remaining = status.intValue();
+            if (remaining <= 0) {
+                soldOutRegistry.markSoldOut(productId, false);
+            }
+            seckillService.recordStock(productId, remaining);
+            schedule(reservationId, expiresAt);
+            reserved.increment();
+            return SeckillResult.ok(new Reservation(reservationId, ticket, productId, quantity, remaining, expiresAt));
+        } catch (RuntimeException e) {
+            return busyIfRedisUnavailable(e);
+        }
+    }
+
+    /**
+     * 确认预留并提交订单，订单凭证即预留时返回的 ticket；预留已取消或已到期时失败
+     */
+    public SeckillResult confirm(String reservationId) {
+        ReservationId id = ReservationId.parse(reservationId);
+        if (id == null) {
+            return SeckillResult.error("预留不存在或已失效");
+        }
+        if (!orderPipeline.tryAdmit()) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        String record;
+        try {
+            record = redisService.confirmReservation(List.of(RESERVATION_HASH, id.expiryKey()), reservationId,
+                    System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            orderPipeline.cancelAdmission();
+            return busyIfRedisUnavailable(e);
+        }
+        if (record == null) {
+            orderPipeline.cancelAdmission();
+            return SeckillResult.error("预留不存在或已失效");
+        }
+        cancelTimeout(reservationId);
+        confirmed.increment();
+        String ticket = orderPipeline.submit(id.productId(), quantityOf(record), id.ticket());
+        return SeckillResult.ok(new PurchaseReceipt(ticket, id.productId(), null));
+    }
+
+    /**
+     * 取消预留并立即归还库存
+     */
+    public SeckillResult cancel(String reservationId) {
+        ReservationId id = ReservationId.parse(reservationId);
+        if (id == null) {
+            return SeckillResult.error("预留不存在或已失效");
+        }
+        try {
+            long status = release(id);
+            if (status == NOT_FOUND) {
+                return SeckillResult.error("预留不存在或已失效");
+            }
+            if (status == RedisService.SECKILL_NOT_CACHED) {
+                return SeckillResult.error("系统繁忙，请稍后重试");
+            }
+        } catch (RuntimeException e) {
+            return busyIfRedisUnavailable(e);
+        }
+        cancelTimeout(reservationId);
+        cancelled.increment();
+        return SeckillResult.ok(reservationId);
+    }
+
+    /**
+     * 领导者释放到期超过宽限期仍未释放的预留，通常是所属节点已下线；没有遗留预留的节点从节点集合中移除
+     */
+    @Scheduled(fixedDelayString = "${seckill.reservation.sweep-ms:5000}")
+    public void releaseOrphans() {
+        if (!reservationProperties.isEnabled() || !leaderLease.isLeader()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - reservationProperties.getOrphanGraceMs();
+        try {
+            for (String node : redisService.members(RESERVATION_NODES_SET)) {
+                String key = RESERVATION_EXPIRY_PREFIX + node;
+                for (String reservationId : redisService.zRangeByScoreWithScores(key, 0, cutoff).keySet()) {
+                    ReservationId id = ReservationId.parse(reservationId);
+                    if (id != null && release(id) >= 0) {
+                        orphansReleased.increment();
+                    }
+                }
+                // 节点下次预留时会重新登记
+                if (!node.equals(nodeIdentity.getId()) && !redisService.hasKey(key)) {
+                    redisService.removeFromSet(RESERVATION_NODES_SET, node);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to release orphaned reservations", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", reservationProperties.isEnabled());
+        result.put("ttlMs", reservationProperties.getTtlMs());
+        result.put("pending", timerWheel.size());
+        result.put("reserved", (long) reserved.count());
+        result.put("confirmed", (long) confirmed.count());
+        result.put("cancelled", (long) cancelled.count());
+        result.put("expired", (long) expired.count());
+        result.put("orphansReleased", (long) orphansReleased.count());
+        return result;
+    }
+
+    /**
+     * 重启后把本节点到期索引中的预留重新挂到时间轮，已过期的在下一个刻度释放
+     */
+    private void reschedulePending() {
+        Map<String, Double> pending = redisService.zRangeByScoreWithScores(expiryKey, 0, Long.MAX_VALUE);
+        pending.forEach((reservationId, deadline) -> schedule(reservationId, deadline.longValue()));
+        if (!pending.isEmpty()) {
+            log.info("Rescheduled {} pending reservations", pending.size());
+        }
+    }
+
+    private List<Long> takeReservation(Long productId, int quantity, String reservationId, String userId,
+                                       long nowMillis, long expiresAt) {
+        List<String> keys = List.of(STOCK_CACHE_HASH, WINDOW_CACHE_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY,
+                RESERVATION_HASH, expiryKey, RESERVATION_NODES_SET, BUYERS_HASH_PREFIX + productId);
+        return redisService.executeReserve(keys, productId.toString(), String.valueOf(nowMillis),
+                String.valueOf(quantity), reservationId, String.valueOf(expiresAt), nodeIdentity.getId(), userId,
+                String.valueOf(userLimitProperties.limitOf(productId)),
+                String.valueOf(userLimitProperties.getRetainAfterEndMs()),
+                String.valueOf(userLimitProperties.getOpenWindowTtlMs()));
+    }
+
+    /**
+     * 归还预留的库存，返回归还后的库存；预留已确认或已释放时返回 {@code NOT_FOUND}。
+     * 库存不在缓存中时先从数据库重新加载商品，仍未缓存则返回 {@link RedisService#SECKILL_NOT_CACHED}，预留记录保留，由调用方稍后重试。
+     * 库存因此由 0 变为正数时广播商品恢复可售
+     */
+    private long release(ReservationId id) {
+        List<Long> result = releaseReservation(id);
+        if (status(result) != null && status(result) == RedisService.SECKILL_NOT_CACHED) {
+            seckillService.loadUncachedProduct(id.productId(), LocalDateTime.now());
+            result = releaseReservation(id);
+        }
+        Long status = status(result);
+        if (status == null || status == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        if (status == RedisService.SECKILL_NOT_CACHED) {
+            log.warn("Stock of product {} is not cached, {} reserved units are returned later",
+                    id.productId(), result.get(1));
+            return status;
+        }
+        seckillService.recordStock(id.productId(), status.intValue());
+        if (result.size() > 2 && result.get(2) == 1) {
+            soldOutRegistry.markAvailable(id.productId(), true);
+        }
+        return status;
+    }
+
+    private List<Long> releaseReservation(ReservationId id) {
+        List<String> keys = List.of(STOCK_CACHE_HASH, WINDOW_CACHE_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY,
+                RESERVATION_HASH, id.expiryKey(), BUYERS_HASH_PREFIX + id.productId());
+        return redisService.releaseReservation(keys, id.value(), System.currentTimeMillis());
+    }
+
+    /**
+     * 时间轮到期回调；Redis 不可用或库存暂未缓存时稍后重试，不会丢失释放
+     */
+    private void expire(String reservationId) {
+        timeouts.remove(reservationId);
+        ReservationId id = ReservationId.parse(reservationId);
+        if (id == null) {
+            return;
+        }
+        try {
+            long status = release(id);
+            if (status == RedisService.SECKILL_NOT_CACHED) {
+                schedule(reservationId, System.currentTimeMillis() + RETRY_DELAY_MS);
+            } else if (status != NOT_FOUND) {
+                expired.increment();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to release reservation {}, retrying", reservationId, e);
+            schedule(reservationId, System.currentTimeMillis() + RETRY_DELAY_MS);
+        }
+    }
+
+    private void schedule(String reservationId, long deadlineMillis) {
+        TimerWheel.Timeout timeout = timerWheel.schedule(deadlineMillis, () -> expire(reservationId));
+        TimerWheel.Timeout previous = timeouts.put(reservationId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancelTimeout(String reservationId) {
+        TimerWheel.Timeout timeout = timeouts.remove(reservationId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("seckill.reservation").tag("outcome", outcome).register(meterRegistry);
+    }
+
+    private static SeckillResult busyIfRedisUnavailable(RuntimeException e) {
+        if (!RedisCircuitBreaker.isRedisUnavailable(e)) {
+            throw e;
+        }
+        return SeckillResult.error("系统繁忙，请稍后重试");
+    }
+
+    private static Long status(List<Long> result) {
+        return result == null || result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 预留记录格式：商品ID|数量|用户ID
+     */
+    private static int quantityOf(String record) {
+        int first = record.indexOf('|');
+        return Integer.parseInt(record.substring(first + 1, record.indexOf('|', first + 1)));
+    }
+
+    /**
+     * 预留ID：{商品ID}-{订单凭证}@{节点ID}，订单凭证在确认时作为订单凭证使用
+     */
+    private record ReservationId(String value, Long productId, String ticket, String nodeId) {
+
+        static ReservationId parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            int dash = value.indexOf('-');
+            int at = value.indexOf('@', dash + 1);
+            if (dash <= 0 || at <= dash + 1 || at == value.length() - 1) {
+                return null;
+            }
+            try {
+                return new ReservationId(value, Long.valueOf(value.substring(0, dash)), value.substring(dash + 1, at),
+                        value.substring(at + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String expiryKey() {
+            return RESERVATION_EXPIRY_PREFIX + nodeId;
+        }
+    }
+}
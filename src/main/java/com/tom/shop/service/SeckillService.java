@@ -1,28 +1,60 @@
 package com.tom.shop.service;
 
+import com.tom.shop.admission.PurchaseAdmission;
+import com.tom.shop.admission.RepeatBuyerFilter;
+import com.tom.shop.cache.InactiveProductCache;
+import com.tom.shop.cache.ProductIdFilter;
+import com.tom.shop.cache.ProductLocalCache;
+import com.tom.shop.config.BulkPurchaseProperties;
+import com.tom.shop.config.FallbackProperties;
+import com.tom.shop.config.PurchaseCombineProperties;
+import com.tom.shop.config.RefreshProperties;
+import com.tom.shop.config.ReservationProperties;
+import com.tom.shop.config.UserLimitProperties;
+import com.tom.shop.dto.Buyer;
+import com.tom.shop.dto.PurchaseLine;
+import com.tom.shop.dto.PurchaseReceipt;
 import com.tom.shop.dto.SeckillResult;
+import com.tom.shop.journal.StockJournal;
 import com.tom.shop.mapper.SeckillProductMapper;
+import com.tom.shop.metrics.PurchaseEvent;
+import com.tom.shop.metrics.PurchaseMetrics;
+import com.tom.shop.metrics.StockSyncEvent;
 import com.tom.shop.model.SeckillProduct;
+import com.tom.shop.schedule.LeaderLease;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletionException;
+
+import static com.tom.shop.redis.SeckillKeys.*;
 
 @Service
 @Log4j2
 public class SeckillService {
 
-    private static final String PRODUCT_CACHE_HASH = "seckill:product:data";
-    private static final String STOCK_CACHE_HASH = "seckill:product:stock";
-    private static final String ACTIVE_SET_KEY = "seckill:product:active";
-    private static final String SOLD_OUT_SET_KEY = "seckill:product:soldout";
+    static final List<String> SECKILL_SCRIPT_KEYS =
+            List.of(STOCK_CACHE_HASH, WINDOW_CACHE_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY);
+
+    /**
+     * 活动时间未设置时写入的占位值，脚本中视为不限制
+     */
+    private static final long OPEN_WINDOW_MILLIS = -1L;
+
+    /**
+     * 待回写集合的槽位数，远大于同时在售的商品数即可
+     */
+    private static final int DIRTY_SET_CAPACITY = 4096;
 
     @Resource
     private SeckillProductMapper seckillProductMapper;
@@ -30,48 +62,181 @@ public class SeckillService {
     @Resource
     private RedisService redisService;
 
+    @Resource
+    private ProductLocalCache productLocalCache;
+
+    @Resource
+    private ProductIdFilter productIdFilter;
+
+    @Resource
+    private InactiveProductCache inactiveProductCache;
+
+    @Resource
+    private StockStripes stockStripes;
+
+    @Resource
+    private StockLeaseManager stockLeaseManager;
+
+    @Resource
+    private LeaderLease leaderLease;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Resource
+    private StockJournal stockJournal;
+
+    @Resource
+    private OrderPipeline orderPipeline;
+
+    @Resource
+    private PurchaseCombiner redisPurchaseCombiner;
+
+    /**
+     * Redis 不可用时按商品合并数据库扣减
+     */
+    @Resource
+    private PurchaseCombiner dbPurchaseCombiner;
+
+    @Resource
+    private PurchaseCombineProperties purchaseCombineProperties;
+
+    @Resource
+    private BulkPurchaseProperties bulkPurchaseProperties;
+
+    @Resource
+    private UserLimitProperties userLimitProperties;
+
+    @Resource
+    private RepeatBuyerFilter repeatBuyerFilter;
+
+    @Resource
+    private PurchaseAdmission purchaseAdmission;
+
+    @Resource
+    private ReservationProperties reservationProperties;
+
+    @Resource
+    private RedisCircuitBreaker redisCircuitBreaker;
+
+    @Resource
+    private FallbackProperties fallbackProperties;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private ActiveProductsSnapshot activeProductsSnapshot;
+
+    @Resource
+    private RefreshProperties refreshProperties;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    @Resource
+    private DbBulkhead dbBulkhead;
+
     @Value("${seckill.sync-batch-size:200}")
     private int syncBatchSize;
 
-    private final ConcurrentHashMap<Long, Boolean> soldOutFlags = new ConcurrentHashMap<>();
-
-    private final ConcurrentLinkedQueue<Long> pendingSyncQueue = new ConcurrentLinkedQueue<>();
+    private final DirtyIdSet dirtyProducts = new DirtyIdSet(DIRTY_SET_CAPACITY);
 
     @PostConstruct
     public void warmUpCache() {
+        purchaseMetrics.registerSyncBacklog(dirtyProducts::size);
+        recoverStockJournal();
         refreshActiveProducts();
     }
 
     /**
-     * 定期刷新活动商品缓存，确保活动、库存状态及时更新
+     * 定期归还空闲或活动已结束的库存租约，并将租约引起的库存变化标记为待回写
      */
-    @Scheduled(fixedDelayString = "${seckill.cache-refresh-ms:60000}")
-    public void scheduledRefresh() {
-        refreshActiveProducts();
+    @Scheduled(fixedDelayString = "${seckill.lease.check-ms:1000}")
+    public void releaseIdleLeases() {
+        stockLeaseManager.releaseIdle(System.currentTimeMillis()).forEach(this::markDirtyUnknownStock);
+    }
+
+    /**
+     * 领导者回收心跳已过期节点的租约，回收后库存与租约都归零的商品广播售罄
+     */
+    @Scheduled(fixedDelayString = "${seckill.lease.check-ms:1000}")
+    public void reclaimExpiredLeases() {
+        if (!leaderLease.isLeader()) {
+            return;
+        }
+        try {
+            stockLeaseManager.reclaimExpired(System.currentTimeMillis())
+                    .forEach(productId -> soldOutRegistry.markSoldOut(productId, true));
+        } catch (RuntimeException e) {
+            log.warn("Failed to reclaim expired stock leases", e);
+        }
     }
 
     /**
-     * 定期将 Redis 库存同步回数据库，避免高并发下对数据库的直接压力
+     * 节点关闭时归还所有租约并立即回写，避免未售出的库存滞留在本节点
+     */
+    @PreDestroy
+    public void releaseLeasesOnShutdown() {
+        stockLeaseManager.releaseAll(System.currentTimeMillis()).forEach(this::markDirtyUnknownStock);
+        syncStockToDatabase();
+    }
+
+    /**
+     * 定期将 Redis 库存同步回数据库，避免高并发下对数据库的直接压力。
+     * <p>
+     * 每批商品（含各分桶）的库存通过一次管道读取，并在同一事务内以批量 UPDATE 写回；失败时重新标记待下次重试。
+     * 写回成功后清空本轮封存的本地日志段。
+     * </p>
      */
     @Scheduled(fixedDelayString = "${seckill.sync-delay-ms}")
     public void syncStockToDatabase() {
-        if (pendingSyncQueue.isEmpty()) {
+        if (redisCircuitBreaker.isOpen()) {
+            // 降级期间数据库是库存的权威值，待回写的商品保留到 Redis 恢复后再回写
             return;
         }
-        Set<Long> uniqueIds = new HashSet<>();
-        Long productId;
-        while ((productId = pendingSyncQueue.poll()) != null) {
-            uniqueIds.add(productId);
-            if (uniqueIds.size() >= syncBatchSize) {
-                break;
-            }
+        List<Long> ids = new ArrayList<>();
+        // 封存日志段与取出待回写ID在同一临界区内完成，封存段中的记录都已包含在本轮回写中
+        int sealedSegment = stockJournal.rotate(() -> {
+            purchaseMetrics.drained();
+            dirtyProducts.drain(ids::add);
+        });
+        if (ids.isEmpty()) {
+            return;
         }
-        for (Long id : uniqueIds) {
-            Integer stock = redisService.hGet(STOCK_CACHE_HASH, id.toString(), Integer.class);
-            if (stock == null) {
-                continue;
+        StockSyncEvent event = new StockSyncEvent();
+        event.begin();
+        long start = purchaseMetrics.start();
+        try {
+            List<SeckillProduct> updates = new ArrayList<>(ids.size());
+            for (int from = 0; from < ids.size(); from += syncBatchSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + syncBatchSize, ids.size()));
+                readTotalStocks(chunk).forEach((productId, stock) -> {
+                    SeckillProduct update = new SeckillProduct();
+                    update.setId(productId);
+                    update.setStock(stock);
+                    updates.add(update);
+                });
+            }
+            if (!updates.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int from = 0; from < updates.size(); from += syncBatchSize) {
+                        seckillProductMapper.batchSyncStock(updates.subList(from, Math.min(from + syncBatchSize, updates.size())));
+                    }
+                });
+            }
+            stockJournal.truncate(sealedSegment);
+            event.succeeded = true;
+        } catch (RuntimeException e) {
+            ids.forEach(dirtyProducts::add);
+            purchaseMetrics.markDirty();
+            log.error("Failed to sync stock of {} products to database, will retry", ids.size(), e);
+        } finally {
+            purchaseMetrics.sync(start);
+            if (event.shouldCommit()) {
+                event.products = ids.size();
+                event.commit();
             }
-            seckillProductMapper.syncStock(id, stock);
         }
     }
 
@@ -79,21 +244,42 @@ public class SeckillService {
      * 获取当前所有正在进行的秒杀商品
      */
     public List<SeckillProduct> getActiveSeckillProducts() {
-        List<SeckillProduct> cachedProducts = redisService.hVals(PRODUCT_CACHE_HASH, SeckillProduct.class);
         LocalDateTime now = LocalDateTime.now();
+        return selectActive(loadProducts(now), now);
+    }
+
+    /**
+     * 活动商品列表的预序列化快照，供商品列表接口直接输出
+     */
+    public ActiveProductsSnapshot.Snapshot getActiveProductsSnapshot() {
+        return activeProductsSnapshot.get(() -> loadProducts(LocalDateTime.now()));
+    }
+
+    /**
+     * 读取缓存中的全部商品（库存以库存 Hash 为准）；缓存中没有进行中的商品时回源数据库并重建缓存
+     */
+    private List<SeckillProduct> loadProducts(LocalDateTime now) {
+        if (redisCircuitBreaker.isOpen()) {
+            return dbBulkhead.call(() -> seckillProductMapper.selectActiveSeckillProducts(now));
+        }
+        List<SeckillProduct> cachedProducts = redisService.hVals(PRODUCT_CACHE_HASH, SeckillProduct.class);
         if (!cachedProducts.isEmpty()) {
-            List<SeckillProduct> activeList = cachedProducts.stream()
+            Map<Long, Integer> stocks = readTotalStocks(cachedProducts.stream()
+                    .filter(Objects::nonNull)
+                    .map(SeckillProduct::getId)
+                    .toList());
+            cachedProducts.stream()
                     .filter(Objects::nonNull)
-                    .filter(product -> isProductActive(product, now) && product.getStock() > 0)
-                    .sorted(Comparator.comparing(SeckillProduct::getStartTime)
-                            .thenComparing(SeckillProduct::getId))
-                    .toList();
-            if (!activeList.isEmpty()) {
-                return activeList;
+                    .forEach(product -> overlayStock(product, stocks.get(product.getId())));
+            boolean anyActive = cachedProducts.stream()
+                    .anyMatch(product -> isProductActive(product, now)
+                            && product.getStock() != null && product.getStock() > 0);
+            if (anyActive) {
+                return cachedProducts;
             }
         }
-        List<SeckillProduct> activeFromDb = seckillProductMapper.selectActiveSeckillProducts(now);
-        activeFromDb.forEach(product -> cacheProduct(product, now));
+        List<SeckillProduct> activeFromDb = dbBulkhead.call(() -> seckillProductMapper.selectActiveSeckillProducts(now));
+        cacheProducts(activeFromDb, now);
         return activeFromDb;
     }
 
@@ -101,117 +287,1105 @@ public class SeckillService {
      * 根据ID获取秒杀商品详情
      */
     public SeckillProduct getSeckillProductById(Long id) {
+        if (!productIdFilter.mightContain(id)) {
+            return null;
+        }
+        if (redisCircuitBreaker.isOpen()) {
+            return selectProductById(id);
+        }
         SeckillProduct cached = fetchProductFromCache(id);
         if (cached != null) {
+            overlayStock(cached, readTotalStocks(List.of(id)).get(id));
             return cached;
         }
-        SeckillProduct product = seckillProductMapper.selectById(id);
+        SeckillProduct product = selectProductById(id);
         cacheProduct(product, LocalDateTime.now());
         return product;
     }
 
+    /**
+     * 从数据库读取商品，确认不存在的ID在负缓存有效期内不再查询
+     */
+    private SeckillProduct selectProductById(Long id) {
+        if (inactiveProductCache.isAbsent(id)) {
+            return null;
+        }
+        SeckillProduct product = dbBulkhead.call(() -> seckillProductMapper.selectById(id));
+        if (product == null) {
+            inactiveProductCache.markAbsent(id);
+        } else {
+            // 过滤器增量加载跳过的商品，确认存在后补入
+            productIdFilter.add(id);
+        }
+        return product;
+    }
+
     /**
      * 执行秒杀购买逻辑（优先操作 Redis，异步回写数据库）
+     * <p>
+     * 正常情况下只需一次 Redis 调用：由 Lua 脚本原子完成活动时间校验、库存扣减以及活动/售罄集合切换。
+     * 仅当库存尚未缓存时才回源数据库加载并重试一次。开启分桶库存的商品按分桶依次尝试扣减，
+     * 开启库存租约的商品优先从本节点租约中发放，由租约续领与归还时统一回写数据库。
+     * 扣减成功后立即返回购买凭证，订单由 {@link OrderPipeline} 异步批量写入；订单队列积压时直接拒绝。
+     * 布隆过滤器判定不存在的商品ID在任何 Redis 或数据库访问之前直接拒绝。
+     * 携带用户ID或幂等键时改用限购脚本，在同一次扣减中完成幂等键去重与每用户限购，见 {@link #takeAndSubmitUserOrder}。
+     * 各阶段耗时与 Redis 往返次数记录到 {@link PurchaseMetrics}，JFR 录制时额外提交 {@link PurchaseEvent}。
+     * </p>
      */
+    public SeckillResult performSeckill(Long productId, Buyer buyer) {
+        if (!productIdFilter.mightContain(productId)) {
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        SeckillResult rejected = checkBuyer(productId, buyer);
+        if (rejected != null) {
+            return rejected;
+        }
+        boolean soldOut = soldOutRegistry.isSoldOut(productId);
+        purchaseMetrics.soldOutFastPath(soldOut);
+        if (soldOut) {
+            return SeckillResult.error("商品已售罄");
+        }
+        if (!orderPipeline.tryAdmit()) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        PurchaseEvent event = new PurchaseEvent();
+        event.begin();
+        purchaseMetrics.beginRequest(event.isEnabled());
+        SeckillResult result = null;
+        try {
+            result = takeWithFallback(productId, buyer);
+            return result;
+        } finally {
+            if (result == null || !result.isSuccess()) {
+                orderPipeline.cancelAdmission();
+            }
+            purchaseMetrics.endRequest();
+            if (event.shouldCommit()) {
+                event.productId = productId;
+                event.outcome = result == null ? "exception" : result.isSuccess() ? "success" : result.getMessage();
+                event.redisRoundTrips = purchaseMetrics.requestRoundTrips();
+                event.takeStock = purchaseMetrics.requestStageNanos(PurchaseMetrics.Stage.TAKE_STOCK);
+                event.dbFallback = purchaseMetrics.requestStageNanos(PurchaseMetrics.Stage.DB_FALLBACK);
+                event.submitOrder = purchaseMetrics.requestStageNanos(PurchaseMetrics.Stage.SUBMIT_ORDER);
+                event.commit();
+            }
+        }
+    }
+
     public SeckillResult performSeckill(Long productId) {
-        if (soldOutFlags.getOrDefault(productId, false)) {
+        return performSeckill(productId, Buyer.ANONYMOUS);
+    }
+
+    /**
+     * 是否按用户限购：限购已启用且请求携带了用户ID
+     */
+    public boolean isUserLimited(Buyer buyer) {
+        return userLimitProperties.isEnabled() && buyer != null && buyer.userId() != null;
+    }
+
+    /**
+     * 是否经限购脚本扣减：按用户限购，或未携带用户ID但携带了幂等键，需要在扣减的同时按幂等键去重
+     */
+    public boolean usesUserScript(Buyer buyer) {
+        return isUserLimited(buyer) || (userLimitProperties.isEnabled() && buyer != null && buyer.requestKey() != null);
+    }
+
+    /**
+     * 要求用户ID但未携带时拒绝；本节点已确认买满的用户不访问 Redis 直接拒绝。
+     * 携带幂等键的请求可能是成功后的重试，需要到 Redis 取回首次请求的凭证，不经过本地预过滤
+     */
+    SeckillResult checkBuyer(Long productId, Buyer buyer) {
+        if (!userLimitProperties.isEnabled()) {
+            return null;
+        }
+        if (buyer == null || buyer.userId() == null) {
+            return userLimitProperties.isRequireUser() ? SeckillResult.error("缺少用户标识") : null;
+        }
+        if (buyer.requestKey() == null && usesRepeatBuyerFilter(productId)
+                && repeatBuyerFilter.mightHaveReachedLimit(productId, buyer.userId())) {
+            return SeckillResult.error("已达到限购数量");
+        }
+        return null;
+    }
+
+    /**
+     * Redis 可用时走 {@link #takeAndSubmitOrder}；熔断已断开时改为在数据库扣减。
+     * 熔断断开前遇到 Redis 连接故障的请求返回“系统繁忙”，达到阈值的那个请求负责切换。
+     * 降级期间限购记录不可用，只有本地预过滤器挡住已确认买满的用户。
+     */
+    private SeckillResult takeWithFallback(Long productId, Buyer buyer) {
+        if (!redisCircuitBreaker.isEnabled()) {
+            return takeAndSubmitOrder(productId, buyer);
+        }
+        if (redisCircuitBreaker.isOpen()) {
+            return takeFromDatabase(productId);
+        }
+        SeckillResult result;
+        try {
+            result = takeAndSubmitOrder(productId, buyer);
+        } catch (RuntimeException e) {
+            if (!RedisCircuitBreaker.isRedisUnavailable(e)) {
+                throw e;
+            }
+            if (redisCircuitBreaker.recordFailure(e)) {
+                openCircuit();
+            }
+            return redisCircuitBreaker.isOpen() ? takeFromDatabase(productId) : SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        redisCircuitBreaker.recordSuccess();
+        return result;
+    }
+
+    /**
+     * 切换到数据库扣减前，把本地日志中尚未回写的已知库存写入数据库（只降不升），
+     * 否则数据库库存还包含最近一个回写周期内在 Redis 售出的数量。写入失败时保持闭合，由下一次故障重试。
+     */
+    private void openCircuit() {
+        try {
+            List<SeckillProduct> known = new ArrayList<>();
+            stockJournal.replay().forEach((id, stock) -> {
+                if (stock != StockJournal.UNKNOWN_STOCK) {
+                    SeckillProduct update = new SeckillProduct();
+                    update.setId(id);
+                    update.setStock(stock);
+                    known.add(update);
+                }
+            });
+            if (!known.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int from = 0; from < known.size(); from += syncBatchSize) {
+                        seckillProductMapper.batchSyncStockIfLower(known.subList(from, Math.min(from + syncBatchSize, known.size())));
+                    }
+                });
+            }
+            redisCircuitBreaker.open();
+            activeProductsSnapshot.invalidate();
+            log.warn("Flushed journaled stock of {} products before falling back to database", known.size());
+        } catch (RuntimeException e) {
+            redisCircuitBreaker.abortTrip();
+            log.error("Failed to flush journaled stock, staying on Redis", e);
+        }
+    }
+
+    /**
+     * 降级模式：在数据库扣减，同一商品的并发请求由 {@link #dbPurchaseCombiner} 合并为一条条件扣减语句。
+     * 数据库即库存的权威值，不写本地日志也不标记待回写；每个商品最后 {@code seckill.fallback.reserved-stock} 件不在数据库售出，
+     * 留给其他节点尚未回写的 Redis 售出。售罄只标记本节点，Redis 恢复后重新同步。
+     */
+    private SeckillResult takeFromDatabase(Long productId) {
+        long status;
+        try {
+            status = dbPurchaseCombiner.acquire(productId, System.currentTimeMillis());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        purchaseMetrics.stage(PurchaseMetrics.Stage.DB_FALLBACK);
+        if (status == RedisService.SECKILL_INACTIVE) {
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        if (status == RedisService.SECKILL_SOLD_OUT) {
+            soldOutRegistry.markSoldOutLocal(productId);
             return SeckillResult.error("商品已售罄");
         }
+        if (status == 0) {
+            soldOutRegistry.markSoldOutLocal(productId);
+        }
+        redisCircuitBreaker.countDbPurchase();
+        String ticket = orderPipeline.submit(productId, 1);
+        purchaseMetrics.stage(PurchaseMetrics.Stage.SUBMIT_ORDER);
+        return SeckillResult.ok(new PurchaseReceipt(ticket, productId, (int) status));
+    }
+
+    /**
+     * 批量购买：多个商品、每个商品多件，全部扣减成功或全部不扣减。
+     * <p>
+     * 同一商品的多行先合并，行数或单个商品数量超过 {@code seckill.bulk} 的上限时直接拒绝。
+     * 所有商品通过一次 {@link RedisService#executeBulkSeckill} 原子扣减，库存未缓存的商品从数据库加载后重试一次；
+     * 扣减成功后每个商品写一条本地日志、标记一次待回写并提交一个订单，而不是每件一次。
+     * 分桶与租约商品的库存不在同一个 Hash 中，不参与批量购买。熔断断开时改为在一个数据库事务内逐个扣减，任一商品不足即回滚。
+     * </p>
+     * 携带用户ID时每个商品的已购数量加本次数量不能超过限购数量，在同一次脚本调用中校验与记录；批量购买不支持幂等键。
+     * 失败时 data 为导致失败的商品ID。
+     */
+    public SeckillResult performBulkSeckill(List<PurchaseLine> lines, Buyer buyer) {
+        if (lines == null || lines.isEmpty()) {
+            return SeckillResult.error("购买清单不能为空");
+        }
+        // 按商品ID排序，数据库扣减时以固定顺序加行锁
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (PurchaseLine line : lines) {
+            if (line == null || line.getProductId() == null || line.getQuantity() == null || line.getQuantity() <= 0) {
+                return SeckillResult.error("购买数量无效");
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        if (quantities.size() > bulkPurchaseProperties.getMaxLines()) {
+            return SeckillResult.error("一次最多购买 " + bulkPurchaseProperties.getMaxLines() + " 种商品");
+        }
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Long productId = entry.getKey();
+            if (entry.getValue() > bulkPurchaseProperties.getMaxQuantityPerLine()) {
+                return lineError("单个商品一次最多购买 " + bulkPurchaseProperties.getMaxQuantityPerLine() + " 件", productId);
+            }
+            if (!productIdFilter.mightContain(productId)) {
+                return lineError("秒杀活动未开始或已结束", productId);
+            }
+            if (soldOutRegistry.isSoldOut(productId)) {
+                return lineError("商品已售罄", productId);
+            }
+            if (bucketCount(productId) != 1 || stockLeaseManager.isLeased(productId)) {
+                return lineError("该商品不支持批量购买", productId);
+            }
+            SeckillResult rejected = checkBuyer(productId, buyer == null ? null : new Buyer(buyer.userId(), null));
+            if (rejected != null) {
+                return lineError(rejected.getMessage(), productId);
+            }
+        }
+        int orders = quantities.size();
+        if (!orderPipeline.tryAdmit(orders)) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        SeckillResult result = null;
+        try {
+            result = bulkTakeWithFallback(quantities, buyer);
+            return result;
+        } finally {
+            if (result == null || !result.isSuccess()) {
+                orderPipeline.cancelAdmission(orders);
+            }
+        }
+    }
+
+    public SeckillResult performBulkSeckill(List<PurchaseLine> lines) {
+        return performBulkSeckill(lines, Buyer.ANONYMOUS);
+    }
+
+    /**
+     * 与 {@link #takeWithFallback} 相同的熔断处理，作用于整个批量购买
+     */
+    private SeckillResult bulkTakeWithFallback(Map<Long, Integer> quantities, Buyer buyer) {
+        if (!redisCircuitBreaker.isEnabled()) {
+            return bulkTakeFromRedis(quantities, buyer);
+        }
+        if (redisCircuitBreaker.isOpen()) {
+            return bulkTakeFromDatabase(quantities);
+        }
+        SeckillResult result;
+        try {
+            result = bulkTakeFromRedis(quantities, buyer);
+        } catch (RuntimeException e) {
+            if (!RedisCircuitBreaker.isRedisUnavailable(e)) {
+                throw e;
+            }
+            if (redisCircuitBreaker.recordFailure(e)) {
+                openCircuit();
+            }
+            return redisCircuitBreaker.isOpen() ? bulkTakeFromDatabase(quantities) : SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        redisCircuitBreaker.recordSuccess();
+        return result;
+    }
+
+    /**
+     * 一次脚本调用扣减所有商品；有商品库存未缓存时，一次查询加载所有未缓存的商品后重试一次
+     */
+    private SeckillResult bulkTakeFromRedis(Map<Long, Integer> quantities, Buyer buyer) {
         LocalDateTime now = LocalDateTime.now();
-        SeckillProduct product = fetchProductFromCache(productId);
-        if (!isProductActive(product, now)) {
-            product = seckillProductMapper.selectActiveSeckillProductById(productId, now);
-            if (product == null) {
-                markSoldOut(productId);
-                return SeckillResult.error("秒杀活动未开始或已结束");
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        List<Integer> counts = new ArrayList<>(quantities.values());
+        boolean limited = isUserLimited(buyer);
+        List<String> keys = new ArrayList<>(SECKILL_SCRIPT_KEYS);
+        String[] args = new String[4 + ids.size() * 3];
+        args[0] = String.valueOf(toEpochMillis(now));
+        args[1] = limited ? buyer.userId() : "";
+        args[2] = String.valueOf(userLimitProperties.getRetainAfterEndMs());
+        args[3] = String.valueOf(userLimitProperties.getOpenWindowTtlMs());
+        for (int i = 0; i < ids.size(); i++) {
+            if (limited) {
+                keys.add(BUYERS_HASH_PREFIX + ids.get(i));
             }
-            cacheProduct(product, now);
+            args[4 + i * 3] = ids.get(i).toString();
+            args[5 + i * 3] = counts.get(i).toString();
+            args[6 + i * 3] = String.valueOf(userLimitProperties.limitOf(ids.get(i)));
         }
-        if (product.getStock() == null || product.getStock() <= 0) {
-            markSoldOut(productId);
-            return SeckillResult.error("商品已售罄");
+        List<Long> result = redisService.executeBulkSeckill(keys, args);
+        if (result != null && !result.isEmpty() && result.get(0) == RedisService.SECKILL_NOT_CACHED) {
+            SeckillResult failure = cacheMissingProducts(ids, now);
+            if (failure != null) {
+                return failure;
+            }
+            result = redisService.executeBulkSeckill(keys, args);
+        }
+        if (result == null || result.size() < 2) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        long status = result.get(0);
+        if (status != 0) {
+            int line = result.get(1).intValue() - 1;
+            Long productId = line >= 0 && line < ids.size() ? ids.get(line) : null;
+            long stock = result.size() > 2 ? result.get(2) : 0;
+            if (status == RedisService.SECKILL_SOLD_OUT) {
+                if (stock > 0) {
+                    return lineError("库存不足", productId);
+                }
+                soldOutRegistry.markSoldOut(productId, false);
+                return lineError("商品已售罄", productId);
+            }
+            if (status == RedisService.SECKILL_INACTIVE) {
+                return lineError("秒杀活动未开始或已结束", productId);
+            }
+            if (status == RedisService.SECKILL_LIMIT_REACHED) {
+                if (stock >= userLimitProperties.limitOf(productId)) {
+                    markReachedLimit(productId, buyer.userId());
+                }
+                return lineError("已达到限购数量", productId);
+            }
+            return SeckillResult.error("系统繁忙，请稍后重试");
         }
+        List<PurchaseReceipt> receipts = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Long productId = ids.get(i);
+            int remaining = result.get(i + 1).intValue();
+            if (remaining <= 0) {
+                soldOutRegistry.markSoldOut(productId, false);
+            }
+            stockJournal.append(productId, remaining, dirtyProducts::add);
+            receipts.add(new PurchaseReceipt(orderPipeline.submit(productId, counts.get(i)), productId, remaining));
+        }
+        purchaseMetrics.markDirty();
+        return SeckillResult.ok(receipts);
+    }
 
-        String productIdKey = productId.toString();
-        if (!redisService.hasKeyField(STOCK_CACHE_HASH, productIdKey)) {
-            cacheProduct(product, now);
+    /**
+     * 加载库存尚未缓存的商品，任一商品不存在或不在活动时间内时返回失败结果
+     */
+    private SeckillResult cacheMissingProducts(List<Long> ids, LocalDateTime now) {
+        Set<Long> cached = readTotalStocks(ids).keySet();
+        List<Long> missing = ids.stream().filter(id -> !cached.contains(id)).toList();
+        if (missing.isEmpty()) {
+            return null;
+        }
+        for (Long productId : missing) {
+            if (inactiveProductCache.isNegative(productId)) {
+                return lineError("秒杀活动未开始或已结束", productId);
+            }
+        }
+        List<SeckillProduct> products = dbBulkhead.call(() -> seckillProductMapper.selectActiveSeckillProductsByIds(missing, now));
+        cacheProducts(products, now);
+        Set<Long> loaded = new HashSet<>();
+        products.forEach(product -> loaded.add(product.getId()));
+        for (Long productId : missing) {
+            if (!loaded.contains(productId)) {
+                inactiveProductCache.markInactive(productId);
+                return lineError("秒杀活动未开始或已结束", productId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 降级模式下的批量购买：在一个事务内按商品ID顺序逐个条件扣减，任一商品库存不足或不在活动时间内时整体回滚
+     */
+    private SeckillResult bulkTakeFromDatabase(Map<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Integer> remaining = new LinkedHashMap<>();
+        SeckillResult failure = dbBulkhead.call(() -> transactionTemplate.execute(tx -> {
+            for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                Long productId = entry.getKey();
+                Map<String, Object> row = seckillProductMapper.takeStock(productId, entry.getValue(),
+                        fallbackProperties.getReservedStock(), now);
+                long granted = row != null && row.get("granted") instanceof Number number
+                        ? number.longValue() : RedisService.SECKILL_INACTIVE;
+                if (granted < entry.getValue()) {
+                    tx.setRollbackOnly();
+                    if (granted == RedisService.SECKILL_INACTIVE) {
+                        return lineError("秒杀活动未开始或已结束", productId);
+                    }
+                    if (granted == RedisService.SECKILL_SOLD_OUT) {
+                        soldOutRegistry.markSoldOutLocal(productId);
+                        return lineError("商品已售罄", productId);
+                    }
+                    return lineError("库存不足", productId);
+                }
+                remaining.put(productId, row.get("remaining") instanceof Number number ? number.intValue() : 0);
+            }
+            return null;
+        }));
+        if (failure != null) {
+            return failure;
+        }
+        List<PurchaseReceipt> receipts = new ArrayList<>(remaining.size());
+        remaining.forEach((productId, stock) -> {
+            if (stock <= 0) {
+                soldOutRegistry.markSoldOutLocal(productId);
+            }
+            redisCircuitBreaker.countDbPurchase();
+            receipts.add(new PurchaseReceipt(orderPipeline.submit(productId, quantities.get(productId)), productId, stock));
+        });
+        return SeckillResult.ok(receipts);
+    }
+
+    private static SeckillResult lineError(String message, Long productId) {
+        SeckillResult result = SeckillResult.error(message);
+        result.setData(productId);
+        return result;
+    }
+
+    /**
+     * 定期认领降级期间在数据库售出的数量并从 Redis 库存中扣回（包括其他节点降级时的售出）。
+     * 熔断断开时先探测 Redis，恢复后重新加载脚本、扣回售出数量、以数据库库存重新缓存进行中的商品，再闭合熔断。
+     */
+    @Scheduled(fixedDelayString = "${seckill.fallback.probe-ms:1000}")
+    public void reconcileDegradedSales() {
+        if (!redisCircuitBreaker.isEnabled()) {
+            return;
+        }
+        boolean open = redisCircuitBreaker.isOpen();
+        if (open && !redisService.ping()) {
+            return;
+        }
+        try {
+            if (open) {
+                // Redis 可能已重启，脚本缓存与库存都需要重新写入
+                redisService.preloadScripts();
+            }
+            int deducted = deductDegradedSales();
+            if (open) {
+                refreshActiveProducts();
+                soldOutRegistry.reconcile();
+                redisCircuitBreaker.close();
+            }
+            if (deducted > 0) {
+                activeProductsSnapshot.invalidate();
+                log.info("Deducted degraded sales of {} products from Redis", deducted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to reconcile degraded sales, will retry", e);
+        }
+    }
+
+    /**
+     * 在一个事务内认领各商品的降级售出数量并从 Redis 扣回，Redis 失败时回滚认领。
+     * 先读取各分桶库存并据此分配每个分桶的扣回数量，再通过一个管道批次逐分桶扣回，扣回脚本每次只访问一个分桶。
+     * Redis 库存不足以扣回的部分（包括读取后被并发购买的部分）归还到 degraded_sold，之后库存回升时继续扣回；
+     * 库存未缓存的商品之后以数据库值重新缓存，无需扣回
+     */
+    @SuppressWarnings("rawtypes")
+    private int deductDegradedSales() {
+        Integer deducted = transactionTemplate.execute(status -> {
+            List<Map<String, Object>> claimed = seckillProductMapper.claimDegradedSold();
+            if (claimed.isEmpty()) {
+                return 0;
+            }
+            List<Long> productIds = new ArrayList<>(claimed.size());
+            int maxBuckets = 1;
+            for (Map<String, Object> row : claimed) {
+                Long productId = ((Number) row.get("id")).longValue();
+                productIds.add(productId);
+                maxBuckets = Math.max(maxBuckets, bucketCount(productId));
+            }
+            List<String> fields = productIds.stream().map(String::valueOf).toList();
+            RedisBatch read = redisService.batch();
+            List<RedisBatch.Response<List<Object>>> bucketStocks = new ArrayList<>(maxBuckets);
+            for (int bucket = 0; bucket < maxBuckets; bucket++) {
+                bucketStocks.add(read.hMultiGet(stockStripes.bucketKey(STOCK_CACHE_HASH, bucket), fields));
+            }
+            read.execute();
+
+            RedisBatch batch = redisService.batch();
+            Map<Long, List<RedisBatch.Response<List>>> responses = new LinkedHashMap<>();
+            for (int i = 0; i < claimed.size(); i++) {
+                Long productId = productIds.get(i);
+                if (!(bucketStocks.get(0).get().get(i) instanceof Number)) {
+                    continue;
+                }
+                int buckets = bucketCount(productId);
+                long pending = ((Number) claimed.get(i).get("sold")).longValue();
+                List<RedisBatch.Response<List>> parts = new ArrayList<>(buckets);
+                for (int bucket = 0; bucket < buckets; bucket++) {
+                    long stock = bucketStocks.get(bucket).get().get(i) instanceof Number number ? number.longValue() : 0;
+                    // 最后一个分桶带上剩余的全部数量，脚本扣不完的部分原样返回
+                    long take = bucket == buckets - 1 ? pending : Math.min(Math.max(stock, 0), pending);
+                    pending -= take;
+                    parts.add(batch.eval(RedisService.STOCK_DEDUCT_SCRIPT,
+                            List.of(stockStripes.bucketKey(STOCK_CACHE_HASH, bucket)),
+                            productId.toString(), String.valueOf(take)));
+                }
+                responses.put(productId, parts);
+            }
+            if (batch.isEmpty()) {
+                return claimed.size();
+            }
+            batch.execute();
+
+            List<Long> soldOut = new ArrayList<>();
+            responses.forEach((productId, parts) -> {
+                long total = 0;
+                long pending = 0;
+                for (RedisBatch.Response<List> part : parts) {
+                    List result = part.get();
+                    if (result != null && result.size() >= 2 && result.get(0) instanceof Number stock
+                            && result.get(1) instanceof Number rest) {
+                        total += Math.max(stock.longValue(), 0);
+                        pending += rest.longValue();
+                    }
+                }
+                if (pending > 0) {
+                    seckillProductMapper.restoreDegradedSold(productId, pending);
+                    log.warn("Redis stock of product {} could not absorb {} units sold during degraded mode", productId, pending);
+                }
+                if (total <= 0) {
+                    soldOut.add(productId);
+                }
+            });
+            markSoldOutSets(soldOut);
+            return claimed.size();
+        });
+        return deducted == null ? 0 : deducted;
+    }
+
+    /**
+     * 扣回后库存耗尽的商品移入售罄集合；库存已经扣回，失败时只记录日志，由售罄集合对账修正
+     */
+    private void markSoldOutSets(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        try {
+            RedisBatch batch = redisService.batch();
+            for (Long productId : productIds) {
+                batch.sAdd(SOLD_OUT_SET_KEY, productId.toString());
+                batch.sRem(ACTIVE_SET_KEY, productId.toString());
+            }
+            batch.execute();
+        } catch (RuntimeException e) {
+            log.warn("Failed to mark {} deducted products sold out", productIds.size(), e);
         }
+    }
 
-        Long newStock = redisService.hIncrement(STOCK_CACHE_HASH, productIdKey, -1);
+    /**
+     * 扣减库存并在成功后提交异步订单，调用前需已通过订单流水线准入
+     */
+    private SeckillResult takeAndSubmitOrder(Long productId, Buyer buyer) {
+        if (usesUserScript(buyer)) {
+            return takeAndSubmitUserOrder(productId, buyer);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        String productIdKey = productId.toString();
+        boolean leased = stockLeaseManager.isLeased(productId);
+        int buckets = bucketCount(productId);
+        Long status = takeStock(productId, productIdKey, leased, buckets, toEpochMillis(now));
+        purchaseMetrics.stage(PurchaseMetrics.Stage.TAKE_STOCK);
+
+        if (status != null && status == RedisService.SECKILL_NOT_CACHED) {
+            SeckillResult failure = loadUncachedProduct(productId, now);
+            if (failure != null) {
+                return failure;
+            }
+            status = takeStock(productId, productIdKey, leased, buckets, toEpochMillis(now));
+            purchaseMetrics.stage(PurchaseMetrics.Stage.TAKE_STOCK);
+        }
+        return settle(productId, status, leased, buckets, null);
+    }
 
-        if (newStock == null) {
+    /**
+     * 携带用户ID或幂等键的购买：预先生成凭证，由限购脚本在扣减库存的同时记录用户已购数量与幂等键对应的凭证，未携带用户ID时不限购。
+     * 同一幂等键的重复请求直接返回首次请求的凭证；租约商品先在 Redis 记录购买再从本节点租约发放，发放失败时撤销记录。
+     * 用户买满后写入本地预过滤器，之后的请求不再访问 Redis。
+     */
+    private SeckillResult takeAndSubmitUserOrder(Long productId, Buyer buyer) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean leased = stockLeaseManager.isLeased(productId);
+        int buckets = bucketCount(productId);
+        int limit = userLimitProperties.limitOf(productId);
+        String ticket = orderPipeline.newTicket();
+        List<Object> result = takeUserStock(productId, buyer, limit, ticket, leased, buckets, toEpochMillis(now));
+        purchaseMetrics.stage(PurchaseMetrics.Stage.TAKE_STOCK);
+        if (scriptStatus(result) == RedisService.SECKILL_NOT_CACHED) {
+            SeckillResult failure = loadUncachedProduct(productId, now);
+            if (failure != null) {
+                return failure;
+            }
+            result = takeUserStock(productId, buyer, limit, ticket, leased, buckets, toEpochMillis(now));
+            purchaseMetrics.stage(PurchaseMetrics.Stage.TAKE_STOCK);
+        }
+        Long status = scriptStatus(result);
+        if (status == null) {
             return SeckillResult.error("系统繁忙，请稍后重试");
         }
+        if (status == RedisService.SECKILL_DUPLICATE) {
+            // 没有提交新订单，队列位置在这里归还
+            orderPipeline.cancelAdmission();
+            return SeckillResult.ok(new PurchaseReceipt(String.valueOf(result.get(1)), productId, null));
+        }
+        if (status == RedisService.SECKILL_LIMIT_REACHED) {
+            markReachedLimit(productId, buyer.userId());
+            return SeckillResult.error("已达到限购数量");
+        }
+        if (status >= 0 && leased) {
+            status = stockLeaseManager.tryAcquire(productId, toEpochMillis(now));
+            if (status < 0) {
+                redisService.releaseUserPurchase(userKeys(productId), userArg(buyer), requestKeyArg(buyer), ticket);
+                return settle(productId, status, true, buckets, ticket);
+            }
+        }
+        if (status >= 0 && result.get(1) instanceof Number bought && bought.intValue() >= limit) {
+            markReachedLimit(productId, buyer.userId());
+        }
+        return settle(productId, status, leased, buckets, ticket);
+    }
+
+    /**
+     * 执行限购脚本。分桶商品从选中的分桶开始依次尝试，全部分桶耗尽才判定售罄；租约商品只记录购买，库存由租约发放
+     */
+    private List<Object> takeUserStock(Long productId, Buyer buyer, int limit, String ticket, boolean leased,
+                                       int buckets, long nowMillis) {
+        String mode = leased ? "record" : buckets == 1 ? "stock" : "bucket";
+        int first = buckets == 1 ? 0 : stockStripes.firstBucket(productId, buckets);
+        List<Object> result = null;
+        for (int i = 0; i < buckets; i++) {
+            List<String> keys = new ArrayList<>(6);
+            keys.add(stockStripes.bucketKey(STOCK_CACHE_HASH, (first + i) % buckets));
+            keys.add(WINDOW_CACHE_HASH);
+            keys.add(ACTIVE_SET_KEY);
+            keys.add(SOLD_OUT_SET_KEY);
+            keys.addAll(userKeys(productId));
+            result = redisService.executeUserSeckill(keys, productId.toString(), String.valueOf(nowMillis),
+                    userArg(buyer), String.valueOf(limit), requestKeyArg(buyer), ticket, mode,
+                    String.valueOf(userLimitProperties.getRetainAfterEndMs()),
+                    String.valueOf(userLimitProperties.getOpenWindowTtlMs()));
+            Long status = scriptStatus(result);
+            if (leased || status == null || status != RedisService.SECKILL_SOLD_OUT) {
+                return result;
+            }
+        }
+        if (buckets > 1) {
+            markSoldOut(productId);
+        }
+        return result;
+    }
+
+    private static List<String> userKeys(Long productId) {
+        return List.of(BUYERS_HASH_PREFIX + productId, REQUESTS_HASH_PREFIX + productId);
+    }
 
-        if (newStock < 0) {
-            redisService.hIncrement(STOCK_CACHE_HASH, productIdKey, 1);
+    private static String userArg(Buyer buyer) {
+        return buyer.userId() == null ? "" : buyer.userId();
+    }
+
+    private static String requestKeyArg(Buyer buyer) {
+        return buyer.requestKey() == null ? "" : buyer.requestKey();
+    }
+
+    private static Long scriptStatus(List<Object> result) {
+        return result != null && !result.isEmpty() && result.get(0) instanceof Number status ? status.longValue() : null;
+    }
+
+    /**
+     * 库存未缓存时从数据库加载商品并写入缓存；商品不存在或不在活动时间内时返回失败结果并记入负缓存
+     */
+    SeckillResult loadUncachedProduct(Long productId, LocalDateTime now) {
+        if (inactiveProductCache.isNegative(productId)) {
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        if (!dbBulkhead.tryAcquire()) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        SeckillProduct product;
+        try {
+            product = seckillProductMapper.selectActiveSeckillProductById(productId, now);
+        } finally {
+            dbBulkhead.release();
+        }
+        purchaseMetrics.stage(PurchaseMetrics.Stage.DB_FALLBACK);
+        if (product == null) {
+            inactiveProductCache.markInactive(productId);
             markSoldOut(productId);
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        cacheProduct(product, now);
+        purchaseMetrics.stage(PurchaseMetrics.Stage.CACHE_PRODUCT);
+        return null;
+    }
+
+    /**
+     * 商品是否走单次脚本扣减：未分桶、未租约且未开启请求合并，非阻塞接口只直接处理这类商品
+     */
+    public boolean isDirectPurchase(Long productId) {
+        return bucketCount(productId) == 1 && !stockLeaseManager.isLeased(productId)
+                && !purchaseCombineProperties.isCombined(productId);
+    }
+
+    /**
+     * 处理非阻塞接口执行 {@link RedisService#SECKILL_SCRIPT} 的结果：更新售罄标记、写本地日志并提交异步订单。
+     * 调用前需已通过订单流水线准入，库存未缓存的情况由调用方回退到 {@link #performSeckill}。
+     */
+    public SeckillResult settleDirectPurchase(Long productId, Long status) {
+        return settle(productId, status, false, 1, null);
+    }
+
+    /**
+     * 根据扣减结果更新售罄标记、写本地日志并提交异步订单；ticket 为 null 时生成新的凭证
+     */
+    private SeckillResult settle(Long productId, Long status, boolean leased, int buckets, String ticket) {
+        if (status == null || status == RedisService.SECKILL_NOT_CACHED) {
+            return SeckillResult.error("系统繁忙，请稍后重试");
+        }
+        if (status == RedisService.SECKILL_INACTIVE) {
+            return SeckillResult.error("秒杀活动未开始或已结束");
+        }
+        if (status == StockLeaseManager.HELD_BY_OTHER_NODES) {
+            return SeckillResult.error("库存暂被其他节点锁定，请稍后重试");
+        }
+        if (status == RedisService.SECKILL_SOLD_OUT) {
+            soldOutRegistry.markSoldOut(productId, false);
             return SeckillResult.error("商品已售罄");
         }
 
-        int updatedStock = newStock.intValue();
-        product.setStock(updatedStock);
-        redisService.hSet(PRODUCT_CACHE_HASH, productIdKey, product);
+        // 脚本已同步切换 Redis 中的活动/售罄集合，这里只需更新本地标记并广播；
+        // 分桶模式下单个分桶清零时核对其余分桶，租约模式下本地租约耗尽不代表售罄
+        if (status == 0 && buckets == 1 && !leased) {
+            soldOutRegistry.markSoldOut(productId, false);
+        }
+        if (status == 0 && buckets > 1 && !leased) {
+            markSoldOutIfStripesEmpty(productId);
+        }
 
-        if (updatedStock <= 0) {
-            markSoldOut(productId);
-        } else {
-            markAvailable(productId);
+        if (!leased) {
+            stockJournal.append(productId, buckets == 1 ? status.intValue() : StockJournal.UNKNOWN_STOCK, dirtyProducts::add);
+            purchaseMetrics.markDirty();
+            purchaseMetrics.stage(PurchaseMetrics.Stage.JOURNAL);
+        }
+
+        String submitted = ticket == null ? orderPipeline.submit(productId, 1) : orderPipeline.submit(productId, 1, ticket);
+        purchaseMetrics.stage(PurchaseMetrics.Stage.SUBMIT_ORDER);
+        return SeckillResult.ok(new PurchaseReceipt(submitted, productId, status.intValue()));
+    }
+
+    /**
+     * 分桶清零后一次往返读取全部分桶，总库存为 0 时立即切换售罄，不必等下一个请求把每个分桶都试一遍。
+     * 购买已经成功，读取失败只记录日志
+     */
+    private void markSoldOutIfStripesEmpty(Long productId) {
+        try {
+            Integer total = readTotalStocks(List.of(productId)).get(productId);
+            if (total != null && total <= 0) {
+                markSoldOut(productId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to check remaining stripes of product {}", productId, e);
+        }
+    }
+
+    /**
+     * 扣减一件库存。租约模式下从本地租约发放；分桶模式下从选中的分桶开始依次尝试，全部分桶耗尽才判定售罄；
+     * 开启请求合并的商品与同一窗口内的其他请求合并为一次扣减。
+     */
+    private Long takeStock(Long productId, String productIdKey, boolean leased, int buckets, long nowMillis) {
+        if (leased) {
+            return stockLeaseManager.tryAcquire(productId, nowMillis);
+        }
+        if (buckets == 1 && purchaseCombineProperties.isCombined(productId)) {
+            return redisPurchaseCombiner.acquire(productId, nowMillis);
+        }
+        if (buckets == 1) {
+            return redisService.executeSeckill(SECKILL_SCRIPT_KEYS, productIdKey, nowMillis);
+        }
+        // 分桶脚本只访问分桶 Key，活动时间取自商品缓存（修改活动时间时各节点的本地缓存会被广播失效）
+        SeckillProduct product = fetchProductFromCache(productId);
+        if (product == null) {
+            return RedisService.SECKILL_NOT_CACHED;
+        }
+        long startMillis = toEpochMillis(product.getStartTime());
+        long endMillis = toEpochMillis(product.getEndTime());
+        int first = stockStripes.firstBucket(productId, buckets);
+        for (int i = 0; i < buckets; i++) {
+            String bucketKey = stockStripes.bucketKey(STOCK_CACHE_HASH, (first + i) % buckets);
+            Long status = redisService.executeBucketSeckill(bucketKey, productIdKey, nowMillis, startMillis, endMillis);
+            if (status == null || status != RedisService.SECKILL_SOLD_OUT) {
+                return status;
+            }
         }
+        markSoldOut(productId);
+        return RedisService.SECKILL_SOLD_OUT;
+    }
 
-        pendingSyncQueue.offer(productId);
+    /**
+     * 重放上次运行未落库的本地日志：已知库存先直接写回（只降不升），再将全部商品标记待回写，以 Redis 中的当前值为准重新回写；
+     * Redis 不可用时至少保留日志中的已知库存
+     */
+    private void recoverStockJournal() {
+        Map<Long, Integer> journaled = stockJournal.replay();
+        List<SeckillProduct> known = new ArrayList<>();
+        journaled.forEach((id, stock) -> {
+            if (stock != StockJournal.UNKNOWN_STOCK) {
+                SeckillProduct update = new SeckillProduct();
+                update.setId(id);
+                update.setStock(stock);
+                known.add(update);
+            }
+        });
+        if (!known.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int from = 0; from < known.size(); from += syncBatchSize) {
+                    seckillProductMapper.batchSyncStockIfLower(known.subList(from, Math.min(from + syncBatchSize, known.size())));
+                }
+            });
+        }
+        stockJournal.reset();
+        if (!journaled.isEmpty()) {
+            journaled.keySet().forEach(this::markDirtyUnknownStock);
+            syncStockToDatabase();
+            log.info("Recovered stock journal: {} products written back, {} resynced from Redis", known.size(), journaled.size());
+        }
+    }
 
-        return SeckillResult.ok(product);
+    /**
+     * 库存在购买之外被修改（预留、释放预留）后写本地日志并标记待回写
+     */
+    void recordStock(Long productId, int stock) {
+        stockJournal.append(productId, stock, dirtyProducts::add);
+        purchaseMetrics.markDirty();
     }
 
-    private void refreshActiveProducts() {
+    private void markDirtyUnknownStock(Long productId) {
+        stockJournal.append(productId, StockJournal.UNKNOWN_STOCK, dirtyProducts::add);
+        purchaseMetrics.markDirty();
+    }
+
+    /**
+     * 从数据库重新加载进行中的商品写入缓存，并移出已不在活动中的商品，返回进行中的商品
+     */
+    List<SeckillProduct> refreshActiveProducts() {
         LocalDateTime now = LocalDateTime.now();
         List<SeckillProduct> activeProducts = seckillProductMapper.selectActiveSeckillProducts(now);
+        cacheProducts(activeProducts, now);
         Set<String> activeIds = new HashSet<>();
-        for (SeckillProduct product : activeProducts) {
-            cacheProduct(product, now);
-            activeIds.add(product.getId().toString());
-        }
-        Set<String> cachedActiveIds = redisService.members(ACTIVE_SET_KEY);
-        if (!cachedActiveIds.isEmpty()) {
-            for (String cachedId : cachedActiveIds) {
-                if (!activeIds.contains(cachedId)) {
-                    redisService.removeFromSet(ACTIVE_SET_KEY, cachedId);
-                    try {
-                        soldOutFlags.remove(Long.valueOf(cachedId));
-                    } catch (NumberFormatException ignored) {
-                        log.warn("Invalid product ID in cache: {}", cachedId);
-                    }
+        activeProducts.forEach(product -> activeIds.add(product.getId().toString()));
+        List<String> staleIds = redisService.members(ACTIVE_SET_KEY).stream()
+                .filter(cachedId -> !activeIds.contains(cachedId))
+                .toList();
+        retireCachedIds(staleIds);
+        return activeProducts;
+    }
+
+    /**
+     * 增量刷新：只拉取水位线之后修改过的商品写入缓存，已结束的移出活动集合。
+     * 每次从水位线回退 {@code seckill.refresh.overlap-ms} 重读，覆盖提交晚于水位线的事务，重复写入是幂等的。
+     */
+    void refreshChangedProducts() {
+        LocalDateTime now = LocalDateTime.now();
+        String stored = redisService.getString(REFRESH_WATERMARK_KEY);
+        LocalDateTime watermark = stored == null ? null : fromEpochMillis(Long.parseLong(stored));
+        LocalDateTime since = watermark == null ? LocalDateTime.of(1970, 1, 1, 0, 0)
+                : watermark.minusNanos(refreshProperties.getOverlapMs() * 1_000_000L);
+        long sinceId = 0;
+        int changedCount = 0;
+        while (true) {
+            List<SeckillProduct> changed = seckillProductMapper.selectChangedSince(since, sinceId,
+                    refreshProperties.getBatchSize());
+            if (changed.isEmpty()) {
+                break;
+            }
+            List<SeckillProduct> live = new ArrayList<>();
+            List<String> ended = new ArrayList<>();
+            for (SeckillProduct product : changed) {
+                if (product.getEndTime() != null && now.isAfter(product.getEndTime())) {
+                    ended.add(product.getId().toString());
+                } else {
+                    live.add(product);
                 }
             }
+            cacheProducts(live, now);
+            retireCachedIds(ended);
+            SeckillProduct last = changed.get(changed.size() - 1);
+            since = last.getUpdatedAt();
+            sinceId = last.getId();
+            if (watermark == null || since.isAfter(watermark)) {
+                watermark = since;
+            }
+            changedCount += changed.size();
+            if (changed.size() < refreshProperties.getBatchSize()) {
+                break;
+            }
+        }
+        if (watermark != null) {
+            redisService.setString(REFRESH_WATERMARK_KEY, String.valueOf(toEpochMillis(watermark)));
+        }
+        log.debug("Delta refresh applied {} changed products", changedCount);
+    }
+
+    /**
+     * 一次 SREM 将多个商品移出活动集合，并清除本地售罄标记
+     */
+    private void retireCachedIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        redisService.removeFromSet(ACTIVE_SET_KEY, ids.toArray(String[]::new));
+        for (String id : ids) {
+            try {
+                soldOutRegistry.clearLocal(Long.valueOf(id));
+            } catch (NumberFormatException ignored) {
+                log.warn("Invalid product ID in cache: {}", id);
+            }
+        }
+    }
+
+    /**
+     * 商品开始前将其写入缓存，开始时刻的第一个请求即可由 Lua 脚本处理
+     */
+    void prewarmProduct(Long productId) {
+        LocalDateTime now = LocalDateTime.now();
+        SeckillProduct product = seckillProductMapper.selectById(productId);
+        if (product != null && (product.getEndTime() == null || !now.isAfter(product.getEndTime()))) {
+            cacheProduct(product, now);
+        }
+    }
+
+    /**
+     * 到达开始时间时将商品加入活动集合，库存已为 0 的直接标记售罄
+     */
+    void activateProduct(Long productId) {
+        LocalDateTime now = LocalDateTime.now();
+        SeckillProduct product = fetchProductFromCache(productId);
+        Integer stock = product == null ? null : readTotalStocks(List.of(productId)).get(productId);
+        if (stock == null) {
+            cacheProduct(seckillProductMapper.selectById(productId), now);
+        } else if (isProductActive(product, now)) {
+            purchaseAdmission.onStock(productId, stock);
+            if (stock > 0) {
+                markAvailable(productId);
+            } else {
+                markSoldOut(productId);
+            }
+        }
+        activeProductsSnapshot.invalidate();
+    }
+
+    /**
+     * 到达结束时间时将商品移出活动集合；活动时间已被延长的不处理
+     */
+    void retireProduct(Long productId) {
+        SeckillProduct product = fetchProductFromCache(productId);
+        if (product != null && isProductActive(product, LocalDateTime.now())) {
+            return;
         }
+        redisService.removeFromSet(ACTIVE_SET_KEY, productId.toString());
+        soldOutRegistry.clearLocal(productId);
+        activeProductsSnapshot.invalidate();
     }
 
     private SeckillProduct fetchProductFromCache(Long productId) {
         if (productId == null) {
             return null;
         }
-        return redisService.hGet(PRODUCT_CACHE_HASH, productId.toString(), SeckillProduct.class);
+        return productLocalCache.get(productId,
+                id -> redisService.hGet(PRODUCT_CACHE_HASH, id.toString(), SeckillProduct.class));
     }
 
     private void cacheProduct(SeckillProduct product, LocalDateTime now) {
-        if (product == null || product.getId() == null) {
-            return;
+        if (product != null) {
+            cacheProducts(List.of(product), now);
         }
-        String idKey = product.getId().toString();
-        redisService.hSet(PRODUCT_CACHE_HASH, idKey, product);
-        redisService.hSet(STOCK_CACHE_HASH, idKey, product.getStock() == null ? 0 : product.getStock());
-        if (isProductActive(product, now) && (product.getStock() != null && product.getStock() > 0)) {
-            markAvailable(product.getId());
-        } else if (product.getStock() != null && product.getStock() <= 0) {
-            markSoldOut(product.getId());
-        } else {
-            redisService.removeFromSet(ACTIVE_SET_KEY, idKey);
-            soldOutFlags.remove(product.getId());
+    }
+
+    /**
+     * 批量写入商品缓存：商品数据、活动时间、时间索引与各分桶的库存合并脚本通过一个管道批次发送。
+     * 库存只会被数据库值调低，不会覆盖 Redis 中已被扣减的实时库存；合并脚本每次只访问一个分桶，
+     * 活动/售罄集合随后按合并后的总库存通过第二个批次更新，再据此更新本地售罄标记。
+     */
+    private void cacheProducts(Collection<SeckillProduct> products, LocalDateTime now) {
+        RedisBatch batch = redisService.batch();
+        Map<Long, List<RedisBatch.Response<Long>>> mergeResults = new LinkedHashMap<>();
+        Set<Long> activeIds = new HashSet<>();
+        for (SeckillProduct product : products) {
+            if (product == null || product.getId() == null) {
+                continue;
+            }
+            String idKey = product.getId().toString();
+            batch.hSet(PRODUCT_CACHE_HASH, idKey, product);
+            Map<String, Object> window = new HashMap<>();
+            window.put(idKey + ":start", toEpochMillis(product.getStartTime()));
+            window.put(idKey + ":end", toEpochMillis(product.getEndTime()));
+            batch.hSetAll(WINDOW_CACHE_HASH, window);
+            if (product.getStartTime() != null) {
+                batch.zAdd(START_INDEX_ZSET, idKey, toEpochMillis(product.getStartTime()));
+            }
+            if (product.getEndTime() != null) {
+                batch.zAdd(END_INDEX_ZSET, idKey, toEpochMillis(product.getEndTime()));
+            }
+            boolean active = isProductActive(product, now);
+            int stock = product.getStock() == null ? 0 : product.getStock();
+            int buckets = bucketCount(product.getId());
+            int[] bucketStocks = stockStripes.split(stock, buckets);
+            List<RedisBatch.Response<Long>> merged = new ArrayList<>(buckets);
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                merged.add(batch.eval(RedisService.STOCK_MERGE_SCRIPT,
+                        List.of(stockStripes.bucketKey(STOCK_CACHE_HASH, bucket)),
+                        idKey, String.valueOf(bucketStocks[bucket]), buckets == 1 ? "1" : "0"));
+            }
+            mergeResults.put(product.getId(), merged);
+            if (active) {
+                activeIds.add(product.getId());
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
         }
+        batch.execute();
+        productLocalCache.invalidate(mergeResults.keySet());
+        mergeResults.keySet().forEach(productIdFilter::add);
+        inactiveProductCache.invalidate(mergeResults.keySet());
+
+        Map<Long, Long> totals = new LinkedHashMap<>();
+        mergeResults.forEach((productId, merged) -> totals.put(productId,
+                merged.stream().map(RedisBatch.Response::get).filter(Objects::nonNull).mapToLong(Long::longValue).sum()));
+        RedisBatch sets = redisService.batch();
+        Map<Long, RedisBatch.Response<Long>> soldOutChanges = new HashMap<>();
+        totals.forEach((productId, stock) -> {
+            String idKey = productId.toString();
+            if (stock <= 0) {
+                soldOutChanges.put(productId, sets.sAdd(SOLD_OUT_SET_KEY, idKey));
+                sets.sRem(ACTIVE_SET_KEY, idKey);
+            } else if (activeIds.contains(productId)) {
+                soldOutChanges.put(productId, sets.sRem(SOLD_OUT_SET_KEY, idKey));
+                sets.sAdd(ACTIVE_SET_KEY, idKey);
+            } else {
+                sets.sRem(ACTIVE_SET_KEY, idKey);
+            }
+        });
+        sets.execute();
+        totals.forEach((productId, stock) -> {
+            RedisBatch.Response<Long> change = soldOutChanges.get(productId);
+            boolean soldOutChanged = change != null && change.get() != null && change.get() > 0;
+            purchaseAdmission.onStock(productId, (int) Math.max(stock, 0));
+            if (stock <= 0) {
+                soldOutRegistry.markSoldOut(productId, soldOutChanged);
+            } else if (activeIds.contains(productId)) {
+                soldOutRegistry.markAvailable(productId, soldOutChanged);
+            } else {
+                soldOutRegistry.clearLocal(productId);
+            }
+        });
+    }
+
+    /**
+     * 过滤出处于活动时间内且有库存的商品，按开始时间、ID 排序
+     */
+    static List<SeckillProduct> selectActive(Collection<SeckillProduct> products, LocalDateTime now) {
+        return products.stream()
+                .filter(Objects::nonNull)
+                .filter(product -> isProductActive(product, now) && product.getStock() != null && product.getStock() > 0)
+                .sorted(Comparator.comparing(SeckillProduct::getStartTime)
+                        .thenComparing(SeckillProduct::getId))
+                .toList();
     }
 
-    private boolean isProductActive(SeckillProduct product, LocalDateTime now) {
+    static boolean isProductActive(SeckillProduct product, LocalDateTime now) {
         if (product == null) {
             return false;
         }
@@ -220,14 +1394,96 @@ public class SeckillService {
         return (start == null || !now.isBefore(start)) && (end == null || !now.isAfter(end));
     }
 
+    /**
+     * 商品缓存中的库存字段不随每次购买回写，读取时以库存 Hash 中的值为准
+     */
+    private void overlayStock(SeckillProduct product, Integer stock) {
+        if (product != null && stock != null) {
+            product.setStock(stock);
+        }
+    }
+
+    /**
+     * 通过一次管道读取多个商品的总库存：每个分桶一条 HMGET，分桶商品累加所有分桶。
+     * 主库存 Hash 中没有的商品（尚未缓存）不出现在结果中。
+     */
+    private Map<Long, Integer> readTotalStocks(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        int[] bucketCounts = new int[productIds.size()];
+        int maxBuckets = 1;
+        for (int i = 0; i < productIds.size(); i++) {
+            bucketCounts[i] = bucketCount(productIds.get(i));
+            maxBuckets = Math.max(maxBuckets, bucketCounts[i]);
+        }
+        List<String> fields = productIds.stream().map(String::valueOf).toList();
+        RedisBatch batch = redisService.batch();
+        List<RedisBatch.Response<List<Object>>> buckets = new ArrayList<>(maxBuckets);
+        for (int bucket = 0; bucket < maxBuckets; bucket++) {
+            buckets.add(batch.hMultiGet(stockStripes.bucketKey(STOCK_CACHE_HASH, bucket), fields));
+        }
+        batch.execute();
+        Map<Long, Integer> totals = new HashMap<>();
+        List<Object> baseStocks = buckets.get(0).get();
+        for (int i = 0; i < productIds.size(); i++) {
+            if (!(baseStocks.get(i) instanceof Number base)) {
+                continue;
+            }
+            int total = base.intValue();
+            for (int bucket = 1; bucket < bucketCounts[i]; bucket++) {
+                if (buckets.get(bucket).get().get(i) instanceof Number bucketStock) {
+                    total += bucketStock.intValue();
+                }
+            }
+            totals.put(productIds.get(i), total);
+        }
+        return totals;
+    }
+
+    /**
+     * 可预留的商品不使用限购预过滤器：预留取消或到期时会归还用户的限购额度，而过滤器中的记录无法撤销。
+     * 是否可预留只取决于配置，各节点判断一致
+     */
+    private boolean usesRepeatBuyerFilter(Long productId) {
+        return !reservationProperties.isEnabled() || stockLeaseManager.isLeased(productId)
+                || stockStripes.bucketCount(productId) != 1;
+    }
+
+    private void markReachedLimit(Long productId, String userId) {
+        if (userId != null && usesRepeatBuyerFilter(productId)) {
+            repeatBuyerFilter.markReachedLimit(productId, userId);
+        }
+    }
+
+    /**
+     * 租约模式只从主库存 Hash 领取，因此不与分桶同时生效
+     */
+    int bucketCount(Long productId) {
+        return stockLeaseManager.isLeased(productId) ? 1 : stockStripes.bucketCount(productId);
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    static long toEpochMillis(LocalDateTime time) {
+        if (time == null) {
+            return OPEN_WINDOW_MILLIS;
+        }
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     private void markSoldOut(Long productId) {
         if (productId == null) {
             return;
         }
         String idKey = productId.toString();
-        redisService.addToSet(SOLD_OUT_SET_KEY, idKey);
-        redisService.removeFromSet(ACTIVE_SET_KEY, idKey);
-        soldOutFlags.put(productId, true);
+        RedisBatch transaction = redisService.transaction();
+        RedisBatch.Response<Long> added = transaction.sAdd(SOLD_OUT_SET_KEY, idKey);
+        transaction.sRem(ACTIVE_SET_KEY, idKey);
+        transaction.execute();
+        soldOutRegistry.markSoldOut(productId, added.get() != null && added.get() > 0);
     }
 
     private void markAvailable(Long productId) {
@@ -235,9 +1491,11 @@ public class SeckillService {
             return;
         }
         String idKey = productId.toString();
-        redisService.removeFromSet(SOLD_OUT_SET_KEY, idKey);
-        redisService.addToSet(ACTIVE_SET_KEY, idKey);
-        soldOutFlags.remove(productId);
+        RedisBatch transaction = redisService.transaction();
+        RedisBatch.Response<Long> removed = transaction.sRem(SOLD_OUT_SET_KEY, idKey);
+        transaction.sAdd(ACTIVE_SET_KEY, idKey);
+        transaction.execute();
+        soldOutRegistry.markAvailable(productId, removed.get() != null && removed.get() > 0);
     }
 }
 
@@ -0,0 +1,154 @@
+package com.tom.shop.service;
+
+import jakarta.annotation.PostConstruct;
+import com.tom.shop.metrics.PurchaseMetrics;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.tom.shop.redis.SeckillKeys.SOLD_OUT_CHANNEL;
+import static com.tom.shop.redis.SeckillKeys.SOLD_OUT_SET_KEY;
+
+/**
+ * 集群范围的售罄标记。
+ * <p>
+ * 本地标记是 {@code performSeckill} 的快速拒绝路径。某个节点发现售罄或恢复可售时，
+ * 通过 Redis 频道广播给所有节点，其余节点无需各自访问 Redis 就能拒绝请求。
+ * 每次（重新）订阅成功后以 {@code seckill:product:soldout} 集合为准做一次全量校准，弥补断线期间丢失的消息。
+ * </p>
+ */
+@Component
+@Log4j2
+public class SoldOutRegistry implements MessageListener, SubscriptionListener {
+
+    private static final String SOLD_OUT_PREFIX = "S:";
+    private static final String AVAILABLE_PREFIX = "A:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private ActiveProductsSnapshot activeProductsSnapshot;
+
+    @Resource
+    private PurchaseMetrics purchaseMetrics;
+
+    private final ConcurrentHashMap<Long, Boolean> soldOutFlags = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long productId) {
+        return soldOutFlags.getOrDefault(productId, false);
+    }
+
+    /**
+     * 标记售罄，本地状态发生变化或 Redis 集合新增成员时广播
+     */
+    public void markSoldOut(Long productId, boolean redisChanged) {
+        boolean changed = soldOutFlags.put(productId, true) == null;
+        if (changed) {
+            activeProductsSnapshot.invalidate();
+        }
+        if (changed || redisChanged) {
+            publish(SOLD_OUT_PREFIX, productId);
+        }
+    }
+
+    /**
+     * 标记可售，本地状态发生变化或 Redis 集合移除成员时广播
+     */
+    public void markAvailable(Long productId, boolean redisChanged) {
+        boolean changed = soldOutFlags.remove(productId) != null;
+        if (changed) {
+            activeProductsSnapshot.invalidate();
+        }
+        if (changed || redisChanged) {
+            publish(AVAILABLE_PREFIX, productId);
+        }
+    }
+
+    /**
+     * 仅标记本节点售罄，不广播，用于 Redis 不可用时；恢复后由 {@link #reconcile()} 以 Redis 为准重建
+     */
+    public void markSoldOutLocal(Long productId) {
+        if (soldOutFlags.put(productId, true) == null) {
+            activeProductsSnapshot.invalidate();
+        }
+    }
+
+    /**
+     * 仅清除本节点标记，不广播
+     */
+    public void clearLocal(Long productId) {
+        soldOutFlags.remove(productId);
+    }
+
+    /**
+     * 以 Redis 售罄集合为准重建本地标记
+     */
+    public void reconcile() {
+        Set<Long> soldOut = new HashSet<>();
+        for (String member : redisService.members(SOLD_OUT_SET_KEY)) {
+            try {
+                soldOut.add(Long.valueOf(member));
+            } catch (NumberFormatException ignored) {
+                log.warn("Invalid product ID in sold out set: {}", member);
+            }
+        }
+        soldOutFlags.keySet().retainAll(soldOut);
+        soldOut.forEach(id -> soldOutFlags.put(id, true));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            Long productId = Long.valueOf(body.substring(2));
+            boolean changed = false;
+            if (body.startsWith(SOLD_OUT_PREFIX)) {
+                changed = soldOutFlags.put(productId, true) == null;
+            } else if (body.startsWith(AVAILABLE_PREFIX)) {
+                changed = soldOutFlags.remove(productId) != null;
+            }
+            if (changed) {
+                activeProductsSnapshot.invalidate();
+            }
+        } catch (RuntimeException ignored) {
+            log.warn("Invalid sold out event: {}", body);
+        }
+    }
+
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reconcile sold out flags after subscribing", e);
+        }
+    }
+
+    private void publish(String prefix, Long productId) {
+        purchaseMetrics.roundTrip();
+        stringRedisTemplate.convertAndSend(SOLD_OUT_CHANNEL, prefix + productId);
+    }
+}
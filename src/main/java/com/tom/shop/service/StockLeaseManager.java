@@ -0,0 +1,330 @@
+package com.tom.shop.service;
+
+import com.tom.shop.config.NodeIdentity;
+import com.tom.shop.config.StockLeaseProperties;
+import jakarta.annotation.Resource;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.tom.shop.redis.SeckillKeys.*;
+
+/**
+ * 节点库存租约。
+ * <p>
+ * 节点通过 Lua 脚本从 {@code seckill:product:stock} 原子领取一批库存，记入 {@code seckill:product:leased}，
+ * 之后在本地以无锁计数器逐件发放，绝大多数购买无需访问 Redis。领取数量按近期本地售卖速率自适应调整。
+ * 租约耗尽时在下一次领取中结算；活动结束、空闲超时或节点关闭时归还未售出库存。
+ * 只有当 Redis 库存与所有节点的租约都归零时才判定售罄，保证集群范围内的售罄判断精确。
+ * </p>
+ * <p>
+ * 每个节点的持有数量按节点ID记录在 {@code seckill:lease:holders:{商品ID}} 中，持有租约的节点定期续期心跳。
+ * 心跳过期的节点视为下线，由领导者回收其租约：持有数量按已售出从租约总量中扣除，不退回库存，
+ * 因为无法得知节点下线前售出了多少；节点若仍存活，之后结算时归还的未售出数量照常回到库存。
+ * </p>
+ */
+@Component
+@Log4j2
+public class StockLeaseManager {
+
+    /**
+     * 领取结果：剩余库存均被其他节点的租约占用，稍后可能被归还
+     */
+    public static final long HELD_BY_OTHER_NODES = -4L;
+
+    private static final double RATE_SMOOTHING = 0.5;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private StockLeaseProperties leaseProperties;
+
+    @Resource
+    private NodeIdentity nodeIdentity;
+
+    private final ConcurrentHashMap<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 商品是否走租约模式
+     */
+    public boolean isLeased(Long productId) {
+        if (!leaseProperties.isEnabled() || productId == null) {
+            return false;
+        }
+        return leaseProperties.getProducts().isEmpty() || leaseProperties.getProducts().contains(productId);
+    }
+
+    /**
+     * 从本地租约中取一件库存，本地耗尽时向 Redis 续领。
+     *
+     * @return 本地租约剩余数量，或 {@link RedisService#SECKILL_SOLD_OUT} / {@link RedisService#SECKILL_INACTIVE} /
+     * {@link RedisService#SECKILL_NOT_CACHED} / {@link #HELD_BY_OTHER_NODES}
+     */
+    public long tryAcquire(Long productId, long nowMillis) {
+        for (; ; ) {
+            Lease lease = leases.computeIfAbsent(productId, Lease::new);
+            int left = lease.tryTake(nowMillis);
+            if (left >= 0) {
+                return left;
+            }
+            if (nowMillis < lease.heldUntilMillis) {
+                return HELD_BY_OTHER_NODES;
+            }
+            lease.lock.lock();
+            try {
+                if (lease.retired) {
+                    continue;
+                }
+                left = lease.tryTake(nowMillis);
+                if (left >= 0) {
+                    return left;
+                }
+                return refill(lease, nowMillis);
+            } finally {
+                lease.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 归还空闲超时或活动已结束的租约，并返回期间 Redis 库存发生变化的商品，供回写数据库
+     */
+    public List<Long> releaseIdle(long nowMillis) {
+        List<Long> changed = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            boolean expired = lease.endAtMillis >= 0 && nowMillis > lease.endAtMillis;
+            boolean idle = nowMillis - lease.lastTouchMillis > leaseProperties.getIdleMs();
+            if ((expired || idle) && lease.outstanding > 0) {
+                release(lease, nowMillis);
+            }
+            if (lease.redisChanged) {
+                lease.redisChanged = false;
+                changed.add(lease.productId);
+            }
+            if (lease.outstanding == 0 && idle && lease.lock.tryLock()) {
+                try {
+                    if (lease.outstanding == 0) {
+                        lease.retired = true;
+                        leases.remove(lease.productId, lease);
+                    }
+                } finally {
+                    lease.lock.unlock();
+                }
+            }
+        }
+        heartbeat(nowMillis);
+        return changed;
+    }
+
+    /**
+     * 回收心跳已过期节点的租约，由领导者定期调用，返回因此判定售罄的商品
+     */
+    public List<Long> reclaimExpired(long nowMillis) {
+        List<Long> soldOut = new ArrayList<>();
+        if (!leaseProperties.isEnabled()) {
+            return soldOut;
+        }
+        for (String node : redisService.zRangeByScoreWithScores(LEASE_HEARTBEAT_ZSET, 0, nowMillis).keySet()) {
+            // 本节点的心跳由自身续期
+            if (node.equals(nodeIdentity.getId())) {
+                continue;
+            }
+            Set<String> products = redisService.members(LEASE_NODE_PRODUCTS_PREFIX + node);
+            if (products.isEmpty()) {
+                // 节点下次领取时会重新登记
+                redisService.zRemove(LEASE_HEARTBEAT_ZSET, node);
+                continue;
+            }
+            for (String productId : products) {
+                List<String> keys = List.of(STOCK_CACHE_HASH, LEASED_STOCK_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY,
+                        LEASE_HOLDERS_HASH_PREFIX + productId, LEASE_NODE_PRODUCTS_PREFIX + node, LEASE_HEARTBEAT_ZSET);
+                List<Long> result = redisService.reclaimLease(keys, productId, node, nowMillis);
+                if (result == null || result.size() < 3 || result.get(0) < 0) {
+                    continue;
+                }
+                log.warn("Reclaimed {} leased units of product {} from expired node {}", result.get(0), productId, node);
+                if (result.get(2) == 1) {
+                    soldOut.add(Long.valueOf(productId));
+                }
+            }
+        }
+        return soldOut;
+    }
+
+    /**
+     * 归还本节点持有的全部租约，用于节点关闭
+     */
+    public List<Long> releaseAll(long nowMillis) {
+        List<Long> released = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            if (lease.outstanding > 0) {
+                release(lease, nowMillis);
+                released.add(lease.productId);
+            }
+        }
+        leases.clear();
+        return released;
+    }
+
+    private long refill(Lease lease, long nowMillis) {
+        int returned = lease.available.getAndSet(0);
+        long settled = lease.outstanding - returned;
+        int requested = lease.nextBlockSize(nowMillis, settled);
+        List<Long> result;
+        try {
+            result = redisService.executeLease(leaseKeys(lease.productId), lease.productId.toString(),
+                    returned, settled, requested, nowMillis, nodeIdentity.getId(), heartbeatExpiresAt(nowMillis));
+        } catch (RuntimeException e) {
+            lease.available.addAndGet(returned);
+            throw e;
+        }
+        if (result == null || result.size() < 4) {
+            lease.available.addAndGet(returned);
+            return RedisService.SECKILL_NOT_CACHED;
+        }
+        long granted = result.get(0);
+        if (granted == RedisService.SECKILL_NOT_CACHED) {
+            lease.available.addAndGet(returned);
+            return granted;
+        }
+        lease.outstanding = 0;
+        lease.endAtMillis = result.get(3);
+        lease.redisChanged = true;
+        if (granted == RedisService.SECKILL_INACTIVE) {
+            return granted;
+        }
+        if (granted > 0) {
+            lease.outstanding = granted;
+            lease.lastTouchMillis = nowMillis;
+            int left = (int) granted - 1;
+            lease.available.set(left);
+            return left;
+        }
+        if (result.get(2) > 0) {
+            lease.heldUntilMillis = nowMillis + leaseProperties.getHeldRetryMs();
+            return HELD_BY_OTHER_NODES;
+        }
+        return RedisService.SECKILL_SOLD_OUT;
+    }
+
+    private void release(Lease lease, long nowMillis) {
+        lease.lock.lock();
+        try {
+            int returned = lease.available.getAndSet(0);
+            long settled = lease.outstanding - returned;
+            if (returned + settled <= 0) {
+                return;
+            }
+            try {
+                redisService.executeLease(leaseKeys(lease.productId), lease.productId.toString(), returned, settled, 0,
+                        nowMillis, nodeIdentity.getId(), heartbeatExpiresAt(nowMillis));
+            } catch (RuntimeException e) {
+                lease.available.addAndGet(returned);
+                log.warn("Failed to release stock lease of product {}", lease.productId, e);
+                return;
+            }
+            lease.outstanding = 0;
+            lease.redisChanged = true;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    /**
+     * 本节点仍持有租约时续期心跳，避免被领导者当作下线节点回收
+     */
+    private void heartbeat(long nowMillis) {
+        if (leases.values().stream().noneMatch(lease -> lease.outstanding > 0)) {
+            return;
+        }
+        try {
+            redisService.zAdd(LEASE_HEARTBEAT_ZSET, nodeIdentity.getId(), heartbeatExpiresAt(nowMillis));
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew stock lease heartbeat", e);
+        }
+    }
+
+    private long heartbeatExpiresAt(long nowMillis) {
+        return nowMillis + leaseProperties.getHeartbeatTtlMs();
+    }
+
+    private List<String> leaseKeys(Long productId) {
+        return List.of(STOCK_CACHE_HASH, LEASED_STOCK_HASH, WINDOW_CACHE_HASH, ACTIVE_SET_KEY, SOLD_OUT_SET_KEY,
+                LEASE_HOLDERS_HASH_PREFIX + productId, LEASE_NODE_PRODUCTS_PREFIX + nodeIdentity.getId(),
+                LEASE_HEARTBEAT_ZSET);
+    }
+
+    /**
+     * 单个商品在本节点的租约状态。available 无锁发放，其余字段仅在持有 lock 时修改。
+     */
+    private final class Lease {
+
+        private final Long productId;
+
+        private final AtomicInteger available = new AtomicInteger();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 已领取但尚未结算的数量（含已售出与未售出）
+         */
+        private volatile long outstanding;
+
+        private volatile long endAtMillis = -1;
+
+        private volatile long lastTouchMillis = System.currentTimeMillis();
+
+        private volatile long heldUntilMillis;
+
+        private volatile boolean redisChanged;
+
+        /**
+         * 已从租约表移除，持有该对象的线程需重新获取
+         */
+        private volatile boolean retired;
+
+        private long lastRefillMillis;
+
+        private double ratePerSecond;
+
+        private Lease(Long productId) {
+            this.productId = productId;
+        }
+
+        private int tryTake(long nowMillis) {
+            if (endAtMillis >= 0 && nowMillis > endAtMillis) {
+                return -1;
+            }
+            for (; ; ) {
+                int current = available.get();
+                if (current <= 0) {
+                    return -1;
+                }
+                if (available.compareAndSet(current, current - 1)) {
+                    lastTouchMillis = nowMillis;
+                    return current - 1;
+                }
+            }
+        }
+
+        /**
+         * 按上一批库存的消耗速度估算本次领取数量
+         */
+        private int nextBlockSize(long nowMillis, long sold) {
+            if (lastRefillMillis > 0 && nowMillis > lastRefillMillis) {
+                double instant = sold * 1000.0 / (nowMillis - lastRefillMillis);
+                ratePerSecond = RATE_SMOOTHING * ratePerSecond + (1 - RATE_SMOOTHING) * instant;
+            }
+            lastRefillMillis = nowMillis;
+            long block = (long) Math.ceil(ratePerSecond * leaseProperties.getTargetWindowMs() / 1000.0);
+            return (int) Math.max(leaseProperties.getMinBlock(), Math.min(leaseProperties.getMaxBlock(), block));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.tom.shop.service;
+
+import com.tom.shop.config.StockStripingProperties;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分桶库存的布局与选桶策略。
+ * <p>
+ * 第 0 个分桶沿用 {@code seckill:product:stock}，其余分桶写入 {@code seckill:product:stock:{1}}、{@code seckill:product:stock:{2}} ……，
+ * 以分桶序号作为 Redis Cluster 的 hash tag，使各分桶分布在不同分片；分桶脚本每次只访问一个分桶 Key。
+ * 未开启分桶的商品与原有布局完全一致。分桶数需在所有节点保持一致，且活动期间不应调整。
+ * </p>
+ */
+@Component
+public class StockStripes {
+
+    @Resource
+    private StockStripingProperties stripingProperties;
+
+    private final ConcurrentHashMap<Long, AtomicInteger> roundRobinCursors = new ConcurrentHashMap<>();
+
+    /**
+     * 商品的分桶数，未启用分桶时恒为 1
+     */
+    public int bucketCount(Long productId) {
+        if (!stripingProperties.isEnabled() || productId == null) {
+            return 1;
+        }
+        int buckets = stripingProperties.getProducts()
+                .getOrDefault(productId, stripingProperties.getDefaultBuckets());
+        return Math.max(buckets, 1);
+    }
+
+    /**
+     * 分桶对应的库存 Hash Key
+     */
+    public String bucketKey(String stockHash, int bucket) {
+        return bucket == 0 ? stockHash : stockHash + ":{" + bucket + "}";
+    }
+
+    /**
+     * 将库存尽量均匀地拆分到各分桶，余数分给靠前的分桶
+     */
+    public int[] split(int stock, int buckets) {
+        int[] result = new int[buckets];
+        int base = stock / buckets;
+        int remainder = stock % buckets;
+        for (int i = 0; i < buckets; i++) {
+            result[i] = base + (i < remainder ? 1 : 0);
+        }
+        return result;
+    }
+
+    /**
+     * 本次请求优先尝试的分桶，其余分桶按顺序依次兜底
+     */
+    public int firstBucket(Long productId, int buckets) {
+        if (stripingProperties.getStrategy() == StockStripingProperties.Strategy.ROUND_ROBIN) {
+            AtomicInteger cursor = roundRobinCursors.computeIfAbsent(productId, id -> new AtomicInteger());
+            return Math.floorMod(cursor.getAndIncrement(), buckets);
+        }
+        long threadId = Thread.currentThread().threadId();
+        return Math.floorMod(Long.hashCode(threadId * 0x9E3779B97F4A7C15L), buckets);
+    }
+}
@@ -0,0 +1,15 @@
+-- 领导者租约：未被占用时抢占，已由自己持有时续期
+-- KEYS[1] 租约 key
+-- ARGV[1] 节点ID
+-- ARGV[2] 租约时长（毫秒）
+-- 返回：1 持有租约；0 租约属于其他节点
+local owner = redis.call('GET', KEYS[1])
+if owner == ARGV[1] then
+    redis.call('PEXPIRE', KEYS[1], ARGV[2])
+    return 1
+end
+if not owner then
+    redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+    return 1
+end
+return 0
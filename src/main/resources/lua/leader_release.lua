@@ -0,0 +1,8 @@
+-- 释放领导者租约，仅当租约仍由本节点持有时删除
+-- KEYS[1] 租约 key
+-- ARGV[1] 节点ID
+-- 返回：1 已释放；0 租约不属于本节点
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,24 @@
+-- 分桶库存扣减脚本：仅操作单个库存分桶，售罄判定由调用方在所有分桶耗尽后完成。
+-- 只访问一个 Key，各分桶可分布在 Redis Cluster 的不同分片；活动时间由调用方从商品缓存传入
+-- KEYS[1] 分桶库存 Hash  seckill:product:stock 或 seckill:product:stock:{bucket}
+-- ARGV[1] 商品ID
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] 活动开始时间（毫秒，-1 表示不限）
+-- ARGV[4] 活动结束时间（毫秒，-1 表示不限）
+-- 返回：>= 0 扣减成功后该分桶的剩余库存；-1 分桶已空；-2 不在活动时间内；-3 库存未缓存
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if not stock then
+    return -3
+end
+
+local now = tonumber(ARGV[2])
+local startAt = tonumber(ARGV[3])
+local endAt = tonumber(ARGV[4])
+if (startAt >= 0 and now < startAt) or (endAt >= 0 and now > endAt) then
+    return -2
+end
+
+if tonumber(stock) <= 0 then
+    return -1
+end
+return redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
@@ -0,0 +1,70 @@
+-- 批量扣减脚本：多个商品在一次往返中全部扣减成功，或者一件都不扣减
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 活动时间 Hash  seckill:product:window
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- KEYS[4+i] 第 i 行商品的购买记录 Hash  seckill:product:buyers:{id}（不限购时不传）
+-- ARGV[1] 当前时间（毫秒）
+-- ARGV[2] 用户ID，空字符串表示不限购
+-- ARGV[3] 活动结束后购买记录的保留时间（毫秒）
+-- ARGV[4] 活动不限结束时间时购买记录的保留时间（毫秒）
+-- ARGV[3i+2] / ARGV[3i+3] / ARGV[3i+4] 第 i 行的商品ID、数量与限购数量，同一商品只出现一次
+-- 返回：{ 0, 第 1 行剩余库存, 第 2 行剩余库存, ... } 全部扣减成功；
+--       { 状态码(-1 库存不足 / -2 不在活动时间内 / -3 库存未缓存 / -6 超出限购), 失败的行号, 该行当前库存或已购数量 }
+--       任一行失败，所有行均未扣减
+local now = tonumber(ARGV[1])
+local userId = ARGV[2]
+local lines = (#ARGV - 4) / 3
+local endAts = {}
+
+-- 先校验所有行，脚本执行期间不会插入其他命令，校验通过后的扣减一定全部成功
+for i = 1, lines do
+    local id = ARGV[3 * i + 2]
+    local quantity = tonumber(ARGV[3 * i + 3])
+    local stock = redis.call('HGET', KEYS[1], id)
+    if not stock then
+        return { -3, i, 0 }
+    end
+    stock = tonumber(stock)
+    local window = redis.call('HMGET', KEYS[2], id .. ':start', id .. ':end')
+    local startAt = tonumber(window[1])
+    local endAt = tonumber(window[2])
+    if (startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt) then
+        return { -2, i, stock }
+    end
+    endAts[i] = endAt
+    if userId ~= '' then
+        local bought = tonumber(redis.call('HGET', KEYS[4 + i], userId) or '0')
+        if bought + quantity > tonumber(ARGV[3 * i + 4]) then
+            return { -6, i, bought }
+        end
+    end
+    if stock < quantity then
+        if stock <= 0 then
+            redis.call('SADD', KEYS[4], id)
+            redis.call('SREM', KEYS[3], id)
+        end
+        return { -1, i, stock }
+    end
+end
+
+local result = { 0 }
+for i = 1, lines do
+    local id = ARGV[3 * i + 2]
+    local quantity = tonumber(ARGV[3 * i + 3])
+    local remaining = redis.call('HINCRBY', KEYS[1], id, -quantity)
+    if remaining <= 0 then
+        redis.call('SADD', KEYS[4], id)
+        redis.call('SREM', KEYS[3], id)
+    end
+    if userId ~= '' then
+        redis.call('HINCRBY', KEYS[4 + i], userId, quantity)
+        if endAts[i] and endAts[i] >= 0 then
+            redis.call('PEXPIREAT', KEYS[4 + i], endAts[i] + tonumber(ARGV[3]))
+        else
+            redis.call('PEXPIRE', KEYS[4 + i], tonumber(ARGV[4]))
+        end
+    end
+    result[i + 1] = remaining
+end
+return result
@@ -0,0 +1,80 @@
+-- 节点库存租约脚本：归还/结算上一批租约，并按需申请新的一批库存
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 租约 Hash      seckill:product:leased（各节点已领取但尚未结算的库存总量）
+-- KEYS[3] 活动时间 Hash  seckill:product:window
+-- KEYS[4] 活动商品 Set   seckill:product:active
+-- KEYS[5] 售罄商品 Set   seckill:product:soldout
+-- KEYS[6] 租约持有 Hash  seckill:lease:holders:{商品ID}（字段为节点ID，值为该节点持有的数量）
+-- KEYS[7] 节点租约 Set   seckill:lease:products:{节点ID}（该节点持有租约的商品）
+-- KEYS[8] 节点心跳 ZSet  seckill:lease:heartbeats（分数为心跳到期时间）
+-- ARGV[1] 商品ID
+-- ARGV[2] 归还的未售出数量
+-- ARGV[3] 已售出待结算数量
+-- ARGV[4] 申请数量
+-- ARGV[5] 当前时间（毫秒）
+-- ARGV[6] 节点ID
+-- ARGV[7] 心跳到期时间（毫秒）
+-- 返回：{ 实际领取数量或状态码(-2 不在活动时间内 / -3 库存未缓存), 剩余库存, 租约总量, 活动结束时间 }
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if not stock then
+    return { -3, 0, 0, -1 }
+end
+stock = tonumber(stock)
+
+local returned = tonumber(ARGV[2])
+local settled = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+local now = tonumber(ARGV[5])
+
+-- 租约已被领导者回收时持有记录为 0，回收时已按售出计入，这里只归还未售出的部分
+local held = tonumber(redis.call('HGET', KEYS[6], ARGV[6]) or '0')
+local leased = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0')
+local release = math.min(returned + settled, held)
+if release > 0 then
+    held = held - release
+    leased = redis.call('HINCRBY', KEYS[2], ARGV[1], -release)
+    if leased < 0 then
+        redis.call('HSET', KEYS[2], ARGV[1], 0)
+        leased = 0
+    end
+end
+if returned > 0 then
+    stock = redis.call('HINCRBY', KEYS[1], ARGV[1], returned)
+end
+
+local window = redis.call('HMGET', KEYS[3], ARGV[1] .. ':start', ARGV[1] .. ':end')
+local startAt = tonumber(window[1])
+local endAt = tonumber(window[2]) or -1
+
+local granted = 0
+if requested > 0 and not ((startAt and startAt >= 0 and now < startAt) or (endAt >= 0 and now > endAt)) then
+    granted = math.min(stock, requested)
+    if granted > 0 then
+        stock = redis.call('HINCRBY', KEYS[1], ARGV[1], -granted)
+        leased = redis.call('HINCRBY', KEYS[2], ARGV[1], granted)
+        held = held + granted
+    end
+elseif requested > 0 then
+    granted = -2
+end
+
+if held > 0 then
+    redis.call('HSET', KEYS[6], ARGV[6], held)
+    redis.call('SADD', KEYS[7], ARGV[1])
+    redis.call('ZADD', KEYS[8], ARGV[7], ARGV[6])
+else
+    redis.call('HDEL', KEYS[6], ARGV[6])
+    redis.call('SREM', KEYS[7], ARGV[1])
+    if redis.call('SCARD', KEYS[7]) == 0 then
+        redis.call('ZREM', KEYS[8], ARGV[6])
+    end
+end
+
+if granted == -2 then
+    return { -2, stock, leased, endAt }
+end
+if stock <= 0 and leased <= 0 then
+    redis.call('SADD', KEYS[5], ARGV[1])
+    redis.call('SREM', KEYS[4], ARGV[1])
+end
+return { granted, stock, leased, endAt }
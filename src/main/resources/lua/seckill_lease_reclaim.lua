@@ -0,0 +1,42 @@
+-- 回收心跳已过期节点在某个商品上的租约
+-- 节点下线前售出的件数无从得知，持有数量全部按已售出从租约总量中扣除、不退回库存，保证不超卖；
+-- 节点若仍存活，之后结算时归还的未售出数量照常回到库存
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 租约 Hash      seckill:product:leased
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- KEYS[5] 租约持有 Hash  seckill:lease:holders:{商品ID}
+-- KEYS[6] 节点租约 Set   seckill:lease:products:{节点ID}
+-- KEYS[7] 节点心跳 ZSet  seckill:lease:heartbeats
+-- ARGV[1] 商品ID
+-- ARGV[2] 节点ID
+-- ARGV[3] 当前时间（毫秒）
+-- 返回：{ 回收数量（节点心跳已恢复时为 -1）, 租约总量, 是否加入售罄集合 }
+local expiresAt = tonumber(redis.call('ZSCORE', KEYS[7], ARGV[2]) or '0')
+if expiresAt > tonumber(ARGV[3]) then
+    return { -1, 0, 0 }
+end
+
+local held = tonumber(redis.call('HGET', KEYS[5], ARGV[2]) or '0')
+redis.call('HDEL', KEYS[5], ARGV[2])
+redis.call('SREM', KEYS[6], ARGV[1])
+if redis.call('SCARD', KEYS[6]) == 0 then
+    redis.call('ZREM', KEYS[7], ARGV[2])
+end
+
+local leased = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0')
+if held > 0 then
+    leased = redis.call('HINCRBY', KEYS[2], ARGV[1], -held)
+    if leased < 0 then
+        redis.call('HSET', KEYS[2], ARGV[1], 0)
+        leased = 0
+    end
+end
+
+local soldOut = 0
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if stock and tonumber(stock) <= 0 and leased <= 0 then
+    soldOut = redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+end
+return { held, leased, soldOut }
@@ -0,0 +1,33 @@
+-- 秒杀扣减脚本：一次往返完成活动时间校验、库存扣减与活动/售罄集合切换
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 活动时间 Hash  seckill:product:window（字段 {id}:start / {id}:end，毫秒，-1 表示不限）
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- ARGV[1] 商品ID
+-- ARGV[2] 当前时间（毫秒）
+-- 返回：>= 0 扣减成功后的剩余库存；-1 已售罄；-2 不在活动时间内；-3 库存未缓存
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if not stock then
+    return -3
+end
+
+local now = tonumber(ARGV[2])
+local window = redis.call('HMGET', KEYS[2], ARGV[1] .. ':start', ARGV[1] .. ':end')
+local startAt = tonumber(window[1])
+local endAt = tonumber(window[2])
+if (startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt) then
+    return -2
+end
+
+if tonumber(stock) <= 0 then
+    redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+    return -1
+end
+
+local remaining = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
+if remaining <= 0 then
+    redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+end
+return remaining
@@ -0,0 +1,18 @@
+-- 确认预留：删除预留记录与到期索引，库存保持扣减状态；与释放脚本互斥，同一预留只有一方成功
+-- KEYS[1] 预留记录 Hash  seckill:reservation:data
+-- KEYS[2] 到期索引 ZSet  seckill:reservation:expiry:{节点ID}
+-- ARGV[1] 预留ID
+-- ARGV[2] 当前时间（毫秒）
+-- 返回：预留记录（商品ID|数量|用户ID），预留不存在（已确认、已取消或已到期）时返回 false
+-- 已过到期时间但尚未被释放的预留同样返回 false，记录留给到期释放处理
+local record = redis.call('HGET', KEYS[1], ARGV[1])
+if not record then
+    return false
+end
+local deadline = tonumber(redis.call('ZSCORE', KEYS[2], ARGV[1]))
+if deadline and deadline < tonumber(ARGV[2]) then
+    return false
+end
+redis.call('HDEL', KEYS[1], ARGV[1])
+redis.call('ZREM', KEYS[2], ARGV[1])
+return record
@@ -0,0 +1,45 @@
+-- 释放预留：取消或到期时把预留数量归还库存，预留已确认或已释放时不做任何修改，重复调用是安全的
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 活动时间 Hash  seckill:product:window
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- KEYS[5] 预留记录 Hash  seckill:reservation:data
+-- KEYS[6] 到期索引 ZSet  seckill:reservation:expiry:{节点ID}
+-- KEYS[7] 购买记录 Hash  seckill:product:buyers:{id}
+-- ARGV[1] 预留ID
+-- ARGV[2] 当前时间（毫秒）
+-- 返回：{ 归还后库存, 归还数量, 是否移出售罄集合 }；预留不存在时 { -1, 0, 0 }
+-- 库存已不在缓存中时 { -3, 数量, 0 }，预留记录保持不变，重新缓存库存后再次释放
+local record = redis.call('HGET', KEYS[5], ARGV[1])
+if not record then
+    redis.call('ZREM', KEYS[6], ARGV[1])
+    return { -1, 0, 0 }
+end
+local productId, quantity, userId = string.match(record, '^([^|]*)|([^|]*)|(.*)$')
+quantity = tonumber(quantity)
+if not redis.call('HGET', KEYS[1], productId) then
+    return { -3, quantity, 0 }
+end
+redis.call('HDEL', KEYS[5], ARGV[1])
+redis.call('ZREM', KEYS[6], ARGV[1])
+
+if userId ~= '' then
+    local bought = redis.call('HINCRBY', KEYS[7], userId, -quantity)
+    if bought <= 0 then
+        redis.call('HDEL', KEYS[7], userId)
+    end
+end
+
+local stock = redis.call('HINCRBY', KEYS[1], productId, quantity)
+local restored = 0
+if stock > 0 and redis.call('SREM', KEYS[4], productId) == 1 then
+    restored = 1
+    local now = tonumber(ARGV[2])
+    local window = redis.call('HMGET', KEYS[2], productId .. ':start', productId .. ':end')
+    local startAt = tonumber(window[1])
+    local endAt = tonumber(window[2])
+    if not ((startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt)) then
+        redis.call('SADD', KEYS[3], productId)
+    end
+end
+return { stock, quantity, restored }
@@ -0,0 +1,72 @@
+-- 预留库存：扣减库存并登记一条带到期时间的预留，到期未确认时由 seckill_reservation_release.lua 归还
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 活动时间 Hash  seckill:product:window
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- KEYS[5] 预留记录 Hash  seckill:reservation:data（预留ID -> 商品ID|数量|用户ID）
+-- KEYS[6] 到期索引 ZSet  seckill:reservation:expiry:{节点ID}（预留ID -> 到期时间）
+-- KEYS[7] 节点 Set       seckill:reservation:nodes
+-- KEYS[8] 购买记录 Hash  seckill:product:buyers:{id}（用户ID -> 已购数量）
+-- ARGV[1] 商品ID
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] 预留数量
+-- ARGV[4] 预留ID
+-- ARGV[5] 到期时间（毫秒）
+-- ARGV[6] 负责到期释放的节点ID
+-- ARGV[7] 用户ID，空字符串表示不限购
+-- ARGV[8] 限购数量
+-- ARGV[9] 活动结束后购买记录的保留时间（毫秒）
+-- ARGV[10] 活动不限结束时间时购买记录的保留时间（毫秒）
+-- 返回：{ 剩余库存, 该用户已购数量（含预留） }；
+--       { -1 库存不足, 当前库存 }；{ -2 不在活动时间内, 0 }；{ -3 库存未缓存, 0 }；{ -6 超出限购, 该用户已购数量 }
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if not stock then
+    return { -3, 0 }
+end
+
+local now = tonumber(ARGV[2])
+local window = redis.call('HMGET', KEYS[2], ARGV[1] .. ':start', ARGV[1] .. ':end')
+local startAt = tonumber(window[1])
+local endAt = tonumber(window[2])
+if (startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt) then
+    return { -2, 0 }
+end
+
+local quantity = tonumber(ARGV[3])
+local userId = ARGV[7]
+local bought = 0
+if userId ~= '' then
+    bought = tonumber(redis.call('HGET', KEYS[8], userId) or '0')
+    if bought + quantity > tonumber(ARGV[8]) then
+        return { -6, bought }
+    end
+end
+
+stock = tonumber(stock)
+if stock < quantity then
+    if stock <= 0 then
+        redis.call('SADD', KEYS[4], ARGV[1])
+        redis.call('SREM', KEYS[3], ARGV[1])
+    end
+    return { -1, stock }
+end
+
+local remaining = redis.call('HINCRBY', KEYS[1], ARGV[1], -quantity)
+if remaining <= 0 then
+    redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+end
+
+redis.call('HSET', KEYS[5], ARGV[4], ARGV[1] .. '|' .. quantity .. '|' .. userId)
+redis.call('ZADD', KEYS[6], ARGV[5], ARGV[4])
+redis.call('SADD', KEYS[7], ARGV[6])
+
+if userId ~= '' then
+    bought = redis.call('HINCRBY', KEYS[8], userId, quantity)
+    if endAt and endAt >= 0 then
+        redis.call('PEXPIREAT', KEYS[8], endAt + tonumber(ARGV[9]))
+    else
+        redis.call('PEXPIRE', KEYS[8], tonumber(ARGV[10]))
+    end
+end
+return { remaining, bought }
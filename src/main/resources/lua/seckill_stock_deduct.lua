@@ -0,0 +1,20 @@
+-- 从单个库存分桶扣回 Redis 不可用期间在数据库售出的库存，不扣成负数。
+-- 只访问一个 Key，调用方按读取到的各分桶库存分配每个分桶的扣回数量，扣不完的部分原样返回
+-- KEYS[1] 库存 Hash 或其分桶  seckill:product:stock 或 seckill:product:stock:{bucket}
+-- ARGV[1] 商品ID
+-- ARGV[2] 待扣回数量
+-- 返回：{ 扣回后该分桶的库存, 未能扣回的数量 }；该分桶尚未缓存时返回 { -3, 待扣回数量 }
+local id = ARGV[1]
+local pending = tonumber(ARGV[2])
+
+local stock = tonumber(redis.call('HGET', KEYS[1], id))
+if not stock then
+    return { -3, pending }
+end
+
+if pending > 0 and stock > 0 then
+    local taken = math.min(stock, pending)
+    stock = redis.call('HINCRBY', KEYS[1], id, -taken)
+    pending = pending - taken
+end
+return { stock, pending }
@@ -0,0 +1,22 @@
+-- 缓存商品的单个库存分桶：Redis 中的库存只会被数据库值调低，不会被调高。
+-- 只访问一个 Key，各分桶可分布在 Redis Cluster 的不同分片；活动/售罄集合由调用方按合并后的总库存更新
+-- KEYS[1] 库存 Hash 或其分桶  seckill:product:stock 或 seckill:product:stock:{bucket}
+-- ARGV[1] 商品ID
+-- ARGV[2] 数据库库存（分桶商品为拆分到该分桶的值）
+-- ARGV[3] 已缓存时是否接受更小的数据库库存（1/0），分桶商品传 0
+-- 返回：合并后该分桶的库存
+local id = ARGV[1]
+local stock = tonumber(ARGV[2])
+local cached = redis.call('HGET', KEYS[1], id)
+
+if not cached then
+    -- 尚未缓存（或该分桶缺失）：以数据库值初始化
+    redis.call('HSET', KEYS[1], id, stock)
+    return stock
+end
+-- 已分桶且已缓存时保留 Redis 中的值：逐桶取小会让总量低于两侧任一值
+if ARGV[3] == '1' and stock < tonumber(cached) then
+    redis.call('HSET', KEYS[1], id, stock)
+    return stock
+end
+return tonumber(cached)
@@ -0,0 +1,36 @@
+-- 合并扣减脚本：一次为一批请求扣减至多 N 件库存
+-- KEYS[1] 库存 Hash      seckill:product:stock
+-- KEYS[2] 活动时间 Hash  seckill:product:window
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- ARGV[1] 商品ID
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] 申请数量
+-- 返回：{ 实际扣减数量或状态码(-1 已售罄 / -2 不在活动时间内 / -3 库存未缓存), 扣减后剩余库存 }
+local stock = redis.call('HGET', KEYS[1], ARGV[1])
+if not stock then
+    return { -3, 0 }
+end
+stock = tonumber(stock)
+
+local now = tonumber(ARGV[2])
+local window = redis.call('HMGET', KEYS[2], ARGV[1] .. ':start', ARGV[1] .. ':end')
+local startAt = tonumber(window[1])
+local endAt = tonumber(window[2])
+if (startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt) then
+    return { -2, stock }
+end
+
+if stock <= 0 then
+    redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+    return { -1, 0 }
+end
+
+local granted = math.min(stock, tonumber(ARGV[3]))
+local remaining = redis.call('HINCRBY', KEYS[1], ARGV[1], -granted)
+if remaining <= 0 then
+    redis.call('SADD', KEYS[4], ARGV[1])
+    redis.call('SREM', KEYS[3], ARGV[1])
+end
+return { granted, remaining }
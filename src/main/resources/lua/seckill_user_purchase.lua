@@ -0,0 +1,83 @@
+-- 限购扣减脚本：在扣减库存的同一原子步骤内完成请求去重与每用户限购；不带用户ID时只按幂等键去重，不限购
+-- KEYS[1] 库存 Hash      seckill:product:stock 或其分桶
+-- KEYS[2] 活动时间 Hash  seckill:product:window
+-- KEYS[3] 活动商品 Set   seckill:product:active
+-- KEYS[4] 售罄商品 Set   seckill:product:soldout
+-- KEYS[5] 购买记录 Hash  seckill:product:buyers:{id}（用户ID -> 已购数量）
+-- KEYS[6] 请求记录 Hash  seckill:product:requests:{id}（用户ID:幂等键 -> 购买凭证，不带用户ID时为 :幂等键）
+-- ARGV[1] 商品ID
+-- ARGV[2] 当前时间（毫秒）
+-- ARGV[3] 用户ID，空字符串表示未携带
+-- ARGV[4] 限购数量
+-- ARGV[5] 幂等键，空字符串表示不去重
+-- ARGV[6] 本次购买的凭证
+-- ARGV[7] 模式：stock 扣减库存并切换售罄集合；bucket 只扣减分桶库存；record 只记录购买（库存由节点租约发放）
+-- ARGV[8] 活动结束后购买记录的保留时间（毫秒）
+-- ARGV[9] 活动不限结束时间时购买记录的保留时间（毫秒）
+-- 返回：{ 剩余库存（record 模式为 0）, 该用户已购数量 }；
+--       { -1 已售罄 / -2 不在活动时间内 / -3 库存未缓存, 0 }；{ -5 重复请求, 首次请求的凭证 }；{ -6 超出限购, 该用户已购数量 }
+local limited = ARGV[3] ~= ''
+local requestField = ARGV[5] ~= '' and (ARGV[3] .. ':' .. ARGV[5]) or nil
+if requestField then
+    local previous = redis.call('HGET', KEYS[6], requestField)
+    if previous then
+        return { -5, previous }
+    end
+end
+
+local mode = ARGV[7]
+local stock
+if mode ~= 'record' then
+    stock = redis.call('HGET', KEYS[1], ARGV[1])
+    if not stock then
+        return { -3, 0 }
+    end
+end
+
+local now = tonumber(ARGV[2])
+local window = redis.call('HMGET', KEYS[2], ARGV[1] .. ':start', ARGV[1] .. ':end')
+local startAt = tonumber(window[1])
+local endAt = tonumber(window[2])
+if (startAt and startAt >= 0 and now < startAt) or (endAt and endAt >= 0 and now > endAt) then
+    return { -2, 0 }
+end
+
+local bought = 0
+if limited then
+    bought = tonumber(redis.call('HGET', KEYS[5], ARGV[3]) or '0')
+    if bought >= tonumber(ARGV[4]) then
+        return { -6, bought }
+    end
+end
+
+local remaining = 0
+if mode ~= 'record' then
+    if tonumber(stock) <= 0 then
+        if mode == 'stock' then
+            redis.call('SADD', KEYS[4], ARGV[1])
+            redis.call('SREM', KEYS[3], ARGV[1])
+        end
+        return { -1, 0 }
+    end
+    remaining = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
+    if remaining <= 0 and mode == 'stock' then
+        redis.call('SADD', KEYS[4], ARGV[1])
+        redis.call('SREM', KEYS[3], ARGV[1])
+    end
+end
+
+if limited then
+    bought = redis.call('HINCRBY', KEYS[5], ARGV[3], 1)
+end
+if requestField then
+    redis.call('HSET', KEYS[6], requestField, ARGV[6])
+end
+-- 购买记录随活动结束过期，不会在多场活动之间累积
+if endAt and endAt >= 0 then
+    redis.call('PEXPIREAT', KEYS[5], endAt + tonumber(ARGV[8]))
+    redis.call('PEXPIREAT', KEYS[6], endAt + tonumber(ARGV[8]))
+else
+    redis.call('PEXPIRE', KEYS[5], tonumber(ARGV[9]))
+    redis.call('PEXPIRE', KEYS[6], tonumber(ARGV[9]))
+end
+return { remaining, bought }
@@ -0,0 +1,22 @@
+-- 撤销一次限购记录：租约模式下先记录购买、再从本节点租约发放库存，发放失败时调用
+-- KEYS[1] 购买记录 Hash  seckill:product:buyers:{id}
+-- KEYS[2] 请求记录 Hash  seckill:product:requests:{id}
+-- ARGV[1] 用户ID，空字符串表示未携带（只按幂等键去重，没有购买记录）
+-- ARGV[2] 幂等键，空字符串表示没有
+-- ARGV[3] 本次购买的凭证，只删除仍指向该凭证的请求记录
+-- 返回：撤销后该用户已购数量
+if ARGV[2] ~= '' then
+    local field = ARGV[1] .. ':' .. ARGV[2]
+    if redis.call('HGET', KEYS[2], field) == ARGV[3] then
+        redis.call('HDEL', KEYS[2], field)
+    end
+end
+if ARGV[1] == '' then
+    return 0
+end
+local bought = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
+if bought <= 0 then
+    redis.call('HDEL', KEYS[1], ARGV[1])
+    return 0
+end
+return bought
@@ -7,5 +7,37 @@ CREATE TABLE IF NOT EXISTS seckill_product (
     start_time TIMESTAMP NOT NULL,
     end_time TIMESTAMP NOT NULL,
     created_at TIMESTAMP,
-    version INTEGER DEFAULT 0
-);
\ No newline at end of file
+    version INTEGER DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+CREATE TABLE IF NOT EXISTS seckill_order (
+    id BIGSERIAL PRIMARY KEY,
+    ticket VARCHAR(32) NOT NULL UNIQUE,
+    product_id BIGINT NOT NULL,
+    quantity INTEGER NOT NULL DEFAULT 1,
+    status VARCHAR(16) NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_seckill_order_product_id ON seckill_order (product_id);
+
+ALTER TABLE seckill_product ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP NOT NULL DEFAULT now();
+CREATE INDEX IF NOT EXISTS idx_seckill_product_updated_at ON seckill_product (updated_at, id);
+
+-- 只有商品信息或活动时间变化时才刷新 updated_at，库存回写不触发增量刷新
+CREATE OR REPLACE FUNCTION seckill_product_touch_updated_at() RETURNS trigger AS '
+BEGIN
+    IF ROW(NEW.name, NEW.description, NEW.price, NEW.start_time, NEW.end_time)
+        IS DISTINCT FROM ROW(OLD.name, OLD.description, OLD.price, OLD.start_time, OLD.end_time) THEN
+        NEW.updated_at := now();
+    END IF;
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+DROP TRIGGER IF EXISTS trg_seckill_product_updated_at ON seckill_product;
+CREATE TRIGGER trg_seckill_product_updated_at BEFORE UPDATE ON seckill_product
+    FOR EACH ROW EXECUTE FUNCTION seckill_product_touch_updated_at();
+
+-- Redis 不可用期间直接在数据库扣减的数量，Redis 恢复后由各节点认领并从 Redis 库存中扣回
+ALTER TABLE seckill_product ADD COLUMN IF NOT EXISTS degraded_sold INTEGER NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS idx_seckill_product_degraded_sold ON seckill_product (id) WHERE degraded_sold > 0;
@@ -0,0 +1,52 @@
+package com.tom.shop.admission;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PurchaseAdmissionTest {
+
+    @Test
+    void userIdTakesPrecedenceOverAddresses() {
+        PurchaseAdmission admission = admission(1);
+
+        assertThat(admission.clientKey("alice", List.of("198.51.100.7"), "10.0.0.1")).isEqualTo("user:alice");
+    }
+
+    @Test
+    void forwardedForIsIgnoredWithoutTrustedProxies() {
+        PurchaseAdmission admission = admission(0);
+
+        assertThat(admission.clientKey(null, List.of("198.51.100.7"), "10.0.0.1")).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void spoofedHopsLeftOfTrustedProxiesAreIgnored() {
+        PurchaseAdmission one = admission(1);
+        PurchaseAdmission two = admission(2);
+        List<String> header = List.of("1.1.1.1, 198.51.100.7", " 10.0.0.2 ");
+
+        assertThat(one.clientKey(null, header, "10.0.0.1")).isEqualTo("10.0.0.2");
+        assertThat(two.clientKey(null, header, "10.0.0.1")).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void shortOrMissingHeaderFallsBack() {
+        PurchaseAdmission admission = admission(3);
+
+        assertThat(admission.clientKey(null, List.of("198.51.100.7,10.0.0.2"), "10.0.0.1")).isEqualTo("198.51.100.7");
+        assertThat(admission.clientKey(null, List.of(), "10.0.0.1")).isEqualTo("10.0.0.1");
+        assertThat(admission.clientKey(null, List.of(" , "), "10.0.0.1")).isEqualTo("10.0.0.1");
+    }
+
+    private static PurchaseAdmission admission(int trustedProxies) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setTrustedProxies(trustedProxies);
+        PurchaseAdmission admission = new PurchaseAdmission();
+        ReflectionTestUtils.setField(admission, "admissionProperties", properties);
+        return admission;
+    }
+}
@@ -0,0 +1,66 @@
+package com.tom.shop.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenOnePermitPerInterval() {
+        RateLimiter limiter = new RateLimiter(10, 3);
+        long now = System.nanoTime();
+
+        assertThat(limiter.tryAcquire(now)).isTrue();
+        assertThat(limiter.tryAcquire(now)).isTrue();
+        assertThat(limiter.tryAcquire(now)).isTrue();
+        assertThat(limiter.tryAcquire(now)).isFalse();
+
+        assertThat(limiter.tryAcquire(now + 50 * MILLI)).isFalse();
+        assertThat(limiter.tryAcquire(now + 100 * MILLI)).isTrue();
+        assertThat(limiter.tryAcquire(now + 100 * MILLI)).isFalse();
+    }
+
+    @Test
+    void idleTimeRefillsAtMostTheBurst() {
+        RateLimiter limiter = new RateLimiter(10, 2);
+        long now = System.nanoTime();
+        long later = now + 10_000 * MILLI;
+
+        assertThat(limiter.tryAcquire(later)).isTrue();
+        assertThat(limiter.tryAcquire(later)).isTrue();
+        assertThat(limiter.tryAcquire(later)).isFalse();
+    }
+
+    @Test
+    void nonPositiveRateDisablesLimiting() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        long now = System.nanoTime();
+        assertThat(limiter.tryAcquire(now)).isTrue();
+        assertThat(limiter.tryAcquire(now)).isFalse();
+
+        limiter.resize(0, 1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire(now)).isTrue();
+        }
+    }
+
+    @Test
+    void resizeAppliesToSubsequentRequests() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        long now = System.nanoTime();
+        assertThat(limiter.tryAcquire(now)).isTrue();
+
+        limiter.resize(1000, 1);
+
+        // 已登记的到达时间不变，之后按新速率放行
+        assertThat(limiter.tryAcquire(now + 1001 * MILLI)).isTrue();
+        assertThat(limiter.tryAcquire(now + 1002 * MILLI)).isTrue();
+        assertThat(limiter.tryAcquire(now + 1002 * MILLI)).isFalse();
+    }
+}
@@ -0,0 +1,81 @@
+package com.tom.shop.admission;
+
+import com.tom.shop.config.UserLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepeatBuyerFilterTest {
+
+    @Test
+    void onlyMarkedBuyersAreRejected() {
+        RepeatBuyerFilter filter = filter(10_000);
+
+        filter.markReachedLimit(1L, "alice");
+
+        assertThat(filter.mightHaveReachedLimit(1L, "alice")).isTrue();
+        assertThat(filter.mightHaveReachedLimit(2L, "alice")).isFalse();
+        assertThat(filter.mightHaveReachedLimit(1L, "bob")).isFalse();
+        assertThat(filter.mightHaveReachedLimit(null, "alice")).isFalse();
+        assertThat(filter.mightHaveReachedLimit(1L, null)).isFalse();
+    }
+
+    @Test
+    void falsePositiveRateStaysNearConfiguredRate() {
+        RepeatBuyerFilter filter = filter(10_000);
+        for (int i = 0; i < 9_000; i++) {
+            filter.markReachedLimit(1L, "user-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightHaveReachedLimit(2L, "user-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // 配置 0.0001，留出一个数量级的余量
+        assertThat(falsePositives).isLessThan(100);
+    }
+
+    @Test
+    void entriesSurviveOneRotationAndExpireAfterTwo() {
+        RepeatBuyerFilter filter = filter(100);
+        filter.markReachedLimit(1L, "alice");
+        for (int i = 0; i < 100; i++) {
+            filter.markReachedLimit(2L, "first-" + i);
+        }
+
+        assertThat(filter.mightHaveReachedLimit(1L, "alice")).isTrue();
+
+        for (int i = 0; i < 100; i++) {
+            filter.markReachedLimit(2L, "second-" + i);
+        }
+
+        assertThat(filter.mightHaveReachedLimit(1L, "alice")).isFalse();
+    }
+
+    @Test
+    void scheduledRotationForgetsEntriesAfterTwoRounds() {
+        RepeatBuyerFilter filter = filter(10_000);
+        filter.markReachedLimit(1L, "alice");
+
+        filter.rotate();
+        assertThat(filter.mightHaveReachedLimit(1L, "alice")).isTrue();
+
+        filter.rotate();
+        assertThat(filter.mightHaveReachedLimit(1L, "alice")).isFalse();
+    }
+
+    private static RepeatBuyerFilter filter(long capacity) {
+        UserLimitProperties properties = new UserLimitProperties();
+        properties.setFilterCapacity(capacity);
+        RepeatBuyerFilter filter = new RepeatBuyerFilter();
+        ReflectionTestUtils.setField(filter, "userLimitProperties", properties);
+        ReflectionTestUtils.setField(filter, "meterRegistry", new SimpleMeterRegistry());
+        filter.init();
+        return filter;
+    }
+}
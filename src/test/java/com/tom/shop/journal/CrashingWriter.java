@@ -0,0 +1,44 @@
+package com.tom.shop.journal;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link StockJournalTest} 的子进程：写入两轮库存变化，封存第一轮后在清空之前强制终止，模拟回写数据库途中进程被杀
+ */
+public class CrashingWriter {
+
+    static final int KILLED_EXIT_CODE = 137;
+
+    static final int SEGMENT_BYTES = 16 + 16 * 1024;
+
+    private static final int PRODUCTS = 50;
+
+    public static void main(String[] args) throws Exception {
+        StockJournal journal = StockJournalTest.open(Path.of(args[0]), SEGMENT_BYTES);
+        for (int stock = 100; stock > 90; stock--) {
+            for (long productId = 1; productId <= PRODUCTS; productId++) {
+                journal.append(productId, stock, id -> {
+                });
+            }
+        }
+        journal.rotate(() -> {
+        });
+        // 新的活动段中只有一半商品继续售出
+        for (long productId = 1; productId <= PRODUCTS / 2; productId++) {
+            journal.append(productId, 50, id -> {
+            });
+        }
+        // 回写数据库进行中，truncate 之前被杀；不调用 close，不做最后一次刷盘
+        Runtime.getRuntime().halt(KILLED_EXIT_CODE);
+    }
+
+    static Map<Long, Integer> expectedStocks() {
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long productId = 1; productId <= PRODUCTS; productId++) {
+            expected.put(productId, productId <= PRODUCTS / 2 ? 50 : 91);
+        }
+        return expected;
+    }
+}
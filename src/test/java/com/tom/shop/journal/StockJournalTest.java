@@ -0,0 +1,184 @@
+package com.tom.shop.journal;
+
+import com.tom.shop.service.DirtyIdSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StockJournalTest {
+
+    /**
+     * 并发测试的写入条数，每条记录使用不同的商品ID
+     */
+    private static final int WRITES = 100_000;
+
+    @TempDir
+    Path dir;
+
+    private StockJournal journal;
+
+    @AfterEach
+    void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replayKeepsLastRecordEvenWhenStockGoesUp() throws IOException {
+        journal = open(dir, 4096);
+        journal.append(1, 10, id -> {
+        });
+        journal.append(1, 9, id -> {
+        });
+        // 租约归还或预留释放后库存回升
+        journal.append(1, 12, id -> {
+        });
+        journal.append(2, 5, id -> {
+        });
+        journal.append(2, StockJournal.UNKNOWN_STOCK, id -> {
+        });
+
+        assertThat(journal.replay()).containsExactlyInAnyOrderEntriesOf(Map.of(1L, 12, 2L, 5));
+    }
+
+    @Test
+    void rotateDrainsAndTruncateClearsOnlySealedSegment() throws IOException {
+        journal = open(dir, 4096);
+        Set<Long> dirty = new HashSet<>();
+        journal.append(1, 3, dirty::add);
+        Set<Long> drained = new HashSet<>();
+        int sealed = journal.rotate(() -> {
+            drained.addAll(dirty);
+            dirty.clear();
+        });
+        journal.append(2, 7, dirty::add);
+        assertThat(drained).containsExactly(1L);
+
+        journal.truncate(sealed);
+
+        assertThat(journal.replay()).containsExactlyEntriesOf(Map.of(2L, 7));
+    }
+
+    @Test
+    void failedSyncKeepsSealedSegmentUntilTruncated() throws IOException {
+        journal = open(dir, 4096);
+        journal.append(1, 3, id -> {
+        });
+        int sealed = journal.rotate(() -> {
+        });
+        journal.append(1, 2, id -> {
+        });
+        // 回写失败，下一轮不切换段，继续返回同一个封存段
+        assertThat(journal.rotate(() -> {
+        })).isEqualTo(sealed);
+
+        assertThat(journal.replay()).containsExactlyEntriesOf(Map.of(1L, 2));
+    }
+
+    @Test
+    void fullSegmentIsCompactedInsteadOfDroppingRecords() throws IOException {
+        // 段头 16 字节，每段只能放 8 条记录
+        journal = open(dir, 16 + 16 * 8);
+        journal.append(100, 1, id -> {
+        });
+        journal.rotate(() -> {
+        });
+        for (int i = 0; i < 1000; i++) {
+            journal.append(i % 4, 1000 - i, id -> {
+            });
+        }
+
+        assertThat(journal.droppedRecords()).isZero();
+        assertThat(journal.replay()).containsExactlyInAnyOrderEntriesOf(
+                Map.of(0L, 4, 1L, 3, 2L, 2, 3L, 1, 100L, 1));
+    }
+
+    @Test
+    void saturatedSegmentKeepsDirtyMarkWithoutRecompacting() throws IOException {
+        journal = open(dir, 16 + 16 * 4);
+        Set<Long> dirty = new HashSet<>();
+        for (long id = 1; id <= 10; id++) {
+            journal.append(id, 1, dirty::add);
+        }
+
+        assertThat(dirty).hasSize(10);
+        assertThat(journal.droppedRecords()).isEqualTo(6);
+    }
+
+    @Test
+    void concurrentRotationNeverTruncatesUndrainedRecords() throws Exception {
+        journal = open(dir, 16 + 16 * (1 << 18));
+        DirtyIdSet dirty = new DirtyIdSet(1 << 18);
+        Set<Long> synced = ConcurrentHashMap.newKeySet();
+        AtomicLong ids = new AtomicLong();
+        List<Thread> writers = List.of(writer(dirty, ids), writer(dirty, ids), writer(dirty, ids), writer(dirty, ids));
+        writers.forEach(Thread::start);
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            Set<Long> batch = new HashSet<>();
+            int sealed = journal.rotate(() -> dirty.drain(batch::add));
+            synced.addAll(batch);
+            journal.truncate(sealed);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertThat(journal.droppedRecords()).isZero();
+
+        Map<Long, Integer> remaining = journal.replay();
+        for (long id = 1; id <= WRITES; id++) {
+            assertThat(synced.contains(id) || remaining.containsKey(id))
+                    .as("record %d neither synced nor journaled", id)
+                    .isTrue();
+        }
+    }
+
+    /**
+     * 子进程写入日志、封存一段后在“回写数据库”途中被强制终止，重启后重放应找回每个商品的最后库存
+     */
+    @Test
+    void recoversAfterProcessIsKilledMidBatch() throws Exception {
+        String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-cp", classpath, CrashingWriter.class.getName(), dir.toString())
+                .inheritIO()
+                .start();
+        assertThat(process.waitFor(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(process.exitValue()).isEqualTo(CrashingWriter.KILLED_EXIT_CODE);
+
+        journal = open(dir, CrashingWriter.SEGMENT_BYTES);
+
+        assertThat(journal.replay()).containsExactlyInAnyOrderEntriesOf(CrashingWriter.expectedStocks());
+    }
+
+    private Thread writer(DirtyIdSet dirty, AtomicLong ids) {
+        return new Thread(() -> {
+            for (long id = ids.incrementAndGet(); id <= WRITES; id = ids.incrementAndGet()) {
+                journal.append(id, 1, dirty::add);
+            }
+        });
+    }
+
+    static StockJournal open(Path dir, int segmentBytes) throws IOException {
+        StockJournal journal = new StockJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(journal, "flushMs", 5L);
+        journal.open();
+        return journal;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tom.shop.redis;
+
+import com.tom.shop.model.SeckillProduct;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SeckillProductCodecTest {
+
+    @Test
+    void roundTripsAllFields() {
+        SeckillProduct product = new SeckillProduct();
+        product.setId(Long.MAX_VALUE);
+        product.setName("秒杀手机");
+        product.setDescription("限量 100 台");
+        product.setPrice(new BigDecimal("-1234567890123.4567"));
+        product.setStock(-1);
+        product.setStartTime(LocalDateTime.of(2026, 1, 1, 10, 0, 0, 123_456_789));
+        product.setEndTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59));
+        product.setCreatedAt(LocalDateTime.of(2025, 6, 1, 0, 0));
+        product.setVersion(Integer.MIN_VALUE);
+        product.setUpdatedAt(LocalDateTime.of(2025, 6, 2, 0, 0));
+
+        assertThat(SeckillProductCodec.decode(SeckillProductCodec.encode(product))).isEqualTo(product);
+    }
+
+    @Test
+    void nullFieldsStayNull() {
+        SeckillProduct product = new SeckillProduct();
+        product.setId(42L);
+        product.setStock(7);
+
+        byte[] bytes = SeckillProductCodec.encode(product);
+
+        assertThat(SeckillProductCodec.decode(bytes)).isEqualTo(product);
+        assertThat(bytes).hasSizeLessThan(10);
+    }
+
+    @Test
+    void newerVersionWithUnknownTrailingFieldsIsReadable() {
+        SeckillProduct product = new SeckillProduct();
+        product.setId(3L);
+        product.setName("新版本写入");
+        product.setUpdatedAt(LocalDateTime.of(2026, 3, 1, 8, 30));
+        byte[] bytes = SeckillProductCodec.encode(product);
+        // 模拟更高版本：多一个未知字段位，并在末尾追加该字段的内容
+        byte[] newer = Arrays.copyOf(bytes, bytes.length + 3);
+        newer[1] = SeckillProductCodec.VERSION + 1;
+        newer[2] |= 1 << 2;
+        newer[bytes.length] = 2;
+        newer[bytes.length + 1] = 'o';
+        newer[bytes.length + 2] = 'k';
+
+        assertThat(SeckillProductCodec.decode(newer)).isEqualTo(product);
+    }
+
+    @Test
+    void jsonIsNotMistakenForBinary() {
+        assertThat(SeckillProductCodec.isEncoded("{\"id\":1}".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(SeckillProductCodec.isEncoded(new byte[]{SeckillProductCodec.MAGIC})).isFalse();
+        assertThat(SeckillProductCodec.isEncoded(null)).isFalse();
+    }
+
+    @Test
+    void truncatedDataIsRejected() {
+        SeckillProduct product = new SeckillProduct();
+        product.setId(1L);
+        product.setName("商品");
+        byte[] bytes = SeckillProductCodec.encode(product);
+
+        assertThatThrownBy(() -> SeckillProductCodec.decode(Arrays.copyOf(bytes, bytes.length - 2)))
+                .isInstanceOf(SerializationException.class);
+    }
+}
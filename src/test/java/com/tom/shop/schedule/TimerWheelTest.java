@@ -0,0 +1,124 @@
+package com.tom.shop.schedule;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+    /**
+     * 每层 4 个槽位、1 毫秒刻度：第 1 层从第 4 个刻度开始，第 2 层从第 16 个刻度开始，第 3 层从第 64 个刻度开始
+     */
+    private final TimerWheel wheel = new TimerWheel("timer-wheel-test", 1, 4, Runnable::run);
+
+    @AfterEach
+    void close() {
+        wheel.close();
+    }
+
+    @Test
+    void neverFiresBeforeDeadline() throws InterruptedException {
+        int tasks = 200;
+        Map<Long, Long> fired = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(tasks);
+        long now = System.currentTimeMillis();
+        for (long i = 0; i < tasks; i++) {
+            long deadline = now + i * 3;
+            wheel.schedule(deadline, () -> {
+                fired.put(deadline, System.currentTimeMillis());
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        fired.forEach((deadline, at) -> assertThat(at).as("deadline %d", deadline).isGreaterThanOrEqualTo(deadline));
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(System.currentTimeMillis() - 60_000, done::countDown);
+
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void cascadesAcrossLevelBoundaries() throws InterruptedException {
+        // 分别落在第 0、1、2、3 层，以及恰好跨过各层边界的刻度
+        List<Long> delays = List.of(2L, 3L, 4L, 5L, 15L, 16L, 17L, 63L, 64L, 65L, 250L, 257L);
+        Map<Long, Long> fired = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(delays.size());
+        long now = System.currentTimeMillis();
+        for (long delay : delays) {
+            long deadline = now + delay;
+            wheel.schedule(deadline, () -> {
+                fired.put(deadline, System.currentTimeMillis());
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(fired).hasSize(delays.size());
+        fired.forEach((deadline, at) -> assertThat(at).as("deadline %d", deadline).isGreaterThanOrEqualTo(deadline));
+    }
+
+    @Test
+    void cancelWhilePendingNeverRuns() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        TimerWheel.Timeout timeout = wheel.schedule(System.currentTimeMillis() + 20, () -> ran.set(true));
+
+        assertThat(timeout.cancel()).isTrue();
+        assertThat(timeout.cancel()).isFalse();
+
+        Thread.sleep(100);
+        assertThat(ran).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelAfterCascadeNeverRuns() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        CountDownLatch marker = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+        // 先挂在高层，等高层槽位降级到低层后再取消
+        TimerWheel.Timeout timeout = wheel.schedule(now + 300, () -> ran.set(true));
+        wheel.schedule(now + 400, marker::countDown);
+        Thread.sleep(250);
+
+        assertThat(timeout.cancel()).isTrue();
+
+        assertThat(marker.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void sizeCountsOnlyWaitingTimeouts() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        CountDownLatch done = new CountDownLatch(2);
+        TimerWheel.Timeout cancelled = wheel.schedule(now + 60_000, () -> {
+        });
+        wheel.schedule(now + 60_000, () -> {
+        });
+        wheel.schedule(now + 10, done::countDown);
+        wheel.schedule(now + 20, done::countDown);
+        assertThat(wheel.size()).isEqualTo(4);
+
+        cancelled.cancel();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 取消在下一个刻度才计入
+        Thread.sleep(20);
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.tom.shop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DirtyIdSetTest {
+
+    @Test
+    void repeatedMarksAreDrainedOnce() {
+        DirtyIdSet set = new DirtyIdSet(16);
+        for (int i = 0; i < 5; i++) {
+            set.add(7);
+            set.add(9);
+        }
+        assertThat(set.size()).isEqualTo(2);
+
+        List<Long> drained = new ArrayList<>();
+        assertThat(set.drain(drained::add)).isEqualTo(2);
+
+        assertThat(drained).containsExactlyInAnyOrder(7L, 9L);
+        assertThat(set.size()).isZero();
+        assertThat(set.drain(id -> {
+        })).isZero();
+    }
+
+    @Test
+    void zeroAndOverflowIdsAreKept() {
+        DirtyIdSet set = new DirtyIdSet(16);
+        for (long id = 0; id < 40; id++) {
+            set.add(id);
+        }
+
+        Set<Long> drained = new HashSet<>();
+        set.drain(drained::add);
+
+        assertThat(drained).hasSize(40).contains(0L, 39L);
+    }
+
+    @Test
+    void marksAfterDrainGoToTheNextRound() {
+        DirtyIdSet set = new DirtyIdSet(16);
+        set.add(1);
+        set.drain(id -> set.add(id + 100));
+
+        List<Long> drained = new ArrayList<>();
+        set.drain(drained::add);
+
+        assertThat(drained).containsExactly(101L);
+    }
+
+    @Test
+    void concurrentMarksAreNeverLost() throws InterruptedException {
+        int writes = 200_000;
+        DirtyIdSet set = new DirtyIdSet(1024);
+        Set<Long> drained = ConcurrentHashMap.newKeySet();
+        AtomicLong ids = new AtomicLong();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writers.add(new Thread(() -> {
+                for (long id = ids.incrementAndGet(); id <= writes; id = ids.incrementAndGet()) {
+                    set.add(id);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            set.drain(drained::add);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        set.drain(drained::add);
+
+        assertThat(drained).hasSize(writes);
+    }
+}
@@ -0,0 +1,70 @@
+package com.tom.shop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PurchaseCombinerTest {
+
+    @Test
+    void grantedStockIsDistributedInArrivalOrder() throws Exception {
+        PurchaseCombiner combiner = new PurchaseCombiner((productId, requested, nowMillis) ->
+                new PurchaseCombiner.BatchTake(Math.min(requested, 2), 5), 1_000_000, 3);
+
+        List<Long> results = acquireConcurrently(combiner, 3);
+
+        assertThat(results).containsExactlyInAnyOrder(6L, 5L, RedisService.SECKILL_SOLD_OUT);
+    }
+
+    @Test
+    void errorInTakerFailsEveryWaiter() throws Exception {
+        PurchaseCombiner combiner = new PurchaseCombiner((productId, requested, nowMillis) -> {
+            throw new StackOverflowError("taker failed");
+        }, 1_000_000, 3);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
+            List<Future<Long>> futures = submit(executor, combiner, 3);
+            for (Future<Long> future : futures) {
+                assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                        .rootCause()
+                        .isInstanceOf(StackOverflowError.class)
+                        .hasMessage("taker failed");
+            }
+        }
+    }
+
+    private static List<Long> acquireConcurrently(PurchaseCombiner combiner, int requests) throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(requests)) {
+            List<Long> results = new ArrayList<>();
+            for (Future<Long> future : submit(executor, combiner, requests)) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * 请求数等于批次上限，批次在全部请求加入后立即封闭，不依赖合并窗口
+     */
+    private static List<Future<Long>> submit(ExecutorService executor, PurchaseCombiner combiner, int requests) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return combiner.acquire(1L, 0);
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+}